@@ -0,0 +1,256 @@
+package com.github.kospiotr.bundler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.kospiotr.bundler.util.HashGenerator;
+
+/**
+ * Copies the assets referenced by the style sheets (images, fonts...) to the output directory under a name containing
+ * the hash of their content, e.g. {@code img/logo.png} to {@code img/logo.5d41402abc4b2a76b9719d911017c592.png}, so
+ * that they can be served with long-lived cache headers.
+ * <p>
+ * Copies run on the executor while the build goes on, {@link #finish()} waits for them and writes a JSON manifest
+ * mapping the original names to the fingerprinted ones, both relative to the output directory. Assets unchanged since
+ * the previous build keep the name recorded in its manifest and are neither hashed nor copied again. Entries of the
+ * previous manifest are kept only for the assets still referenced by the bundles of the build.
+ * <p>
+ * Assets are fingerprinted once for the lifetime of the instance, i.e. a single build, bundles referencing an asset
+ * being fingerprinted wait for it. Safe for concurrent use.
+ */
+class AssetFingerprinter {
+
+    private final ResourceAccess resourceAccess;
+    private final BuildState buildState;
+    private final Executor executor;
+    private final String hashingAlgorithm;
+    private final Path inputBasePath;
+    private final Path outputBasePath;
+    private final Path manifestPath;
+    private final Map<String, String> previousManifest;
+    private final ConcurrentMap<Path, CompletableFuture<Path>> fingerprintedPaths = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> manifest = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<CompletableFuture<Void>> copies = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger copiedCount = new AtomicInteger();
+    private final AtomicInteger skippedCount = new AtomicInteger();
+
+    /**
+     * @param resourceAccess   used to read and copy the assets
+     * @param buildState       state of an incremental build, may be null
+     * @param executor         executor the copies run on
+     * @param hashingAlgorithm algorithm of the content hash
+     * @param inputBasePath    absolute base directory of the assets
+     * @param outputBasePath   absolute base directory of the outputs, the names in the manifest are relative to it
+     * @param manifestPath     file the manifest is written to
+     */
+    AssetFingerprinter(ResourceAccess resourceAccess, BuildState buildState, Executor executor, String hashingAlgorithm,
+                       Path inputBasePath, Path outputBasePath, Path manifestPath) {
+        this.resourceAccess = resourceAccess;
+        this.buildState = buildState;
+        this.executor = executor;
+        this.hashingAlgorithm = hashingAlgorithm;
+        this.inputBasePath = inputBasePath;
+        this.outputBasePath = outputBasePath;
+        this.manifestPath = manifestPath;
+        this.previousManifest = buildState != null ? readManifest(manifestPath) : new TreeMap<>();
+    }
+
+    /**
+     * Starts copying the asset to its fingerprinted path unless it is there already.
+     *
+     * @param sourcePath path of the asset
+     * @param targetPath path the asset would be copied to without a fingerprint
+     * @return fingerprinted path of the asset, or null when the asset doesn't exist
+     */
+    Path fingerprint(Path sourcePath, Path targetPath) {
+        CompletableFuture<Path> fingerprintedPath = new CompletableFuture<>();
+        CompletableFuture<Path> existing = fingerprintedPaths.putIfAbsent(sourcePath, fingerprintedPath);
+        if (existing != null) {
+            // fingerprinted by another bundle, possibly still in progress
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            Path path = Files.isRegularFile(sourcePath) ? doFingerprint(sourcePath, targetPath) : null;
+            if (path != null) {
+                manifest.put(toName(targetPath), toName(path));
+            }
+            fingerprintedPath.complete(path);
+            return path;
+        } catch (RuntimeException e) {
+            fingerprintedPath.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the copies to complete and writes the manifest.
+     */
+    void finish() {
+        for (CompletableFuture<Void> copy : copies) {
+            try {
+                copy.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        // assets of the bundles which have not been built again are still referenced
+        Map<String, String> entries = new TreeMap<>();
+        Set<Path> referencedPaths = buildState != null ? buildState.getBundleSources() : Collections.<Path>emptySet();
+        for (Map.Entry<String, String> entry : previousManifest.entrySet()) {
+            Path sourcePath = inputBasePath.resolve(entry.getKey()).normalize();
+            if (referencedPaths.contains(sourcePath) && Files.isRegularFile(sourcePath)
+                    && Files.isRegularFile(outputBasePath.resolve(entry.getValue()))) {
+                entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        entries.putAll(manifest);
+        resourceAccess.write(manifestPath, ResourceContent.of(toJson(entries)));
+    }
+
+    /**
+     * @return number of assets copied
+     */
+    int getCopiedCount() {
+        return copiedCount.get();
+    }
+
+    /**
+     * @return number of assets already copied by a previous build
+     */
+    int getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    private Path doFingerprint(Path sourcePath, Path targetPath) {
+        String previousName = previousManifest.get(toName(targetPath));
+        if (previousName != null && buildState.isUnchanged(sourcePath)) {
+            Path previousPath = outputBasePath.resolve(previousName);
+            if (Files.isRegularFile(previousPath)) {
+                skippedCount.incrementAndGet();
+                return previousPath;
+            }
+        }
+        if (buildState != null) {
+            // fingerprints have to be taken before the assets are read
+            buildState.fingerprint(sourcePath);
+        }
+        HashGenerator.Hasher hasher = HashGenerator.newHasher(hashingAlgorithm);
+        hasher.update(resourceAccess.readBuffer(sourcePath));
+        Path fingerprintedPath = targetPath.resolveSibling(insertHash(targetPath.getFileName().toString(), hasher.getHash()));
+        copies.add(CompletableFuture.runAsync(() -> {
+            if (resourceAccess.copy(sourcePath, fingerprintedPath)) {
+                copiedCount.incrementAndGet();
+            } else {
+                skippedCount.incrementAndGet();
+            }
+        }, executor));
+        return fingerprintedPath;
+    }
+
+    private String toName(Path path) {
+        return outputBasePath.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * @return file name with the hash inserted before the extension
+     */
+    static String insertHash(String fileName, String hash) {
+        int extensionIndex = fileName.lastIndexOf('.');
+        if (extensionIndex <= 0) {
+            return fileName + "." + hash;
+        }
+        return fileName.substring(0, extensionIndex) + "." + hash + fileName.substring(extensionIndex);
+    }
+
+    private static String toJson(Map<String, String> entries) {
+        StringBuilder json = new StringBuilder("{");
+        String separator = "\n";
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            json.append(separator).append("  ");
+            appendString(json, entry.getKey());
+            json.append(": ");
+            appendString(json, entry.getValue());
+            separator = ",\n";
+        }
+        return json.append("\n}\n").toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Reads a manifest written by {@link #toJson(Map)}, an unreadable manifest is taken for an empty one.
+     */
+    private static Map<String, String> readManifest(Path manifestPath) {
+        Map<String, String> entries = new TreeMap<>();
+        if (!Files.isRegularFile(manifestPath)) {
+            return entries;
+        }
+        try {
+            String json = new String(Files.readAllBytes(manifestPath), StandardCharsets.UTF_8);
+            List<String> strings = new ArrayList<>();
+            int index = json.indexOf('"');
+            while (index != -1) {
+                StringBuilder value = new StringBuilder();
+                index = readString(json, index + 1, value);
+                strings.add(value.toString());
+                index = json.indexOf('"', index);
+            }
+            for (int i = 0; i + 1 < strings.size(); i += 2) {
+                entries.put(strings.get(i), strings.get(i + 1));
+            }
+        } catch (IOException | RuntimeException e) {
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * @return index following the closing quote of the string starting at the index
+     */
+    private static int readString(String json, int index, StringBuilder value) {
+        while (json.charAt(index) != '"') {
+            char c = json.charAt(index++);
+            if (c == '\\') {
+                c = json.charAt(index++);
+                if (c == 'u') {
+                    c = (char) Integer.parseInt(json.substring(index, index + 4), 16);
+                    index += 4;
+                }
+            }
+            value.append(c);
+        }
+        return index + 1;
+    }
+}
@@ -0,0 +1,467 @@
+package com.github.kospiotr.bundler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.kospiotr.bundler.util.HashGenerator;
+
+/**
+ * State of the previous build, persisted between builds to skip pages and bundles whose inputs have not changed.
+ * <p>
+ * Up-to-date checks are always made against the state loaded from the previous build, while pages and bundles of the
+ * current build are recorded separately and persisted by {@link #save()}. Pages and bundles that are not processed by
+ * the current build are dropped from the state.
+ * <p>
+ * Files are compared by size and modification time first. When those differ, the content hash decides.
+ */
+class BuildState {
+
+    private static final String HASH_ALGORITHM = "MD5";
+    private static final String CONFIGURATION_KEY = "configuration";
+    private static final String FILE_PREFIX = "file.";
+    private static final String PAGE_PREFIX = "page.";
+    private static final String BUNDLE_PREFIX = "bundle.";
+    private static final String PRECOMPRESSED_PREFIX = "precompressed.";
+    private static final String OUTPUT_SUFFIX = ".output";
+    private static final String BUNDLES_SUFFIX = ".bundles";
+    private static final String SOURCES_SUFFIX = ".sources";
+    private static final String TAG_SUFFIX = ".tag";
+    private static final String LIST_SEPARATOR = "|";
+    private static final String LIST_SEPARATOR_REGEX = "\\|";
+
+    private final Path stateFile;
+    private final String configuration;
+
+    private final Map<Path, FileFingerprint> previousFiles = new ConcurrentHashMap<>();
+    private final Map<Path, PageRecord> previousPages = new ConcurrentHashMap<>();
+    private final Map<String, BundleRecord> previousBundles = new ConcurrentHashMap<>();
+    private final Map<Path, String> previousPrecompressed = new ConcurrentHashMap<>();
+
+    private final Map<Path, FileFingerprint> currentFiles = new ConcurrentHashMap<>();
+    private final Map<Path, PageRecord> pages = new ConcurrentHashMap<>();
+    private final Map<String, BundleRecord> bundles = new ConcurrentHashMap<>();
+    private final Map<Path, String> precompressed = new ConcurrentHashMap<>();
+    private final AtomicInteger upToDateBundles = new AtomicInteger();
+
+    private BuildState(Path stateFile, String configuration) {
+        this.stateFile = stateFile;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Loads the state of the previous build. The previous state is discarded when it cannot be read or it has been
+     * built with a different configuration.
+     *
+     * @param stateFile     location of the state file
+     * @param configuration fingerprint of the configuration of the current build
+     * @return build state
+     */
+    public static BuildState load(Path stateFile, String configuration) {
+        BuildState buildState = new BuildState(stateFile, configuration);
+        if (Files.isRegularFile(stateFile)) {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(stateFile)) {
+                properties.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                return buildState;
+            }
+            if (configuration.equals(properties.getProperty(CONFIGURATION_KEY))) {
+                buildState.read(properties);
+            }
+        }
+        return buildState;
+    }
+
+    public void save() {
+        Properties properties = new Properties();
+        properties.setProperty(CONFIGURATION_KEY, configuration);
+        for (PageRecord page : pages.values()) {
+            String prefix = PAGE_PREFIX + page.inputFilePath;
+            properties.setProperty(prefix + OUTPUT_SUFFIX, page.outputFilePath.toString());
+            properties.setProperty(prefix + BUNDLES_SUFFIX, join(new TreeSet<>(page.bundleIds)));
+            putFile(properties, page.inputFilePath);
+            putPrecompressed(properties, page.outputFilePath);
+        }
+        for (Map.Entry<String, BundleRecord> entry : bundles.entrySet()) {
+            BundleRecord bundle = entry.getValue();
+            String prefix = BUNDLE_PREFIX + entry.getKey();
+            properties.setProperty(prefix + OUTPUT_SUFFIX, bundle.outputPath.toString());
+            properties.setProperty(prefix + SOURCES_SUFFIX, join(bundle.srcPaths));
+            properties.setProperty(prefix + TAG_SUFFIX, bundle.bundledTag);
+            for (Path srcPath : bundle.srcPaths) {
+                putFile(properties, srcPath);
+            }
+            putPrecompressed(properties, bundle.outputPath);
+        }
+        try {
+            Files.createDirectories(stateFile.getParent());
+            try (OutputStream out = Files.newOutputStream(stateFile)) {
+                properties.store(out, "bundler-maven-plugin build state");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A page is up to date when its input and the sources of all its bundles have not changed, and both the page
+     * output and the bundle outputs still exist. Up to date pages (and their bundles) are carried over to the current
+     * state.
+     *
+     * @param page page to check
+     * @return true when the page does not need to be processed again
+     */
+    public boolean isPageUpToDate(Page page) {
+        PageRecord record = previousPages.get(page.getInputFilePath());
+        if (record == null
+                || !record.outputFilePath.equals(page.getOutputFilePath())
+                || !Files.exists(record.outputFilePath)
+                || !isUnchanged(record.inputFilePath)) {
+            return false;
+        }
+        for (String bundleId : record.bundleIds) {
+            if (!isBundleUpToDate(bundleId)) {
+                return false;
+            }
+        }
+        for (String bundleId : record.bundleIds) {
+            bundles.put(bundleId, previousBundles.get(bundleId));
+            page.addBundleId(bundleId);
+        }
+        pages.put(record.inputFilePath, record);
+        return true;
+    }
+
+    /**
+     * Carries the page (and its bundles) over to the current state without checking it.
+     *
+     * @param inputFilePath page input file
+     */
+    public void retainPage(Path inputFilePath) {
+        PageRecord record = previousPages.get(inputFilePath);
+        if (record == null) {
+            return;
+        }
+        pages.put(inputFilePath, record);
+        for (String bundleId : record.bundleIds) {
+            BundleRecord bundle = previousBundles.get(bundleId);
+            if (bundle != null) {
+                bundles.putIfAbsent(bundleId, bundle);
+            }
+        }
+    }
+
+    /**
+     * @param bundleId bundle identifier, see {@link BundleKey#getId()}
+     * @return bundled tag of the previous build when the bundle is up to date, null otherwise
+     */
+    public String getUpToDateBundledTag(String bundleId) {
+        if (!isBundleUpToDate(bundleId)) {
+            return null;
+        }
+        BundleRecord record = previousBundles.get(bundleId);
+        bundles.put(bundleId, record);
+        upToDateBundles.incrementAndGet();
+        return record.bundledTag;
+    }
+
+    /**
+     * Takes the fingerprint of the file as seen by the current build. The first fingerprint taken for a given path is
+     * the one recorded, so it should be taken before the file is read.
+     *
+     * @param path file path
+     * @return fingerprint or null when the file does not exist
+     */
+    public FileFingerprint fingerprint(Path path) {
+        FileFingerprint fingerprint = currentFiles.get(path);
+        if (fingerprint == null) {
+            fingerprint = computeFingerprint(path);
+            if (fingerprint != null) {
+                FileFingerprint existing = currentFiles.putIfAbsent(path, fingerprint);
+                fingerprint = existing != null ? existing : fingerprint;
+            }
+        }
+        return fingerprint;
+    }
+
+    public void recordPage(Page page) {
+        pages.put(page.getInputFilePath(), new PageRecord(page.getInputFilePath(), page.getOutputFilePath(), new ArrayList<>(page.getBundleIds())));
+    }
+
+    public void recordBundle(String bundleId, List<Path> srcPaths, Path outputPath, String bundledTag) {
+        bundles.put(bundleId, new BundleRecord(srcPaths, outputPath, bundledTag));
+    }
+
+    /**
+     * @param outputPath output of a page or a bundle
+     * @param settings   description of the settings its precompressed siblings are written with
+     * @return whether the siblings of the output have been written with the same settings by the previous build
+     */
+    public boolean isPrecompressed(Path outputPath, String settings) {
+        return settings.equals(previousPrecompressed.get(outputPath));
+    }
+
+    /**
+     * Records the settings the precompressed siblings of the output have been written with. Outputs of pages and
+     * bundles not processed again keep the settings of the previous build.
+     */
+    public void recordPrecompressed(Path outputPath, String settings) {
+        precompressed.put(outputPath, settings);
+    }
+
+    /**
+     * @return number of bundles of processed pages which were not built again
+     */
+    public int getUpToDateBundleCount() {
+        return upToDateBundles.get();
+    }
+
+    /**
+     * @return pages processed (or skipped) by the current build
+     */
+    public Collection<PageRecord> getPages() {
+        return Collections.unmodifiableCollection(pages.values());
+    }
+
+    /**
+     * @param bundleId bundle identifier
+     * @return bundle processed (or skipped) by the current build or null when unknown
+     */
+    public BundleRecord getBundle(String bundleId) {
+        return bundles.get(bundleId);
+    }
+
+    /**
+     * @return sources of the bundles processed (or skipped) by the current build, including their dependencies
+     */
+    public Set<Path> getBundleSources() {
+        Set<Path> srcPaths = new HashSet<>();
+        for (BundleRecord bundle : bundles.values()) {
+            srcPaths.addAll(bundle.srcPaths);
+        }
+        return srcPaths;
+    }
+
+    /**
+     * @return whether the output of the bundle exists and none of its sources has changed since the previous build
+     */
+    boolean isBundleUpToDate(String bundleId) {
+        BundleRecord record = previousBundles.get(bundleId);
+        if (record == null || !Files.exists(record.outputPath)) {
+            return false;
+        }
+        for (Path srcPath : record.srcPaths) {
+            if (!isUnchanged(srcPath)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the file has the same content as in the previous build, when it was part of it
+     */
+    boolean isUnchanged(Path path) {
+        FileFingerprint previous = previousFiles.get(path);
+        if (previous == null) {
+            return false;
+        }
+        FileFingerprint current = fingerprint(path);
+        return current != null && current.hash.equals(previous.hash);
+    }
+
+    private FileFingerprint computeFingerprint(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long size = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            FileFingerprint previous = previousFiles.get(path);
+            if (previous != null && previous.size == size && previous.lastModified == lastModified) {
+                return previous;
+            }
+            return new FileFingerprint(size, lastModified, HashGenerator.computeHash(Files.readAllBytes(path), HASH_ALGORITHM));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void putFile(Properties properties, Path path) {
+        FileFingerprint fingerprint = currentFiles.get(path);
+        if (fingerprint == null) {
+            fingerprint = previousFiles.get(path);
+        }
+        if (fingerprint != null) {
+            properties.setProperty(FILE_PREFIX + path, fingerprint.toString());
+        }
+    }
+
+    private void putPrecompressed(Properties properties, Path outputPath) {
+        String settings = precompressed.get(outputPath);
+        if (settings == null) {
+            settings = previousPrecompressed.get(outputPath);
+        }
+        if (settings != null) {
+            properties.setProperty(PRECOMPRESSED_PREFIX + outputPath, settings);
+        }
+    }
+
+    private void read(Properties properties) {
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key);
+            if (key.startsWith(FILE_PREFIX)) {
+                FileFingerprint fingerprint = FileFingerprint.parse(value);
+                if (fingerprint != null) {
+                    previousFiles.put(Paths.get(key.substring(FILE_PREFIX.length())), fingerprint);
+                }
+            } else if (key.startsWith(PRECOMPRESSED_PREFIX)) {
+                previousPrecompressed.put(Paths.get(key.substring(PRECOMPRESSED_PREFIX.length())), value);
+            } else if (key.startsWith(PAGE_PREFIX) && key.endsWith(OUTPUT_SUFFIX)) {
+                String prefix = key.substring(0, key.length() - OUTPUT_SUFFIX.length());
+                Path inputFilePath = Paths.get(prefix.substring(PAGE_PREFIX.length()));
+                List<String> bundleIds = split(properties.getProperty(prefix + BUNDLES_SUFFIX, ""));
+                previousPages.put(inputFilePath, new PageRecord(inputFilePath, Paths.get(value), bundleIds));
+            } else if (key.startsWith(BUNDLE_PREFIX) && key.endsWith(OUTPUT_SUFFIX)) {
+                String prefix = key.substring(0, key.length() - OUTPUT_SUFFIX.length());
+                String bundleId = prefix.substring(BUNDLE_PREFIX.length());
+                String bundledTag = properties.getProperty(prefix + TAG_SUFFIX);
+                if (bundledTag == null) {
+                    continue;
+                }
+                List<Path> srcPaths = new ArrayList<>();
+                for (String srcPath : split(properties.getProperty(prefix + SOURCES_SUFFIX, ""))) {
+                    srcPaths.add(Paths.get(srcPath));
+                }
+                previousBundles.put(bundleId, new BundleRecord(srcPaths, Paths.get(value), bundledTag));
+            }
+        }
+    }
+
+    private static String join(Collection<?> values) {
+        StringBuilder sb = new StringBuilder();
+        for (Object value : values) {
+            if (sb.length() > 0) {
+                sb.append(LIST_SEPARATOR);
+            }
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    private static List<String> split(String value) {
+        List<String> values = new ArrayList<>();
+        for (String item : value.split(LIST_SEPARATOR_REGEX)) {
+            if (!item.isEmpty()) {
+                values.add(item);
+            }
+        }
+        return values;
+    }
+
+    static class FileFingerprint {
+
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+
+        FileFingerprint(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        static FileFingerprint parse(String value) {
+            String[] parts = value.split(",");
+            if (parts.length != 3) {
+                return null;
+            }
+            try {
+                return new FileFingerprint(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return size + "," + lastModified + "," + hash;
+        }
+    }
+
+    static class PageRecord {
+
+        private final Path inputFilePath;
+        private final Path outputFilePath;
+        private final List<String> bundleIds;
+
+        PageRecord(Path inputFilePath, Path outputFilePath, List<String> bundleIds) {
+            this.inputFilePath = inputFilePath;
+            this.outputFilePath = outputFilePath;
+            this.bundleIds = bundleIds;
+        }
+
+        public Path getInputFilePath() {
+            return inputFilePath;
+        }
+
+        public Path getOutputFilePath() {
+            return outputFilePath;
+        }
+
+        public List<String> getBundleIds() {
+            return bundleIds;
+        }
+    }
+
+    static class BundleRecord {
+
+        private final List<Path> srcPaths;
+        private final Path outputPath;
+        private final String bundledTag;
+
+        BundleRecord(List<Path> srcPaths, Path outputPath, String bundledTag) {
+            this.srcPaths = srcPaths;
+            this.outputPath = outputPath;
+            this.bundledTag = bundledTag;
+        }
+
+        public List<Path> getSrcPaths() {
+            return srcPaths;
+        }
+
+        public Path getOutputPath() {
+            return outputPath;
+        }
+
+        public String getBundledTag() {
+            return bundledTag;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.kospiotr.bundler;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import com.github.kospiotr.bundler.util.HashGenerator;
+
+/**
+ * Identity of a bundle: two bundle blocks with equal keys produce exactly the same output file and tag, so the bundle
+ * only needs to be built once.
+ */
+class BundleKey {
+
+    private final String type;
+    private final String fileName;
+    private final Path destPath;
+    private final List<String> srcs;
+    private final List<Path> srcPaths;
+    private final String settings;
+    private final String id;
+
+    /**
+     * @param type     bundle type (js, css)
+     * @param fileName output file name as declared in the bundle block (may contain hash placeholder)
+     * @param destPath resolved output path (may contain hash placeholder)
+     * @param srcs     source references as declared in the bundle block, in declaration order
+     * @param srcPaths resolved source paths, in declaration order
+     * @param settings optimizer and hashing settings the bundle is built with
+     */
+    BundleKey(String type, String fileName, Path destPath, List<String> srcs, List<Path> srcPaths, String settings) {
+        this.type = type;
+        this.fileName = fileName;
+        this.destPath = destPath;
+        this.srcs = Collections.unmodifiableList(srcs);
+        this.srcPaths = Collections.unmodifiableList(srcPaths);
+        this.settings = settings;
+        this.id = HashGenerator.computeHash(type + "\n" + fileName + "\n" + destPath + "\n" + srcs + "\n" + srcPaths + "\n" + settings, "MD5");
+    }
+
+    /**
+     * @return identifier of the bundle which is stable between builds
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Path getDestPath() {
+        return destPath;
+    }
+
+    public List<String> getSrcs() {
+        return srcs;
+    }
+
+    public List<Path> getSrcPaths() {
+        return srcPaths;
+    }
+
+    public String getSettings() {
+        return settings;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BundleKey that = (BundleKey) o;
+        return type.equals(that.type)
+                && fileName.equals(that.fileName)
+                && destPath.equals(that.destPath)
+                && srcs.equals(that.srcs)
+                && srcPaths.equals(that.srcPaths)
+                && settings.equals(that.settings);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, fileName, destPath, srcs, srcPaths, settings);
+    }
+
+    @Override
+    public String toString() {
+        return "BundleKey{" +
+                "type='" + type + '\'' +
+                ", fileName='" + fileName + '\'' +
+                ", destPath=" + destPath +
+                ", srcPaths=" + srcPaths +
+                ", settings='" + settings + '\'' +
+                '}';
+    }
+}
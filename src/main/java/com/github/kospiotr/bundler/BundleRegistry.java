@@ -0,0 +1,76 @@
+package com.github.kospiotr.bundler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Keeps track of the bundles built during a single execution. The first page reaching a bundle builds it, every other
+ * page gets the bundled tag of the finished build or waits for the build in progress.
+ */
+class BundleRegistry {
+
+    private final ConcurrentMap<BundleKey, CompletableFuture<String>> bundles = new ConcurrentHashMap<>();
+    private final AtomicInteger reused = new AtomicInteger();
+
+    /**
+     * @param key     bundle identity
+     * @param builder builds the bundle and returns the bundled tag; called at most once per key
+     * @return bundled tag
+     */
+    public String getOrBuild(BundleKey key, Supplier<String> builder) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = bundles.putIfAbsent(key, future);
+        if (existing != null) {
+            reused.incrementAndGet();
+            return join(existing);
+        }
+        try {
+            String bundledTag = builder.get();
+            future.complete(bundledTag);
+            return bundledTag;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return whether the bundle has been built or is being built
+     */
+    public boolean contains(BundleKey key) {
+        return bundles.containsKey(key);
+    }
+
+    /**
+     * @return number of bundles built (or being built)
+     */
+    public int getBuiltCount() {
+        return bundles.size();
+    }
+
+    /**
+     * @return number of bundle blocks served from an already built bundle
+     */
+    public int getReusedCount() {
+        return reused.get();
+    }
+
+    private String join(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.kospiotr.bundler;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte-per-char view of a buffer. Allows scanning UTF-8 encoded content for ASCII markers without decoding it: bytes of
+ * multi-byte UTF-8 sequences never match ASCII characters.
+ */
+class ByteCharSequence implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    ByteCharSequence(ByteBuffer buffer) {
+        this(buffer, buffer.position(), buffer.remaining());
+    }
+
+    private ByteCharSequence(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+        }
+        return (char) (buffer.get(offset + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+        }
+        return new ByteCharSequence(buffer, offset + start, end - start);
+    }
+
+    /**
+     * @return bytes between the given indexes as a buffer sharing the content of this sequence
+     */
+    public ByteBuffer slice(int start, int end) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + end);
+        slice.position(offset + start);
+        return slice;
+    }
+
+    @Override
+    public String toString() {
+        return StandardCharsets.ISO_8859_1.decode(slice(0, length)).toString();
+    }
+}
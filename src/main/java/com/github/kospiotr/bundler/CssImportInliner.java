@@ -0,0 +1,365 @@
+package com.github.kospiotr.bundler;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Inlines the local {@code @import} statements of style sheets, recursively:
+ *
+ * <pre>
+ * {@code
+ *     @import "base.css";                     =>   (content of base.css)
+ *     @import url(print.css) print;           =>   @media print {
+ *                                                  (content of print.css)
+ *                                                  }
+ *     @import "https://fonts.example.com/a";  =>   unchanged
+ * }
+ * </pre>
+ *
+ * Only the statements at the beginning of a style sheet are taken into account, browsers ignore the following ones.
+ * The {@code url()} references of imported style sheets are rebased to the directory of the importing one. Imports
+ * forming a cycle are dropped, and so are imports of a style sheet already inlined without media queries, importing it
+ * again would change nothing.
+ * <p>
+ * Statements with layer or supports conditions, and statements of style sheets that can't be read, are kept and moved
+ * to the beginning of the result, browsers ignore them anywhere else. An import with media queries whose style sheet
+ * has such statements is kept as a whole, its statements can't be moved out of the media queries.
+ * <p>
+ * Parsed style sheets are cached for the lifetime of the instance, i.e. a single build, so style sheets imported by
+ * several bundles are read and parsed once. Safe for concurrent use.
+ */
+class CssImportInliner {
+
+    private static final String CHARSET = "@charset";
+    private static final String IMPORT = "@import";
+    private static final String URL_START = "url(";
+
+    private final Function<Path, String> reader;
+    private final Consumer<String> warnings;
+    private final ConcurrentMap<Path, StyleSheet> styleSheets = new ConcurrentHashMap<>();
+
+    /**
+     * @param reader   reads the content of a style sheet, throwing a runtime exception when it can't be read
+     * @param warnings receives a message for every import that can't be inlined
+     */
+    CssImportInliner(Function<Path, String> reader, Consumer<String> warnings) {
+        this.reader = reader;
+        this.warnings = warnings;
+    }
+
+    /**
+     * @param path    absolute path of the style sheet
+     * @param content content of the style sheet
+     * @return content with the local imports inlined, the content itself when it has none
+     */
+    String inline(Path path, String content) {
+        StyleSheet styleSheet = parse(path, content);
+        if (styleSheet.imports.stream().allMatch(anImport -> anImport.path == null)) {
+            return content;
+        }
+        Inlining inlining = new Inlining(path);
+        StringBuilder out = new StringBuilder(content.length() * 2);
+        append(styleSheet, path.getParent(), false, inlining, out);
+        if (inlining.inlinedCount == 0) {
+            return content;
+        }
+        return inlining.charset + inlining.keptImports + out;
+    }
+
+    /**
+     * @param path absolute path of a style sheet already {@link #inline(Path, String) inlined}
+     * @return style sheets inlined into it, directly or not
+     */
+    Set<Path> getImports(Path path) {
+        Set<Path> imports = new LinkedHashSet<>();
+        Deque<Path> pending = new ArrayDeque<>(Collections.singleton(path));
+        while (!pending.isEmpty()) {
+            StyleSheet styleSheet = styleSheets.get(pending.pop());
+            if (styleSheet == null) {
+                continue;
+            }
+            for (Import anImport : styleSheet.imports) {
+                if (anImport.path != null && imports.add(anImport.path)) {
+                    pending.push(anImport.path);
+                }
+            }
+        }
+        return imports;
+    }
+
+    /**
+     * Appends the style sheet with its imports inlined and its references rebased to the base directory.
+     *
+     * @param conditional whether the style sheet is inlined within media queries
+     */
+    private void append(StyleSheet styleSheet, Path baseDirectory, boolean conditional, Inlining inlining,
+                        StringBuilder out) {
+        String content = styleSheet.content;
+        Path directory = styleSheet.path.getParent();
+        int copied = 0;
+        for (Import anImport : styleSheet.imports) {
+            out.append(rebase(content.substring(copied, anImport.start), directory, baseDirectory));
+            copied = anImport.end;
+            if (anImport.isCharset()) {
+                // only allowed at the very beginning of the bundle
+                if (inlining.importing.size() == 1) {
+                    inlining.charset = content.substring(anImport.start, anImport.end);
+                }
+                continue;
+            }
+            if (anImport.path == null) {
+                inlining.keep(rebase(content.substring(anImport.start, anImport.end), directory, baseDirectory));
+                continue;
+            }
+            if (inlining.importing.contains(anImport.path)) {
+                warnings.accept("Dropping cyclic import of " + anImport.path + " in " + styleSheet.path);
+                continue;
+            }
+            if (inlining.inlined.contains(anImport.path)) {
+                continue;
+            }
+            StyleSheet importedStyleSheet = styleSheets.get(anImport.path);
+            try {
+                if (importedStyleSheet == null) {
+                    importedStyleSheet = parse(anImport.path, reader.apply(anImport.path));
+                }
+            } catch (RuntimeException e) {
+                warnings.accept("Keeping import of " + anImport.path + " in " + styleSheet.path + ", it can't be read: " + e);
+                inlining.keep(rebase(content.substring(anImport.start, anImport.end), directory, baseDirectory));
+                continue;
+            }
+            if (anImport.media.isEmpty()) {
+                if (!conditional) {
+                    inlining.inlined.add(anImport.path);
+                }
+                inlining.importing.push(anImport.path);
+                append(importedStyleSheet, baseDirectory, conditional, inlining, out);
+                inlining.importing.pop();
+                inlining.inlinedCount++;
+                continue;
+            }
+            int keptImportsLength = inlining.keptImports.length();
+            StringBuilder importedOut = new StringBuilder();
+            inlining.importing.push(anImport.path);
+            append(importedStyleSheet, baseDirectory, true, inlining, importedOut);
+            inlining.importing.pop();
+            if (inlining.keptImports.length() > keptImportsLength) {
+                inlining.keptImports.setLength(keptImportsLength);
+                inlining.keep(rebase(content.substring(anImport.start, anImport.end), directory, baseDirectory));
+                continue;
+            }
+            out.append("@media ").append(anImport.media).append(" {\n").append(importedOut).append("\n}");
+            inlining.inlinedCount++;
+        }
+        out.append(rebase(content.substring(copied), directory, baseDirectory));
+    }
+
+    private StyleSheet parse(Path path, String content) {
+        StyleSheet styleSheet = styleSheets.get(path);
+        if (styleSheet != null && styleSheet.content.equals(content)) {
+            return styleSheet;
+        }
+        styleSheet = new StyleSheet(path, content, parseImports(path.getParent(), content));
+        styleSheets.put(path, styleSheet);
+        return styleSheet;
+    }
+
+    /**
+     * @return {@code @charset} and {@code @import} statements at the beginning of the content
+     */
+    private static List<Import> parseImports(Path directory, String content) {
+        List<Import> imports = new ArrayList<>();
+        int length = content.length();
+        int index = 0;
+        while (true) {
+            index = skipWhitespaceAndComments(content, index);
+            boolean charset = content.regionMatches(true, index, CHARSET, 0, CHARSET.length());
+            if (!charset && !content.regionMatches(true, index, IMPORT, 0, IMPORT.length())) {
+                return imports;
+            }
+            int end = findStatementEnd(content, index);
+            if (end == -1) {
+                return imports;
+            }
+            if (charset) {
+                imports.add(new Import(index, end, null, null, true));
+            } else {
+                Import anImport = parseImport(directory, content, index, end);
+                if (anImport == null) {
+                    return imports;
+                }
+                imports.add(anImport);
+            }
+            index = end;
+            if (index >= length) {
+                return imports;
+            }
+        }
+    }
+
+    /**
+     * @return import of the statement from the start to the end index, null when it is not a valid one
+     */
+    private static Import parseImport(Path directory, String content, int start, int end) {
+        String statement = content.substring(start + IMPORT.length(), end - 1).trim();
+        String url;
+        String media;
+        if (statement.startsWith("\"") || statement.startsWith("'")) {
+            int urlEnd = statement.indexOf(statement.charAt(0), 1);
+            if (urlEnd == -1) {
+                return null;
+            }
+            url = statement.substring(1, urlEnd);
+            media = statement.substring(urlEnd + 1);
+        } else if (statement.regionMatches(true, 0, URL_START, 0, URL_START.length())) {
+            int urlEnd = statement.indexOf(')');
+            if (urlEnd == -1) {
+                return null;
+            }
+            url = statement.substring(URL_START.length(), urlEnd).trim();
+            if (url.length() >= 2 && (url.charAt(0) == '"' || url.charAt(0) == '\'') && url.charAt(url.length() - 1) == url.charAt(0)) {
+                url = url.substring(1, url.length() - 1).trim();
+            }
+            media = statement.substring(urlEnd + 1);
+        } else {
+            return null;
+        }
+        media = media.trim();
+        boolean local = CssUrlRewriter.isRelative(url) && !media.contains("layer") && !media.contains("supports(");
+        Path path = null;
+        if (local) {
+            int queryIndex = url.indexOf('?');
+            path = directory.resolve(queryIndex == -1 ? url : url.substring(0, queryIndex)).normalize();
+        }
+        return new Import(start, end, path, media, false);
+    }
+
+    /**
+     * @return index following the semicolon ending the statement starting at the index, -1 when there is none
+     */
+    private static int findStatementEnd(String content, int index) {
+        int length = content.length();
+        int depth = 0;
+        for (int i = index; i < length; i++) {
+            char c = content.charAt(i);
+            if (c == '"' || c == '\'') {
+                int stringEnd = content.indexOf(c, i + 1);
+                if (stringEnd == -1) {
+                    return -1;
+                }
+                i = stringEnd;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ';' && depth <= 0) {
+                return i + 1;
+            } else if (c == '{' || c == '}') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespaceAndComments(String content, int index) {
+        int length = content.length();
+        while (index < length) {
+            if (Character.isWhitespace(content.charAt(index))) {
+                index++;
+            } else if (content.startsWith("/*", index)) {
+                int commentEnd = content.indexOf("*/", index + 2);
+                index = commentEnd == -1 ? length : commentEnd + 2;
+            } else {
+                break;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return content whose relative references, relative to the directory, are made relative to the base directory
+     */
+    private static String rebase(String content, Path directory, Path baseDirectory) {
+        if (directory.equals(baseDirectory) || content.isEmpty()) {
+            return content;
+        }
+        return new CssUrlRewriter(url -> {
+            if (!CssUrlRewriter.isRelative(url)) {
+                return url;
+            }
+            int queryIndex = url.indexOf('?');
+            String path = queryIndex == -1 ? url : url.substring(0, queryIndex);
+            String query = queryIndex == -1 ? "" : url.substring(queryIndex);
+            return baseDirectory.relativize(directory.resolve(path).normalize()).toString().replace('\\', '/') + query;
+        }).rewrite(content);
+    }
+
+    /**
+     * State of a single {@link #inline(Path, String)} call.
+     */
+    private static class Inlining {
+
+        private final Deque<Path> importing = new ArrayDeque<>();
+        /**
+         * Style sheets inlined without media queries.
+         */
+        private final Set<Path> inlined = new HashSet<>();
+        private final StringBuilder keptImports = new StringBuilder();
+        private String charset = "";
+        private int inlinedCount;
+
+        Inlining(Path path) {
+            importing.push(path);
+            inlined.add(path);
+        }
+
+        void keep(String statement) {
+            keptImports.append(statement).append('\n');
+        }
+    }
+
+    private static class StyleSheet {
+
+        private final Path path;
+        private final String content;
+        private final List<Import> imports;
+
+        StyleSheet(Path path, String content, List<Import> imports) {
+            this.path = path;
+            this.content = content;
+            this.imports = imports;
+        }
+    }
+
+    private static class Import {
+
+        private final int start;
+        private final int end;
+        private final Path path;
+        private final String media;
+        private final boolean charset;
+
+        Import(int start, int end, Path path, String media, boolean charset) {
+            this.start = start;
+            this.end = end;
+            this.path = path;
+            this.media = media;
+            this.charset = charset;
+        }
+
+        boolean isCharset() {
+            return charset;
+        }
+    }
+}
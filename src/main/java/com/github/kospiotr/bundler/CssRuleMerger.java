@@ -0,0 +1,502 @@
+package com.github.kospiotr.bundler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shrinks a whole style sheet bundle by working across the rules of its sources:
+ *
+ * <pre>
+ * {@code
+ *     a{color:red;margin:0;color:red}          =>   a{margin:0;color:red}
+ *     b{color:red}c{color:red}                 =>   b,c{color:red}
+ *     d{margin:0}d{padding:0}                  =>   d{margin:0;padding:0}
+ *     e{color:red}f{color:blue}e{color:red}    =>   f{color:blue}e{color:red}
+ * }
+ * </pre>
+ *
+ * Only changes that cannot alter the cascade are made:
+ * <ul>
+ * <li>exact duplicate declarations of a rule are dropped, the last one is kept</li>
+ * <li>adjacent rules with the same selector, or with identical declarations, are merged</li>
+ * <li>rules followed by an exact duplicate in the same block are dropped, the later one applies the same
+ * declarations with a higher precedence anyway</li>
+ * </ul>
+ * Rules within {@code @media} and {@code @supports} blocks are processed block by block, other at-rules and comments
+ * are kept as they are and rules are never merged across them. A single unsupported selector invalidates the whole
+ * rule, so only selectors made of simple selectors, combinators and pseudo-classes every browser supports (those of
+ * CSS 2 and Selectors Level 3, e.g. {@code :hover} or {@code :nth-child(2n+1)}) are merged with others. Rules left
+ * unchanged keep their formatting.
+ * <p>
+ * Stateless and safe for concurrent use.
+ */
+class CssRuleMerger {
+
+    private static final List<String> GROUPING_RULES = Arrays.asList("@media", "@supports");
+    private static final Set<String> SAFE_PSEUDO_CLASSES = new HashSet<>(Arrays.asList(":active", ":checked",
+            ":disabled", ":empty", ":enabled", ":first-child", ":first-of-type", ":focus", ":hover", ":last-child",
+            ":last-of-type", ":link", ":only-child", ":only-of-type", ":root", ":target", ":visited"));
+    private static final Set<String> SAFE_PSEUDO_ELEMENTS = new HashSet<>(Arrays.asList(":after", ":before",
+            ":first-letter", ":first-line", "::after", "::before", "::first-letter", "::first-line"));
+    private static final Pattern ATTRIBUTE_SELECTOR = Pattern.compile(
+            "\\[\\s*[-_a-zA-Z][-_a-zA-Z0-9]*\\s*([~|^$*]?=\\s*(\"[^\"]*\"|'[^']*'|[-_a-zA-Z0-9]+)\\s*)?]");
+    private static final Pattern NTH_ARGUMENT = Pattern.compile(
+            "\\s*([+-]?\\d*n(\\s*[+-]\\s*\\d+)?|[+-]?\\d+|even|odd)\\s*", Pattern.CASE_INSENSITIVE);
+    private static final Pattern LANGUAGE_ARGUMENT = Pattern.compile("\\s*[a-zA-Z][-a-zA-Z0-9]*\\s*");
+
+    private CssRuleMerger() {
+    }
+
+    /**
+     * @param css style sheet
+     * @return merged style sheet, the style sheet itself when nothing could be merged or it can't be parsed
+     */
+    static String merge(String css) {
+        List<Item> items = parse(css, 0, css.length());
+        if (items == null || !merge(items)) {
+            return css;
+        }
+        StringBuilder out = new StringBuilder(css.length());
+        append(items, out);
+        return out.toString();
+    }
+
+    /**
+     * @return whether any item has been changed, the items are updated in place
+     */
+    private static boolean merge(List<Item> items) {
+        boolean changed = false;
+        Map<String, Integer> lastIndexes = new HashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            if (item instanceof Group) {
+                Group group = (Group) item;
+                group.changed = merge(group.children);
+                changed |= group.changed;
+            } else if (item instanceof Rule) {
+                Rule rule = (Rule) item;
+                rule.changed = dropDuplicateDeclarations(rule.declarations);
+                changed |= rule.changed;
+                lastIndexes.put(rule.selector + "{" + rule.getBody(), i);
+            }
+        }
+
+        List<Item> merged = new ArrayList<>(items.size());
+        Rule previous = null;
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            if (!(item instanceof Rule)) {
+                merged.add(item);
+                previous = null;
+                continue;
+            }
+            Rule rule = (Rule) item;
+            if (lastIndexes.get(rule.selector + "{" + rule.getBody()) != i) {
+                changed = true;
+                continue;
+            }
+            if (previous != null && previous.selector.equals(rule.selector)) {
+                previous.declarations.addAll(rule.declarations);
+                dropDuplicateDeclarations(previous.declarations);
+                previous.changed = true;
+                changed = true;
+            } else if (previous != null && previous.getBody().equals(rule.getBody())
+                    && isMergeable(previous.selector) && isMergeable(rule.selector)) {
+                previous.selector = previous.selector + "," + rule.selector;
+                previous.changed = true;
+                changed = true;
+            } else {
+                merged.add(rule);
+                previous = rule;
+            }
+        }
+        items.clear();
+        items.addAll(merged);
+        return changed;
+    }
+
+    /**
+     * @return whether any declaration has been dropped
+     */
+    private static boolean dropDuplicateDeclarations(List<String> declarations) {
+        Set<String> seen = new HashSet<>();
+        boolean dropped = false;
+        for (int i = declarations.size() - 1; i >= 0; i--) {
+            if (!seen.add(declarations.get(i))) {
+                declarations.remove(i);
+                dropped = true;
+            }
+        }
+        return dropped;
+    }
+
+    private static boolean isMergeable(String selector) {
+        return isSupported(selector, false);
+    }
+
+    /**
+     * @param simple whether the selector has to be a single simple selector, like the argument of {@code :not()}
+     * @return whether the selector only uses simple selectors, combinators and pseudo-classes known to be supported
+     */
+    private static boolean isSupported(String selector, boolean simple) {
+        int length = selector.length();
+        int simpleSelectors = 0;
+        int i = 0;
+        while (i < length) {
+            char c = selector.charAt(i);
+            if (c == '.' || c == '#') {
+                int end = skipIdentifier(selector, i + 1);
+                if (end == i + 1) {
+                    return false;
+                }
+                i = end;
+            } else if (c == '*') {
+                i++;
+            } else if (isIdentifierPart(c)) {
+                i = skipIdentifier(selector, i);
+            } else if (c == '[') {
+                Matcher matcher = ATTRIBUTE_SELECTOR.matcher(selector).region(i, length);
+                if (!matcher.lookingAt()) {
+                    return false;
+                }
+                i = matcher.end();
+            } else if (c == ':') {
+                int nameEnd = skipIdentifier(selector, selector.startsWith("::", i) ? i + 2 : i + 1);
+                String name = selector.substring(i, nameEnd).toLowerCase(Locale.ROOT);
+                if (nameEnd < length && selector.charAt(nameEnd) == '(') {
+                    int close = findClosingParenthesis(selector, nameEnd);
+                    if (close == -1 || !isSupportedArgument(name, selector.substring(nameEnd + 1, close), simple)) {
+                        return false;
+                    }
+                    i = close + 1;
+                } else if (SAFE_PSEUDO_CLASSES.contains(name) || !simple && SAFE_PSEUDO_ELEMENTS.contains(name)) {
+                    i = nameEnd;
+                } else {
+                    return false;
+                }
+            } else if (!simple && (Character.isWhitespace(c) || c == '>' || c == '+' || c == '~' || c == ',')) {
+                i++;
+                continue;
+            } else {
+                return false;
+            }
+            simpleSelectors++;
+        }
+        return !simple || simpleSelectors == 1;
+    }
+
+    private static boolean isSupportedArgument(String name, String argument, boolean simple) {
+        switch (name) {
+            case ":not":
+                return !simple && isSupported(argument.trim(), true);
+            case ":lang":
+                return LANGUAGE_ARGUMENT.matcher(argument).matches();
+            case ":nth-child":
+            case ":nth-last-child":
+            case ":nth-of-type":
+            case ":nth-last-of-type":
+                return NTH_ARGUMENT.matcher(argument).matches();
+            default:
+                return false;
+        }
+    }
+
+    private static int skipIdentifier(String selector, int index) {
+        int length = selector.length();
+        while (index < length) {
+            char c = selector.charAt(index);
+            if (c == '\\') {
+                index += 2;
+            } else if (isIdentifierPart(c)) {
+                index++;
+            } else {
+                break;
+            }
+        }
+        return Math.min(index, length);
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_' || c >= 0x80
+                || c == '\\';
+    }
+
+    /**
+     * @return index of the parenthesis closing the one at the index, -1 when there is none
+     */
+    private static int findClosingParenthesis(String selector, int open) {
+        int depth = 0;
+        for (int i = open; i < selector.length(); i++) {
+            char c = selector.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void append(List<Item> items, StringBuilder out) {
+        for (Item item : items) {
+            if (item instanceof Rule && item.changed) {
+                Rule rule = (Rule) item;
+                out.append(rule.leading).append(rule.selector).append('{').append(rule.getBody()).append('}');
+            } else if (item instanceof Group && item.changed) {
+                Group group = (Group) item;
+                out.append(group.leading).append(group.prelude).append('{');
+                append(group.children, out);
+                out.append('}');
+            } else {
+                out.append(item.text);
+            }
+        }
+    }
+
+    /**
+     * @return items between the indexes, null when the content can't be parsed
+     */
+    private static List<Item> parse(String css, int start, int end) {
+        List<Item> items = new ArrayList<>();
+        int index = start;
+        while (true) {
+            int itemStart = index;
+            while (index < end && Character.isWhitespace(css.charAt(index))) {
+                index++;
+            }
+            if (index >= end) {
+                if (itemStart < end) {
+                    items.add(new Item(css.substring(itemStart, end)));
+                }
+                return items;
+            }
+            char c = css.charAt(index);
+            if (css.startsWith("/*", index)) {
+                int commentEnd = css.indexOf("*/", index + 2);
+                if (commentEnd == -1 || commentEnd + 2 > end) {
+                    return null;
+                }
+                index = commentEnd + 2;
+                items.add(new Item(css.substring(itemStart, index)));
+                continue;
+            }
+            int delimiter = findDelimiter(css, index, end);
+            if (delimiter == -1 || css.charAt(delimiter) == '}') {
+                return null;
+            }
+            if (css.charAt(delimiter) == ';') {
+                if (c != '@') {
+                    return null;
+                }
+                index = delimiter + 1;
+                items.add(new Item(css.substring(itemStart, index)));
+                continue;
+            }
+            int blockEnd = findBlockEnd(css, delimiter, end);
+            if (blockEnd == -1) {
+                return null;
+            }
+            String text = css.substring(itemStart, blockEnd + 1);
+            String leading = css.substring(itemStart, index);
+            String prelude = css.substring(index, delimiter).trim();
+            if (c == '@') {
+                if (isGroupingRule(prelude)) {
+                    List<Item> children = parse(css, delimiter + 1, blockEnd);
+                    if (children == null) {
+                        return null;
+                    }
+                    items.add(new Group(text, leading, prelude, children));
+                } else {
+                    items.add(new Item(text));
+                }
+            } else {
+                List<String> declarations = splitDeclarations(css, delimiter + 1, blockEnd);
+                // nested rules are left as they are
+                items.add(declarations == null ? new Item(text) : new Rule(text, leading, prelude, declarations));
+            }
+            index = blockEnd + 1;
+        }
+    }
+
+    private static boolean isGroupingRule(String prelude) {
+        String lowerCasePrelude = prelude.toLowerCase(Locale.ROOT);
+        for (String groupingRule : GROUPING_RULES) {
+            if (lowerCasePrelude.startsWith(groupingRule) && lowerCasePrelude.length() > groupingRule.length()) {
+                char c = lowerCasePrelude.charAt(groupingRule.length());
+                if (Character.isWhitespace(c) || c == '(') {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return declarations between the indexes, null when there is a nested block
+     */
+    private static List<String> splitDeclarations(String css, int start, int end) {
+        List<String> declarations = new ArrayList<>();
+        int declarationStart = start;
+        int depth = 0;
+        for (int i = start; i < end; i++) {
+            char c = css.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"' || c == '\'') {
+                i = skipString(css, i, end) - 1;
+            } else if (c == '/' && css.startsWith("/*", i)) {
+                int commentEnd = css.indexOf("*/", i + 2);
+                i = commentEnd == -1 ? end : commentEnd + 1;
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            } else if (c == '{') {
+                return null;
+            } else if (c == ';' && depth == 0) {
+                addDeclaration(declarations, css.substring(declarationStart, i));
+                declarationStart = i + 1;
+            }
+        }
+        addDeclaration(declarations, css.substring(declarationStart, end));
+        return declarations;
+    }
+
+    private static void addDeclaration(List<String> declarations, String declaration) {
+        declaration = declaration.trim();
+        if (!declaration.isEmpty()) {
+            declarations.add(declaration);
+        }
+    }
+
+    /**
+     * @return index of the first {@code {}, {@code ;} or {@code }} outside of strings, comments and brackets, -1
+     * when there is none before the end
+     */
+    private static int findDelimiter(String css, int start, int end) {
+        int depth = 0;
+        for (int i = start; i < end; i++) {
+            char c = css.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"' || c == '\'') {
+                i = skipString(css, i, end) - 1;
+            } else if (c == '/' && css.startsWith("/*", i)) {
+                int commentEnd = css.indexOf("*/", i + 2);
+                if (commentEnd == -1) {
+                    return -1;
+                }
+                i = commentEnd + 1;
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                depth--;
+            } else if (depth <= 0 && (c == '{' || c == ';' || c == '}')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return index of the brace closing the block opened at the index, -1 when there is none before the end
+     */
+    private static int findBlockEnd(String css, int open, int end) {
+        int depth = 0;
+        for (int i = open; i < end; i++) {
+            char c = css.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"' || c == '\'') {
+                i = skipString(css, i, end) - 1;
+            } else if (c == '/' && css.startsWith("/*", i)) {
+                int commentEnd = css.indexOf("*/", i + 2);
+                if (commentEnd == -1) {
+                    return -1;
+                }
+                i = commentEnd + 1;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return index following the closing quote of the string starting at the index, or the end when the string is
+     * not terminated
+     */
+    private static int skipString(String css, int index, int end) {
+        char quote = css.charAt(index);
+        for (int i = index + 1; i < end; i++) {
+            char c = css.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == quote) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Part of the style sheet kept as it is, e.g. a comment or an at-rule.
+     */
+    private static class Item {
+
+        /**
+         * Original text, including the preceding whitespace.
+         */
+        final String text;
+        boolean changed;
+
+        Item(String text) {
+            this.text = text;
+        }
+    }
+
+    private static class Rule extends Item {
+
+        private final String leading;
+        private String selector;
+        private final List<String> declarations;
+
+        Rule(String text, String leading, String selector, List<String> declarations) {
+            super(text);
+            this.leading = leading;
+            this.selector = selector;
+            this.declarations = declarations;
+        }
+
+        String getBody() {
+            return String.join(";", declarations);
+        }
+    }
+
+    /**
+     * {@code @media} or {@code @supports} block.
+     */
+    private static class Group extends Item {
+
+        private final String leading;
+        private final String prelude;
+        private final List<Item> children;
+
+        Group(String text, String leading, String prelude, List<Item> children) {
+            super(text);
+            this.leading = leading;
+            this.prelude = prelude;
+            this.children = children;
+        }
+    }
+}
@@ -1,9 +1,18 @@
 package com.github.kospiotr.bundler;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import com.github.kospiotr.bundler.optimizer.BinaryResourceOptimizer;
 import com.github.kospiotr.bundler.optimizer.OptimizerFactory;
 import com.github.kospiotr.bundler.optimizer.ResourceOptimizer;
 
@@ -26,13 +35,38 @@ import com.github.kospiotr.bundler.optimizer.ResourceOptimizer;
  */
 public class CssTagProcessor extends RegexBasedTagProcessor {
 
-    private static final String TAG_REGEX = "\\Q<link\\E.*?href\\=\"(.*?)\".*?\\>";
+    private static final InnerTagLexer INNER_TAG_LEXER = new InnerTagLexer("link", "href", false);
 
     private final PathNormalizator pathNormalizator = new PathNormalizator();
+
+    private final ConcurrentMap<String, Map<String, String>> rewrittenUrls = new ConcurrentHashMap<>();
+
+    /**
+     * Paths of the assets referenced by the bundles, by bundle and rewritten reference.
+     */
+    private final ConcurrentMap<String, Map<String, Path>> assetPaths = new ConcurrentHashMap<>();
+
+    private volatile DataUriInliner dataUriInliner;
+
+    private AssetFingerprinter assetFingerprinter;
+
+    /**
+     * Assets referenced by the sources, once their imports are inlined.
+     */
+    private final ConcurrentMap<Path, Set<Path>> referencedAssets = new ConcurrentHashMap<>();
+
+    private final CssImportInliner importInliner = new CssImportInliner(this::readImport, message -> log.warn(message));
     
     // We don't add a final modifier here because we need to mock this field in unit test.
     private OptimizerFactory optimizerFactory = OptimizerFactory.getInsatnce();
 
+    /**
+     * @param assetFingerprinter fingerprinter of the assets referenced by the style sheets, may be null
+     */
+    void setAssetFingerprinter(AssetFingerprinter assetFingerprinter) {
+        this.assetFingerprinter = assetFingerprinter;
+    }
+
     @Override
     public String getType() {
         return "css";
@@ -44,59 +78,222 @@ public class CssTagProcessor extends RegexBasedTagProcessor {
     }
 
     @Override
-    protected String postProcessOutputFileContent(String content) {
-        return getResourceOptimizer().optimizeCss(content);
+    protected ResourceContent postProcessOutputFileContent(ResourceContent content) {
+        ResourceOptimizer optimizer = getResourceOptimizer();
+        if (optimizer instanceof BinaryResourceOptimizer) {
+            return ResourceContent.of(((BinaryResourceOptimizer) optimizer).optimizeCss(content.getBytes()));
+        }
+        String optimizedContent = optimizer.optimizeCss(content.getString());
+        return optimizedContent != null ? ResourceContent.of(optimizedContent) : null;
+    }
+
+    @Override
+    protected String getOptimizerSettings() {
+        return "cssOptimizer=" + getMojo().getCssOptimizer();
+    }
+
+    @Override
+    protected InnerTagLexer innerTagLexer() {
+        return INNER_TAG_LEXER;
+    }
+
+    @Override
+    protected boolean isContentPreprocessed() {
+        return true;
+    }
+
+    /**
+     * Inlines the local {@code @import}s of the source and rewrites its {@code url()} references relative to the
+     * bundle. Rewritten references are memoized per source directory and bundle, style sheets of a directory
+     * typically share most of them. When assets are fingerprinted, the referenced ones are recorded as dependencies
+     * of the source.
+     */
+    @Override
+    protected ResourceContent preprocessTagContent(String targetCssPath, ResourceContent srcContent, String sourceCssPath, Path srcPath) {
+        String sourceCssDirectory = sourceCssPath.substring(0, sourceCssPath.lastIndexOf('/') + 1);
+        Map<String, String> rewrittenUrls = this.rewrittenUrls.computeIfAbsent(sourceCssDirectory + "\n" + targetCssPath,
+                key -> new ConcurrentHashMap<>());
+        Set<Path> assets = assetFingerprinter != null ? ConcurrentHashMap.newKeySet() : null;
+        CssUrlRewriter rewriter = new CssUrlRewriter(resourcePath -> {
+            if (assets != null && CssUrlRewriter.isRelative(resourcePath)) {
+                assets.add(resolveSourceResourcePath(sourceCssDirectory, resourcePath));
+            }
+            return rewrittenUrls.computeIfAbsent(resourcePath,
+                    key -> relativizeResourcePath(targetCssPath, sourceCssDirectory, resourcePath));
+        });
+        String content = srcContent.getString();
+        Path absoluteSrcPath = srcPath.toAbsolutePath().normalize();
+        String rewrittenContent = rewriter.rewrite(importInliner.inline(absoluteSrcPath, content));
+        if (assets != null) {
+            referencedAssets.put(absoluteSrcPath, assets);
+        }
+        return rewrittenContent == content ? srcContent : ResourceContent.of(rewrittenContent);
+    }
+
+    @Override
+    protected Collection<Path> getDependencies(Path srcPath) {
+        Path absoluteSrcPath = srcPath.toAbsolutePath().normalize();
+        Set<Path> assets = referencedAssets.getOrDefault(absoluteSrcPath, Collections.<Path>emptySet());
+        if (assets.isEmpty()) {
+            return importInliner.getImports(absoluteSrcPath);
+        }
+        List<Path> dependencies = new ArrayList<>(importInliner.getImports(absoluteSrcPath));
+        for (Path asset : assets) {
+            // missing assets are left as they are, they would make the bundle look changed forever
+            if (Files.isRegularFile(asset)) {
+                dependencies.add(asset);
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Inlines the small assets referenced by the bundle as data URIs, in declaration order so that the same ones
+     * are inlined whenever the bundle limit is reached.
+     */
+    @Override
+    SourceFinisher createSourceFinisher(BundleKey bundleKey) {
+        DataUriInliner inliner = getDataUriInliner();
+        if (inliner == null) {
+            return null;
+        }
+        String targetCssPath = bundleKey.getFileName();
+        // references are only known once the sources have been preprocessed
+        DataUriInliner.Bundle bundle = inliner.newBundle(url -> {
+            Map<String, Path> paths = assetPaths.get(targetCssPath);
+            return paths != null ? paths.get(url) : null;
+        });
+        return new SourceFinisher() {
+
+            @Override
+            public ResourceContent finish(ResourceContent content) {
+                String string = content.getString();
+                String inlinedContent = bundle.inline(string);
+                return inlinedContent == string ? content : ResourceContent.of(inlinedContent);
+            }
+
+            @Override
+            public Collection<Path> getDependencies() {
+                return bundle.getAssets();
+            }
+        };
     }
 
     @Override
-    protected String tagRegex() {
-        return TAG_REGEX;
+    boolean isBundleFinished() {
+        return getMojo().isMergeCssRules();
     }
 
+    /**
+     * Merges the rules of the sources across the whole bundle.
+     */
     @Override
-    protected String preprocessTagContent(String targetCssPath, String content, String sourceCssPath) {
-        StringBuilder sb = new StringBuilder();
-
-        Pattern urlPattern = Pattern.compile("url\\(\\s*(['\"]?)\\s*(.*?)\\s*(\\1)\\s*\\)", Pattern.DOTALL);
-        Matcher m = urlPattern.matcher(content);
-        int previousIndex = 0;
-        while (m.find(previousIndex)) {
-            String quote = m.group(1);
-            String resourcePath = m.group(2);
-            sb.append(content.substring(previousIndex, m.start()));
-            String relativizedResourcePathUrl = relativizeResourcePath(targetCssPath, sourceCssPath, resourcePath);
-            sb.append("url(").append(quote).append(relativizedResourcePathUrl).append(quote).append(")");
-            previousIndex = m.end();
+    ResourceContent finishBundle(BundleKey bundleKey, ResourceContent content) {
+        String css = content.getString();
+        String mergedCss = CssRuleMerger.merge(css);
+        if (mergedCss == css) {
+            return content;
+        }
+        ResourceContent mergedContent = ResourceContent.of(mergedCss);
+        log.info(String.format("Merged CSS rules of %s, saved %d bytes", bundleKey.getFileName(),
+                content.length() - mergedContent.length()));
+        return mergedContent;
+    }
+
+    /**
+     * @return inliner shared by the whole build or null when data URIs are disabled
+     */
+    DataUriInliner getDataUriInliner() {
+        if (getMojo().getDataUriThreshold() <= 0) {
+            return null;
+        }
+        DataUriInliner inliner = dataUriInliner;
+        if (inliner == null) {
+            synchronized (this) {
+                inliner = dataUriInliner;
+                if (inliner == null) {
+                    inliner = new DataUriInliner(getMojo().getDataUriThreshold(), getMojo().getDataUriBundleLimit(), this::readAsset);
+                    dataUriInliner = inliner;
+                }
+            }
+        }
+        return inliner;
+    }
+
+    /**
+     * Assets are fingerprinted before being read, like the sources.
+     */
+    private ByteBuffer readAsset(Path path) {
+        BuildState buildState = getMojo().getBuildState();
+        if (buildState != null) {
+            buildState.fingerprint(path);
+        }
+        log("Inlining asset %s", path);
+        return getResourceAccess().readBuffer(path);
+    }
+
+    /**
+     * Imported style sheets are fingerprinted before being read, like the sources.
+     */
+    private String readImport(Path path) {
+        BuildState buildState = getMojo().getBuildState();
+        if (buildState != null) {
+            buildState.fingerprint(path);
         }
-        sb.append(content.substring(previousIndex, content.length()));
-        return sb.toString();
+        log("Inlining import %s", path);
+        return getResourceAccess().read(path).getString();
     }
 
-    private String relativizeResourcePath(String targetCssPath, String sourceCssPath, String resourcePath) {
-        if (isUrlAbsolute(resourcePath) || resourcePath.startsWith("data:")) {
+    private String relativizeResourcePath(String targetCssPath, String sourceCssDirectory, String resourcePath) {
+        if (!CssUrlRewriter.isRelative(resourcePath)) {
             return resourcePath;
         }
 
-        String queryString = "";
-        int queryStartIndex = resourcePath.indexOf('?');
+        int queryStartIndex = indexOfQuery(resourcePath);
+        String queryString = queryStartIndex == -1 ? "" : resourcePath.substring(queryStartIndex);
+
+        Path inputBasePath = getMojo().getPathResolver().getInputBasePath();
+        Path outputBasePath = getMojo().getPathResolver().getOutputBasePath();
+        Path absoluteSourceResourcePath = resolveSourceResourcePath(sourceCssDirectory, resourcePath);
+        Path absoluteTargetResourcePath = outputBasePath.resolve(inputBasePath.relativize(absoluteSourceResourcePath));
+        if (assetFingerprinter != null) {
+            Path fingerprintedPath = assetFingerprinter.fingerprint(absoluteSourceResourcePath, absoluteTargetResourcePath);
+            if (fingerprintedPath != null) {
+                absoluteTargetResourcePath = fingerprintedPath;
+            }
+        }
+        Path absoluteTargetCssDirectory = getAbsolutResourcePath(targetCssPath, outputBasePath, outputBasePath).normalize().getParent();
+
+        String rewrittenPath = absoluteTargetCssDirectory.relativize(absoluteTargetResourcePath).normalize().toString();
+        if (queryString.isEmpty() && getMojo().getDataUriThreshold() > 0) {
+            assetPaths.computeIfAbsent(targetCssPath, key -> new ConcurrentHashMap<>()).put(rewrittenPath, absoluteSourceResourcePath);
+        }
+        return rewrittenPath + queryString;
+    }
+
+    /**
+     * @return path of the resource referenced by a source of the directory, without its query string
+     */
+    private Path resolveSourceResourcePath(String sourceCssDirectory, String resourcePath) {
+        int queryStartIndex = indexOfQuery(resourcePath);
         if (queryStartIndex != -1) {
-            queryString = resourcePath.substring(queryStartIndex);
             resourcePath = resourcePath.substring(0, queryStartIndex);
         }
-        
-        Path absoluteSourceCssPath = getAbsolutResourcePath(sourceCssPath, getMojo().getInputBaseDir().getAbsoluteFile().toPath(), getMojo().getInputBaseDir().getAbsoluteFile().toPath());        
-        Path absoluteSourceResourcePath = absoluteSourceCssPath.resolve(resourcePath).normalize();        
-        Path relativeSourceResourcePath = getMojo().getInputBaseDir().getAbsoluteFile().toPath().relativize(absoluteSourceResourcePath);
-        
-        Path absoluteTargetCssPath = getAbsolutResourcePath(targetCssPath, getMojo().getOutputBaseDir().getAbsoluteFile().toPath(), getMojo().getOutputBaseDir().getAbsoluteFile().toPath()).normalize();
-        Path absoluteTargetResourcePath = getMojo().getOutputBaseDir().getAbsoluteFile().toPath().resolve(relativeSourceResourcePath);                               
-        Path relativeTargetResourcePath = absoluteTargetCssPath.relativize(absoluteTargetResourcePath);
-        
-        return relativeTargetResourcePath.normalize() + queryString; 
-    }
-
-    private boolean isUrlAbsolute(String url) {
-        return url.startsWith("/");
+        Path inputBasePath = getMojo().getPathResolver().getInputBasePath();
+        return getAbsolutResourcePath(sourceCssDirectory, inputBasePath, inputBasePath).resolve(resourcePath).normalize();
+    }
+
+    /**
+     * @return index of the query string or of the fragment, whichever comes first, -1 when there is none
+     */
+    private static int indexOfQuery(String resourcePath) {
+        for (int i = 0; i < resourcePath.length(); i++) {
+            char c = resourcePath.charAt(i);
+            if (c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return -1;
     }
 
     private ResourceOptimizer getResourceOptimizer() {
@@ -0,0 +1,173 @@
+package com.github.kospiotr.bundler;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Rewrites the references of the {@code url()} tokens of a style sheet:
+ *
+ * <pre>
+ * {@code
+ *     h1 { background: url("../images/a.png"); }   =>   h1 { background: url("images/a.png"); }
+ *     h2 { background: url( b.png ); }             =>   h2 { background: url(lib/b.png); }
+ *     /* url(commented-out.png) *&#47;             =>   unchanged
+ *     h3:after { content: "url(c.png)"; }          =>   unchanged
+ * }
+ * </pre>
+ *
+ * References may be double, single or not quoted, whitespace around them is dropped. Comments and strings are copied
+ * as they are, so {@code url(} within them is not taken for a token.
+ * <p>
+ * Content is scanned in a single forward pass, the rewritten content is written straight to the output. Instances are
+ * immutable and may be shared between threads.
+ */
+class CssUrlRewriter {
+
+    private static final String URL_START = "url(";
+    private static final String COMMENT_START = "/*";
+    private static final String COMMENT_END = "*/";
+
+    private final UnaryOperator<String> rewriter;
+
+    /**
+     * @param rewriter maps a reference to its rewritten form
+     */
+    CssUrlRewriter(UnaryOperator<String> rewriter) {
+        this.rewriter = rewriter;
+    }
+
+    /**
+     * @param content style sheet
+     * @return style sheet with every reference rewritten, the content itself when none of them changed
+     */
+    String rewrite(String content) {
+        if (!content.contains(URL_START)) {
+            return content;
+        }
+        int length = content.length();
+        StringBuilder out = new StringBuilder(length + 64);
+        int copied = 0;
+        int index = 0;
+        boolean changed = false;
+        while (index < length) {
+            char c = content.charAt(index);
+            if (c == '/' && content.startsWith(COMMENT_START, index)) {
+                int commentEnd = content.indexOf(COMMENT_END, index + COMMENT_START.length());
+                index = commentEnd == -1 ? length : commentEnd + COMMENT_END.length();
+            } else if (c == '"' || c == '\'') {
+                index = skipString(content, index);
+            } else if (c == 'u' && content.startsWith(URL_START, index) && !isNameChar(content, index - 1)) {
+                int outLength = out.length();
+                int end = rewriteUrl(content, index, copied, out);
+                if (end == -1) {
+                    index += URL_START.length();
+                } else {
+                    changed = changed || out.length() - outLength != end - copied
+                            || !content.regionMatches(copied, out.substring(outLength), 0, end - copied);
+                    index = end;
+                    copied = end;
+                }
+            } else {
+                index++;
+            }
+        }
+        if (!changed) {
+            return content;
+        }
+        return out.append(content, copied, length).toString();
+    }
+
+    /**
+     * @return whether the url is relative to the style sheet: neither absolute, nor with a scheme (e.g.
+     * {@code data:}, {@code https:}), nor a fragment only
+     */
+    static boolean isRelative(String url) {
+        if (url.isEmpty() || url.startsWith("/") || url.startsWith("#")) {
+            return false;
+        }
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == ':') {
+                return false;
+            }
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the content preceding the token and the rewritten token to the output.
+     *
+     * @return index following the token or -1 when it is not a valid one, in which case nothing is appended
+     */
+    private int rewriteUrl(String content, int start, int copied, StringBuilder out) {
+        int length = content.length();
+        int index = skipWhitespace(content, start + URL_START.length());
+        if (index == length) {
+            return -1;
+        }
+        char quote = content.charAt(index);
+        int valueStart;
+        int valueEnd;
+        int end;
+        if (quote == '"' || quote == '\'') {
+            valueStart = index + 1;
+            valueEnd = skipString(content, index) - 1;
+            end = skipWhitespace(content, valueEnd + 1);
+            if (valueEnd >= length || content.charAt(valueEnd) != quote || end == length || content.charAt(end) != ')') {
+                return -1;
+            }
+        } else {
+            quote = 0;
+            valueStart = index;
+            valueEnd = content.indexOf(')', index);
+            if (valueEnd == -1) {
+                return -1;
+            }
+            end = valueEnd;
+        }
+        String reference = content.substring(valueStart, valueEnd).trim();
+        out.append(content, copied, start).append(URL_START);
+        if (quote != 0) {
+            out.append(quote).append(rewriter.apply(reference)).append(quote);
+        } else {
+            out.append(rewriter.apply(reference));
+        }
+        out.append(')');
+        return end + 1;
+    }
+
+    /**
+     * @return index following the closing quote of the string starting at the index, or the end of the content when
+     * the string is not terminated
+     */
+    private static int skipString(String content, int index) {
+        char quote = content.charAt(index);
+        int length = content.length();
+        for (int i = index + 1; i < length; i++) {
+            char c = content.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == quote) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static int skipWhitespace(String content, int index) {
+        while (index < content.length() && Character.isWhitespace(content.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean isNameChar(String content, int index) {
+        if (index < 0) {
+            return false;
+        }
+        char c = content.charAt(index);
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.kospiotr.bundler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Replaces the {@code url()} references of style sheets to small images, fonts and SVGs with {@code data:} URIs
+ * holding their base64 encoded content, saving a request per asset.
+ * <p>
+ * Only assets up to the asset size limit are inlined, and only until the data URIs inlined into a bundle reach the
+ * bundle limit, so that the style sheet doesn't grow too large. References with a query or a fragment (e.g. SVG
+ * sprites, {@code ?#iefix} font hacks) are left alone.
+ * <p>
+ * Encoded assets are cached for the lifetime of the instance, i.e. a single build, so assets referenced by several
+ * bundles are read and encoded once. Safe for concurrent use, {@link Bundle}s are not.
+ */
+class DataUriInliner {
+
+    private static final Map<String, String> MEDIA_TYPES = new HashMap<>();
+
+    static {
+        MEDIA_TYPES.put("png", "image/png");
+        MEDIA_TYPES.put("gif", "image/gif");
+        MEDIA_TYPES.put("jpg", "image/jpeg");
+        MEDIA_TYPES.put("jpeg", "image/jpeg");
+        MEDIA_TYPES.put("webp", "image/webp");
+        MEDIA_TYPES.put("avif", "image/avif");
+        MEDIA_TYPES.put("ico", "image/x-icon");
+        MEDIA_TYPES.put("svg", "image/svg+xml");
+        MEDIA_TYPES.put("woff", "font/woff");
+        MEDIA_TYPES.put("woff2", "font/woff2");
+        MEDIA_TYPES.put("ttf", "font/ttf");
+        MEDIA_TYPES.put("otf", "font/otf");
+        MEDIA_TYPES.put("eot", "application/vnd.ms-fontobject");
+    }
+
+    /**
+     * Data URI of assets that are not inlined.
+     */
+    private static final String NONE = "";
+
+    private final long maxAssetSize;
+    private final long bundleLimit;
+    private final Function<Path, ByteBuffer> reader;
+    private final ConcurrentMap<Path, String> dataUris = new ConcurrentHashMap<>();
+    private final AtomicInteger inlinedCount = new AtomicInteger();
+    private final AtomicLong inlinedLength = new AtomicLong();
+
+    /**
+     * @param maxAssetSize maximal size in bytes of the inlined assets
+     * @param bundleLimit  maximal total length of the data URIs inlined into a single bundle
+     * @param reader       reads the content of an asset
+     */
+    DataUriInliner(long maxAssetSize, long bundleLimit, Function<Path, ByteBuffer> reader) {
+        this.maxAssetSize = maxAssetSize;
+        this.bundleLimit = bundleLimit;
+        this.reader = reader;
+    }
+
+    /**
+     * @param assetResolver maps a reference of the bundle to the path of the asset, or null when it has none
+     * @return state of a single bundle, its sources have to be inlined in order
+     */
+    Bundle newBundle(Function<String, Path> assetResolver) {
+        return new Bundle(assetResolver);
+    }
+
+    /**
+     * @return number of references replaced by a data URI
+     */
+    int getInlinedCount() {
+        return inlinedCount.get();
+    }
+
+    /**
+     * @return total length of the data URIs inlined
+     */
+    long getInlinedLength() {
+        return inlinedLength.get();
+    }
+
+    /**
+     * @return data URI of the asset or {@link #NONE} when it is not an inlinable asset
+     */
+    private String getDataUri(Path path) {
+        String dataUri = dataUris.get(path);
+        if (dataUri == null) {
+            dataUri = encode(path);
+            dataUris.putIfAbsent(path, dataUri);
+        }
+        return dataUri;
+    }
+
+    private String encode(Path path) {
+        String fileName = path.getFileName().toString();
+        String mediaType = MEDIA_TYPES.get(fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT));
+        try {
+            if (mediaType == null || !Files.isRegularFile(path) || Files.size(path) > maxAssetSize) {
+                return NONE;
+            }
+        } catch (IOException e) {
+            return NONE;
+        }
+        // inlined assets are small, the content is simply encoded in memory
+        ByteBuffer encoded = Base64.getEncoder().encode(reader.apply(path));
+        return "data:" + mediaType + ";base64," + StandardCharsets.US_ASCII.decode(encoded);
+    }
+
+    class Bundle {
+
+        private final Function<String, Path> assetResolver;
+        private final Set<Path> assets = new LinkedHashSet<>();
+        private final CssUrlRewriter rewriter = new CssUrlRewriter(this::inlineUrl);
+        private long length;
+
+        private Bundle(Function<String, Path> assetResolver) {
+            this.assetResolver = assetResolver;
+        }
+
+        /**
+         * @return style sheet with the references to small assets replaced by data URIs, as long as the bundle limit
+         * allows
+         */
+        String inline(String content) {
+            return length >= bundleLimit ? content : rewriter.rewrite(content);
+        }
+
+        /**
+         * @return assets inlined into the bundle
+         */
+        Set<Path> getAssets() {
+            return Collections.unmodifiableSet(assets);
+        }
+
+        private String inlineUrl(String url) {
+            if (!CssUrlRewriter.isRelative(url) || url.indexOf('?') != -1 || url.indexOf('#') != -1) {
+                return url;
+            }
+            Path path = assetResolver.apply(url);
+            if (path == null) {
+                return url;
+            }
+            String dataUri = getDataUri(path);
+            if (dataUri.isEmpty() || length + dataUri.length() > bundleLimit) {
+                return url;
+            }
+            assets.add(path);
+            length += dataUri.length();
+            inlinedCount.incrementAndGet();
+            inlinedLength.addAndGet(dataUri.length());
+            return dataUri;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.kospiotr.bundler;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reverse index from every file read by a build (pages and bundle sources) to the pages that have to be processed
+ * again when the file changes.
+ */
+class DependencyIndex {
+
+    private final Map<Path, Set<Path>> pagesByFile = new HashMap<>();
+    private final Set<Path> outputs = new HashSet<>();
+
+    DependencyIndex(BuildState buildState) {
+        for (BuildState.PageRecord page : buildState.getPages()) {
+            Path inputFilePath = page.getInputFilePath();
+            addDependency(inputFilePath, inputFilePath);
+            outputs.add(page.getOutputFilePath().normalize());
+            for (String bundleId : page.getBundleIds()) {
+                BuildState.BundleRecord bundle = buildState.getBundle(bundleId);
+                if (bundle == null) {
+                    continue;
+                }
+                outputs.add(bundle.getOutputPath().normalize());
+                for (Path srcPath : bundle.getSrcPaths()) {
+                    addDependency(srcPath, inputFilePath);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param changedFiles files created, modified or deleted
+     * @return input files of the pages depending on any of the changed files
+     */
+    public Set<Path> getAffectedPages(Collection<Path> changedFiles) {
+        Set<Path> affectedPages = new HashSet<>();
+        for (Path changedFile : changedFiles) {
+            Set<Path> pages = pagesByFile.get(changedFile.normalize());
+            if (pages != null) {
+                affectedPages.addAll(pages);
+            }
+        }
+        return affectedPages;
+    }
+
+    public boolean containsPage(Path inputFilePath) {
+        Set<Path> pages = pagesByFile.get(inputFilePath);
+        return pages != null && pages.contains(inputFilePath);
+    }
+
+    /**
+     * @param path file path
+     * @return true when the file is written by the build
+     */
+    public boolean isOutput(Path path) {
+        return outputs.contains(path.normalize());
+    }
+
+    /**
+     * @return directories containing files the pages depend on
+     */
+    public Set<Path> getDirectories() {
+        Set<Path> directories = new HashSet<>();
+        for (Path file : pagesByFile.keySet()) {
+            if (file.getParent() != null) {
+                directories.add(file.getParent());
+            }
+        }
+        return directories;
+    }
+
+    private void addDependency(Path file, Path inputFilePath) {
+        Set<Path> pages = pagesByFile.get(file.normalize());
+        if (pages == null) {
+            pages = new HashSet<>();
+            pagesByFile.put(file.normalize(), pages);
+        }
+        pages.add(inputFilePath);
+    }
+}
@@ -1,21 +1,66 @@
 package com.github.kospiotr.bundler;
 
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 class FileProcessor {
 
     Tokenizer tokenizer;
-    ResourceAccess resourceAccess = new ResourceAccess();
-
+    ResourceAccess resourceAccess;
+    Precompressor precompressor;
 
     public FileProcessor(Tokenizer tokenizer) {
+        this(tokenizer, new ResourceAccess());
+    }
+
+    public FileProcessor(Tokenizer tokenizer, ResourceAccess resourceAccess) {
         this.tokenizer = tokenizer;
+        this.resourceAccess = resourceAccess;
+    }
+
+    /**
+     * @param precompressor precompressor writing compressed siblings of the pages, may be null
+     */
+    void setPrecompressor(Precompressor precompressor) {
+        this.precompressor = precompressor;
     }
 
     public void process(Path inputFilePath, Path outputFilePath) {
-        String inputFileContent = resourceAccess.read(inputFilePath);
-        String outputFileContent = tokenizer.process(inputFileContent);
-        resourceAccess.write(outputFilePath, outputFileContent);
+        process(new Page(inputFilePath, outputFilePath));
+    }
+
+    /**
+     * Streams the page to its output: only the bundle blocks are decoded and held in memory, the rest of the page is
+     * copied to the output as it is.
+     */
+    public void process(Page page) {
+        if (isSameFile(page.getInputFilePath(), page.getOutputFilePath())) {
+            // a memory mapped input can't be replaced on every platform
+            String inputFileContent = resourceAccess.read(page.getInputFilePath()).getString();
+            String outputFileContent = tokenizer.process(page, inputFileContent);
+            boolean changed = resourceAccess.write(page.getOutputFilePath(), ResourceContent.of(outputFileContent));
+            precompress(page, changed);
+            return;
+        }
+        ByteBuffer inputFileContent = resourceAccess.readBuffer(page.getInputFilePath());
+        boolean changed = resourceAccess.write(page.getOutputFilePath(), out -> tokenizer.process(page, inputFileContent, out));
+        precompress(page, changed);
+    }
+
+    private void precompress(Page page, boolean changed) {
+        if (precompressor != null) {
+            precompressor.compress(page.getOutputFilePath(), changed);
+        }
+    }
+
+    private static boolean isSameFile(Path inputFilePath, Path outputFilePath) {
+        try {
+            return Files.exists(outputFilePath) && Files.isSameFile(inputFilePath, outputFilePath);
+        } catch (IOException e) {
+            return false;
+        }
     }
 }
@@ -0,0 +1,170 @@
+package com.github.kospiotr.bundler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extracts the value of a single attribute from every element with the given name, e.g. {@code src} of
+ * {@code <script>} elements:
+ *
+ * <pre>
+ * {@code
+ *     <script type="text/javascript" src="lib1.js"></script>
+ *     <script src='lib2.js' defer></script>
+ *     <!-- <script src="commented-out.js"></script> -->
+ * }
+ * </pre>
+ *
+ * yields {@code lib1.js} and {@code lib2.js}. Attributes may appear in any order and be double, single or not quoted.
+ * Element and attribute names are matched case insensitively, comments are skipped and so is the content of the
+ * matched elements (nothing inside a {@code <script>} element is taken for markup).
+ * <p>
+ * Content is scanned in a single forward pass, only the extracted values are allocated. Instances are immutable and
+ * may be shared between threads.
+ */
+public class InnerTagLexer {
+
+    private static final String COMMENT_START = "<!--";
+    private static final String COMMENT_END = "-->";
+
+    private final String elementName;
+    private final String attributeName;
+    private final boolean skipElementContent;
+
+    /**
+     * @param elementName        name of the elements to extract the attribute from
+     * @param attributeName      name of the attribute to extract
+     * @param skipElementContent whether the content of the element up to its end tag must be skipped, e.g. for
+     *                           {@code <script>} elements
+     */
+    public InnerTagLexer(String elementName, String attributeName, boolean skipElementContent) {
+        this.elementName = elementName;
+        this.attributeName = attributeName;
+        this.skipElementContent = skipElementContent;
+    }
+
+    /**
+     * @param content content to scan
+     * @return attribute values in document order, elements without the attribute are skipped
+     */
+    public List<String> extract(String content) {
+        List<String> values = new ArrayList<>();
+        int length = content.length();
+        int index = content.indexOf('<');
+        while (index != -1 && index < length) {
+            if (content.startsWith(COMMENT_START, index)) {
+                int commentEnd = content.indexOf(COMMENT_END, index + COMMENT_START.length());
+                if (commentEnd == -1) {
+                    break;
+                }
+                index = content.indexOf('<', commentEnd + COMMENT_END.length());
+            } else if (isStartTag(content, index)) {
+                index = readStartTag(content, index + 1 + elementName.length(), values);
+                if (skipElementContent && index < length) {
+                    index = skipElementContent(content, index);
+                }
+                index = content.indexOf('<', index);
+            } else {
+                index = content.indexOf('<', index + 1);
+            }
+        }
+        return values;
+    }
+
+    private boolean isStartTag(String content, int index) {
+        int nameEnd = index + 1 + elementName.length();
+        return content.regionMatches(true, index + 1, elementName, 0, elementName.length())
+                && (nameEnd == content.length() || isNameEnd(content.charAt(nameEnd)));
+    }
+
+    /**
+     * Reads the attributes of a start tag, adding the value of the extracted attribute.
+     *
+     * @return index right after the start tag
+     */
+    private int readStartTag(String content, int index, List<String> values) {
+        int length = content.length();
+        boolean found = false;
+        while (true) {
+            index = skipWhitespaces(content, index);
+            if (index >= length) {
+                return length;
+            }
+            char c = content.charAt(index);
+            if (c == '>') {
+                return index + 1;
+            }
+            if (c == '/') {
+                index++;
+                continue;
+            }
+
+            int nameStart = index;
+            while (index < length && !isNameEnd(content.charAt(index)) && content.charAt(index) != '=') {
+                index++;
+            }
+            int nameEnd = index;
+            index = skipWhitespaces(content, index);
+            if (index >= length || content.charAt(index) != '=') {
+                // attribute without value
+                continue;
+            }
+
+            index = skipWhitespaces(content, index + 1);
+            int valueStart;
+            int valueEnd;
+            if (index < length && (content.charAt(index) == '"' || content.charAt(index) == '\'')) {
+                valueStart = index + 1;
+                valueEnd = content.indexOf(content.charAt(index), valueStart);
+                if (valueEnd == -1) {
+                    return length;
+                }
+                index = valueEnd + 1;
+            } else {
+                valueStart = index;
+                while (index < length && !isWhitespace(content.charAt(index)) && content.charAt(index) != '>') {
+                    index++;
+                }
+                valueEnd = index;
+            }
+
+            if (!found && nameEnd - nameStart == attributeName.length()
+                    && content.regionMatches(true, nameStart, attributeName, 0, attributeName.length())) {
+                values.add(content.substring(valueStart, valueEnd));
+                found = true;
+            }
+        }
+    }
+
+    /**
+     * @return index right after the end tag of the element or the end of the content when there is none
+     */
+    private int skipElementContent(String content, int index) {
+        int length = content.length();
+        int endTagLength = 2 + elementName.length();
+        for (index = content.indexOf("</", index); index != -1; index = content.indexOf("</", index + 2)) {
+            if (content.regionMatches(true, index + 2, elementName, 0, elementName.length())
+                    && (index + endTagLength == length || isNameEnd(content.charAt(index + endTagLength)))) {
+                int endTagEnd = content.indexOf('>', index + endTagLength);
+                return endTagEnd == -1 ? length : endTagEnd + 1;
+            }
+        }
+        return length;
+    }
+
+    private static int skipWhitespaces(String content, int index) {
+        int length = content.length();
+        while (index < length && isWhitespace(content.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean isNameEnd(char c) {
+        return isWhitespace(c) || c == '>' || c == '/';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.kospiotr.bundler;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * Set of pages processed by a single execution.
+ *
+ * <pre>
+ * {@code
+ *     <inputFiles>
+ *         <directory>${project.basedir}/src/main/webapp</directory>
+ *         <includes>
+ *             <include>**&#47;*.xhtml</include>
+ *         </includes>
+ *         <excludes>
+ *             <exclude>resources/**</exclude>
+ *         </excludes>
+ *         <outputDirectory>${processed.files.dir}</outputDirectory>
+ *     </inputFiles>
+ * }
+ * </pre>
+ *
+ * Every matching page is written to the same relative location under the output directory.
+ */
+public class InputFiles {
+
+    private File directory;
+    private String[] includes;
+    private String[] excludes;
+    private File outputDirectory;
+
+    public InputFiles() {
+    }
+
+    InputFiles(File directory, String[] includes, String[] excludes, File outputDirectory) {
+        this.directory = directory;
+        this.includes = includes;
+        this.excludes = excludes;
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Scans the directory and maps every matching page to its output location.
+     *
+     * @return pages in a stable (alphabetical) order
+     */
+    List<Page> scan() {
+        if (directory == null || outputDirectory == null) {
+            throw new IllegalArgumentException("Both directory and outputDirectory are required for inputFiles");
+        }
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(directory);
+        if (includes != null && includes.length > 0) {
+            scanner.setIncludes(includes);
+        }
+        if (excludes != null && excludes.length > 0) {
+            scanner.setExcludes(excludes);
+        }
+        scanner.addDefaultExcludes();
+        scanner.scan();
+
+        String[] includedFiles = scanner.getIncludedFiles();
+        Arrays.sort(includedFiles);
+
+        Path inputDir = directory.getAbsoluteFile().toPath();
+        Path outputDir = outputDirectory.getAbsoluteFile().toPath();
+        List<Page> pages = new ArrayList<>(includedFiles.length);
+        for (String includedFile : includedFiles) {
+            pages.add(new Page(inputDir.resolve(includedFile), outputDir.resolve(includedFile)));
+        }
+        return pages;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public String[] getIncludes() {
+        return includes;
+    }
+
+    public void setIncludes(String[] includes) {
+        this.includes = includes;
+    }
+
+    public String[] getExcludes() {
+        return excludes;
+    }
+
+    public void setExcludes(String[] excludes) {
+        this.excludes = excludes;
+    }
+
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public void setOutputDirectory(File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+}
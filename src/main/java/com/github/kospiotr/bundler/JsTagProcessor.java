@@ -1,5 +1,6 @@
 package com.github.kospiotr.bundler;
 
+import com.github.kospiotr.bundler.optimizer.BinaryResourceOptimizer;
 import com.github.kospiotr.bundler.optimizer.JsOptimizerParams;
 import com.github.kospiotr.bundler.optimizer.OptimizerFactory;
 import com.github.kospiotr.bundler.optimizer.ResourceOptimizer;
@@ -23,7 +24,7 @@ import com.github.kospiotr.bundler.optimizer.ResourceOptimizer;
  */
 public class JsTagProcessor extends RegexBasedTagProcessor {
 
-    private static final String TAG_REGEX = "\\Q<script\\E.*?src\\=\"(.*?)\".*?\\>.*?\\Q</script>\\E";
+    private static final InnerTagLexer INNER_TAG_LEXER = new InnerTagLexer("script", "src", true);
 
     // We don't add a final modifier here because we need to mock this field in unit test.
     private OptimizerFactory optimizerFactory = OptimizerFactory.getInsatnce();
@@ -39,18 +40,32 @@ public class JsTagProcessor extends RegexBasedTagProcessor {
     }
 
     @Override
-    protected String postProcessOutputFileContent(String content) {
+    protected ResourceContent postProcessOutputFileContent(ResourceContent content) {
+        ResourceOptimizer optimizer = getResourceOptimizer();
+        if (optimizer instanceof BinaryResourceOptimizer) {
+            return ResourceContent.of(((BinaryResourceOptimizer) optimizer).optimizeJs(content.getBytes(), createOptimizerParams()));
+        }
+        String optimizedContent = optimizer.optimizeJs(content.getString(), createOptimizerParams());
+        return optimizedContent != null ? ResourceContent.of(optimizedContent) : null;
+    }
+
+    @Override
+    protected String getOptimizerSettings() {
+        return "jsOptimizer=" + getMojo().getJsOptimizer() + ";" + createOptimizerParams();
+    }
+
+    private JsOptimizerParams createOptimizerParams() {
         JsOptimizerParams params = new JsOptimizerParams();
         params.setMunge(getMojo().isMunge());
         params.setVerbose(getMojo().isVerbose());
         params.setPreserveAllSemiColons(getMojo().isPreserveAllSemiColons());
         params.setDisableOptimizations(getMojo().isDisableOptimizations());
-        return getResourceOptimizer().optimizeJs(content, params);
+        return params;
     }
 
     @Override
-    protected String tagRegex() {
-        return TAG_REGEX;
+    protected InnerTagLexer innerTagLexer() {
+        return INNER_TAG_LEXER;
     }
 
     private ResourceOptimizer getResourceOptimizer() {
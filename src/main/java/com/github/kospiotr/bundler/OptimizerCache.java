@@ -0,0 +1,168 @@
+package com.github.kospiotr.bundler;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.github.kospiotr.bundler.util.HashGenerator;
+
+/**
+ * Content addressed cache of optimized sources, shared between builds (and projects when pointed to the same
+ * directory). Entries are keyed by the hash of the source content, the optimizer settings and the plugin version, so
+ * they never have to be invalidated: a changed source simply maps to a different entry.
+ * <p>
+ * Entries are written atomically, concurrent builds storing the same entry are harmless. The last modification time
+ * of an entry is its last use, {@link #evict()} removes the least recently used entries over the size limit.
+ * <p>
+ * The cache is an optimization only: entries that can't be read or written are treated as misses.
+ */
+class OptimizerCache {
+
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+    private static final String KEY_ALGORITHM = "SHA-256";
+    private static final String ENTRY_SUFFIX = ".min";
+
+    private final Path directory;
+    private final long maxSize;
+    private final String version;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * @param directory directory the entries are stored in
+     * @param maxSize   maximal total size of the entries in bytes
+     * @param version   version of the plugin, entries of other versions are never used
+     */
+    OptimizerCache(Path directory, long maxSize, String version) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.version = version;
+    }
+
+    /**
+     * @return key of the optimized content
+     */
+    String key(ResourceContent content, String settings) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(KEY_ALGORITHM);
+            digest.update((version + "\n" + settings + "\n").getBytes(CHARSET));
+            digest.update(content.getBytes());
+            return HashGenerator.toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return cached optimized content or null when there is none
+     */
+    ResourceContent get(String key) {
+        Path entry = entryPath(key);
+        try {
+            ResourceContent content = ResourceContent.of(Files.readAllBytes(entry));
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return content;
+        } catch (IOException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    void put(String key, ResourceContent optimizedContent) {
+        Path entry = entryPath(key);
+        try {
+            Files.createDirectories(entry.getParent());
+            Path tempFile = Files.createTempFile(entry.getParent(), key, ".tmp");
+            try {
+                Files.write(tempFile, optimizedContent.getBytes());
+                Files.move(tempFile, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            // not cached, the content is optimized again next time
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the total size of the cache fits the limit.
+     *
+     * @return number of removed entries
+     */
+    int evict() {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        List<Entry> entries = new ArrayList<>();
+        long size = 0;
+        try (Stream<Path> files = Files.walk(directory, 2)) {
+            for (Path file : files.filter(file -> file.getFileName().toString().endsWith(ENTRY_SUFFIX)).collect(Collectors.toList())) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    entries.add(new Entry(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    size += attributes.size();
+                } catch (NoSuchFileException e) {
+                    // evicted concurrently
+                }
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+
+        int evicted = 0;
+        entries.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+        for (Entry entry : entries) {
+            if (size <= maxSize) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(entry.path);
+                size -= entry.size;
+                evicted++;
+            } catch (IOException e) {
+                // in use, try the next one
+            }
+        }
+        return evicted;
+    }
+
+    int getHitCount() {
+        return hits.get();
+    }
+
+    int getMissCount() {
+        return misses.get();
+    }
+
+    private Path entryPath(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+    }
+
+    private static class Entry {
+
+        private final Path path;
+        private final long size;
+        private final long lastUsed;
+
+        Entry(Path path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.kospiotr.bundler;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single page (html / xhtml file) processed by the plugin together with the location it is written to.
+ */
+class Page {
+
+    private final Path inputFilePath;
+    private final Path outputFilePath;
+    private final Set<String> bundleIds = ConcurrentHashMap.newKeySet();
+
+    Page(Path inputFilePath, Path outputFilePath) {
+        this.inputFilePath = inputFilePath;
+        this.outputFilePath = outputFilePath;
+    }
+
+    public Path getInputFilePath() {
+        return inputFilePath;
+    }
+
+    public Path getOutputFilePath() {
+        return outputFilePath;
+    }
+
+    /**
+     * @return identifiers of the bundles declared in the page, see {@link BundleKey#getId()}
+     */
+    public Set<String> getBundleIds() {
+        return bundleIds;
+    }
+
+    public void addBundleId(String bundleId) {
+        bundleIds.add(bundleId);
+    }
+
+    @Override
+    public String toString() {
+        return "Page{" +
+                "inputFilePath=" + inputFilePath +
+                ", outputFilePath=" + outputFilePath +
+                '}';
+    }
+}
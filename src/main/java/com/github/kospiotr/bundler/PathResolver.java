@@ -0,0 +1,142 @@
+package com.github.kospiotr.bundler;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves the paths of sources and outputs as written in the pages. Paths starting with a context path expression,
+ * e.g. {@code #{request.contextPath}/js/app.js}, are resolved against the base directory of the web application (the
+ * input one for sources, the output one for outputs), any other path against the directory of the page.
+ * <p>
+ * Expressions may be mapped to a directory within the base directory: {@code #{resource.path}/=resources} resolves
+ * {@code #{resource.path}/js/app.js} to {@code resources/js/app.js} of the base directory.
+ * <p>
+ * Resolved paths are cached for the lifetime of the instance, i.e. a single build, and equal paths are shared. Safe
+ * for concurrent use.
+ */
+class PathResolver {
+
+    static final List<String> DEFAULT_EXPRESSIONS = Arrays.asList(
+            "#{request.contextPath}/",
+            "#{facesContext.externalContext.request.contextPath}/");
+
+    private final Path inputBasePath;
+    private final Path outputBasePath;
+    private final List<Expression> expressions = new ArrayList<>();
+    private final ConcurrentMap<Key, Path> resolvedPaths = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Path, Path> internedPaths = new ConcurrentHashMap<>();
+
+    /**
+     * @param inputBasePath  absolute base directory of the sources, may be null when no expression is used
+     * @param outputBasePath absolute base directory of the outputs, may be null when no expression is used
+     * @param expressions    context path expressions, optionally followed by {@code =} and a directory relative to
+     *                       the base directories
+     * @throws IllegalArgumentException when an expression is empty
+     */
+    PathResolver(Path inputBasePath, Path outputBasePath, Collection<String> expressions) {
+        this.inputBasePath = inputBasePath;
+        this.outputBasePath = outputBasePath;
+        for (String expression : expressions) {
+            // the directory follows the last '=' outside of the expression itself
+            int separator = expression.indexOf('=', expression.lastIndexOf('}') + 1);
+            String prefix = (separator == -1 ? expression : expression.substring(0, separator)).trim();
+            String directory = separator == -1 ? "" : expression.substring(separator + 1).trim();
+            if (prefix.isEmpty()) {
+                throw new IllegalArgumentException("Empty context path expression: " + expression);
+            }
+            this.expressions.add(new Expression(prefix, directory));
+        }
+    }
+
+    /**
+     * @param path       path as written in the page
+     * @param parentPath directory paths without an expression are relative to
+     * @param basePath   base directory paths with an expression are relative to
+     * @return resolved path
+     */
+    Path resolve(String path, Path parentPath, Path basePath) {
+        Key key = new Key(path, parentPath, basePath);
+        Path resolvedPath = resolvedPaths.get(key);
+        if (resolvedPath == null) {
+            resolvedPath = intern(doResolve(path, parentPath, basePath));
+            resolvedPaths.putIfAbsent(key, resolvedPath);
+        }
+        return resolvedPath;
+    }
+
+    Path getInputBasePath() {
+        return inputBasePath;
+    }
+
+    Path getOutputBasePath() {
+        return outputBasePath;
+    }
+
+    private Path doResolve(String path, Path parentPath, Path basePath) {
+        for (Expression expression : expressions) {
+            if (path.startsWith(expression.prefix)) {
+                String relativePath = path.substring(expression.prefix.length());
+                return expression.directory.isEmpty()
+                        ? basePath.resolve(relativePath)
+                        : basePath.resolve(expression.directory).resolve(relativePath);
+            }
+        }
+        return parentPath.resolve(path);
+    }
+
+    private Path intern(Path path) {
+        Path existing = internedPaths.putIfAbsent(path, path);
+        return existing != null ? existing : path;
+    }
+
+    private static class Expression {
+
+        private final String prefix;
+        private final String directory;
+
+        Expression(String prefix, String directory) {
+            this.prefix = prefix;
+            this.directory = directory;
+        }
+    }
+
+    private static class Key {
+
+        private final String path;
+        private final Path parentPath;
+        private final Path basePath;
+        private final int hash;
+
+        Key(String path, Path parentPath, Path basePath) {
+            this.path = path;
+            this.parentPath = parentPath;
+            this.basePath = basePath;
+            this.hash = 31 * (31 * path.hashCode() + (parentPath != null ? parentPath.hashCode() : 0))
+                    + (basePath != null ? basePath.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && path.equals(key.path)
+                    && (parentPath != null ? parentPath.equals(key.parentPath) : key.parentPath == null)
+                    && (basePath != null ? basePath.equals(key.basePath) : key.basePath == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
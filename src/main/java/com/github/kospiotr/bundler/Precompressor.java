@@ -0,0 +1,324 @@
+package com.github.kospiotr.bundler;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.github.kospiotr.bundler.util.ZopfliDeflater;
+
+/**
+ * Writes precompressed siblings of the outputs (e.g. {@code app.min.js.gz} next to {@code app.min.js}), so that
+ * servers can serve them as they are instead of compressing on every request.
+ * <p>
+ * Outputs larger than {@link #BLOCK_SIZE} are split into blocks compressed in parallel, the way pigz does:
+ * <ul>
+ * <li>gzip: every block is a complete gzip member, a gzip stream may consist of any number of members</li>
+ * <li>deflate: blocks are flushed to a byte boundary and the last 32K of the preceding block is used as dictionary,
+ * so the blocks together form a single zlib stream</li>
+ * </ul>
+ * Siblings are only recompressed when the output has changed, any of them is missing or they have been written with
+ * other settings. The settings are recorded in the build state, without one the siblings are always written again.
+ * Siblings of encodings no longer configured are deleted, they would be stale.
+ * <p>
+ * In {@link Mode#ZOPFLI} mode blocks are compressed with {@link ZopfliDeflater} instead of {@link Deflater}: a few
+ * percent smaller siblings for a much longer compression time, worth it for assets served many times.
+ */
+class Precompressor {
+
+    /**
+     * Size of the blocks compressed in parallel, same as the pigz default.
+     */
+    static final int BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    enum Encoding {
+        GZIP(".gz"), DEFLATE(".deflate");
+
+        private final String extension;
+
+        Encoding(String extension) {
+            this.extension = extension;
+        }
+
+        Path siblingOf(Path path) {
+            return path.resolveSibling(path.getFileName() + extension);
+        }
+
+        /**
+         * @throws IllegalArgumentException when the name matches no encoding
+         */
+        static Encoding parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unsupported precompression: " + name + ", supported: gzip, deflate");
+            }
+        }
+    }
+
+    enum Mode {
+        DEFAULT, ZOPFLI;
+
+        /**
+         * @throws IllegalArgumentException when the name matches no mode
+         */
+        static Mode parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unsupported compression mode: " + name + ", supported: default, zopfli");
+            }
+        }
+    }
+
+    private final Set<Encoding> encodings;
+    private final int level;
+    private final Mode mode;
+    private final int iterations;
+    private final ZopfliDeflater zopfliDeflater;
+    private final BuildState buildState;
+    private final Executor executor;
+    private final ResourceAccess resourceAccess;
+    private final Collection<Result> results = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param encodings      encodings of the siblings to write
+     * @param level          compression level, 0 - 9, ignored in {@link Mode#ZOPFLI} mode
+     * @param mode           mode of the outputs not choosing one
+     * @param iterations     number of {@link ZopfliDeflater} iterations
+     * @param buildState     state of an incremental build, may be null
+     * @param executor       executor the blocks are compressed on
+     * @param resourceAccess used to write the siblings
+     */
+    Precompressor(Collection<Encoding> encodings, int level, Mode mode, int iterations, BuildState buildState,
+                  Executor executor, ResourceAccess resourceAccess) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9: " + level);
+        }
+        this.encodings = EnumSet.copyOf(encodings);
+        this.level = level;
+        this.mode = mode;
+        this.iterations = iterations;
+        this.zopfliDeflater = new ZopfliDeflater(iterations);
+        this.buildState = buildState;
+        this.executor = executor;
+        this.resourceAccess = resourceAccess;
+    }
+
+    /**
+     * Writes the siblings of the output unless it is unchanged and all of them exist with the same settings.
+     *
+     * @param path    output
+     * @param changed whether the output has been written
+     */
+    void compress(Path path, boolean changed) {
+        compress(path, changed, null);
+    }
+
+    /**
+     * @param mode mode chosen for the output or null for the configured one
+     * @see #compress(Path, boolean)
+     */
+    void compress(Path path, boolean changed, Mode mode) {
+        Mode outputMode = mode != null ? mode : this.mode;
+        for (Encoding encoding : EnumSet.complementOf(EnumSet.copyOf(encodings))) {
+            resourceAccess.delete(encoding.siblingOf(path));
+        }
+        String settings = getSettings(outputMode);
+        if (buildState != null && !changed && buildState.isPrecompressed(path, settings)
+                && encodings.stream().allMatch(encoding -> Files.isRegularFile(encoding.siblingOf(path)))) {
+            buildState.recordPrecompressed(path, settings);
+            return;
+        }
+        ByteBuffer content = resourceAccess.readBuffer(path);
+        int length = content.remaining();
+        List<CompletableFuture<Block>> blocks = new ArrayList<>();
+        for (int offset = 0; offset < length || offset == 0; offset += BLOCK_SIZE) {
+            int start = offset;
+            int end = Math.min(length, offset + BLOCK_SIZE);
+            // small outputs are compressed in the calling thread
+            blocks.add(length <= BLOCK_SIZE
+                    ? CompletableFuture.completedFuture(compressBlock(content, start, end, true, outputMode))
+                    : CompletableFuture.supplyAsync(() -> compressBlock(content, start, end, end == length, outputMode), executor));
+        }
+
+        Result result = new Result(path, length, outputMode);
+        List<Block> compressedBlocks = blocks.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        for (Encoding encoding : encodings) {
+            byte[] compressed = encoding == Encoding.GZIP ? gzip(compressedBlocks) : zlib(compressedBlocks, content, outputMode);
+            resourceAccess.write(encoding.siblingOf(path), ResourceContent.of(compressed));
+            result.sizes.put(encoding, compressed.length);
+        }
+        if (buildState != null) {
+            buildState.recordPrecompressed(path, settings);
+        }
+        results.add(result);
+    }
+
+    /**
+     * @return lines describing the sizes of the compressed outputs, ordered by path
+     */
+    List<String> getReport() {
+        return results.stream()
+                .sorted(Comparator.comparing(result -> result.path))
+                .map(Result::toString)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return description of the settings influencing the siblings of an output in the mode
+     */
+    private String getSettings(Mode mode) {
+        String settings = encodings.stream().map(encoding -> encoding.name().toLowerCase(Locale.ROOT)).collect(Collectors.joining(","));
+        return settings + ";" + (mode == Mode.ZOPFLI ? "zopfli;iterations=" + iterations : "level=" + level);
+    }
+
+    private Block compressBlock(ByteBuffer content, int start, int end, boolean last, Mode mode) {
+        // the deflate stream continues from the preceding block, which serves as the dictionary
+        int dictionaryLength = encodings.contains(Encoding.DEFLATE) ? Math.min(start, DICTIONARY_SIZE) : 0;
+        byte[] window = new byte[dictionaryLength + end - start];
+        ByteBuffer source = content.duplicate();
+        source.position(start - dictionaryLength);
+        source.get(window);
+        byte[] input = dictionaryLength == 0 ? window : Arrays.copyOfRange(window, dictionaryLength, window.length);
+
+        Block block = new Block(input.length);
+        if (encodings.contains(Encoding.GZIP)) {
+            CRC32 crc = new CRC32();
+            crc.update(input);
+            block.crc = crc.getValue();
+            block.gzip = deflate(input, 0, true, mode);
+        }
+        if (encodings.contains(Encoding.DEFLATE)) {
+            block.deflate = deflate(window, dictionaryLength, last, mode);
+        }
+        return block;
+    }
+
+    /**
+     * Compresses the data following the dictionary as raw deflate data, either finishing the stream or flushing it to
+     * a byte boundary so that another block can follow.
+     */
+    private byte[] deflate(byte[] data, int dictionaryLength, boolean last, Mode mode) {
+        if (mode == Mode.ZOPFLI) {
+            return zopfliDeflater.deflate(data, dictionaryLength, data.length, last);
+        }
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionaryLength > 0) {
+                deflater.setDictionary(data, 0, dictionaryLength);
+            }
+            deflater.setInput(data, dictionaryLength, data.length - dictionaryLength);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] gzip(List<Block> blocks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Block block : blocks) {
+            out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+            out.write(block.gzip, 0, block.gzip.length);
+            writeIntLE(out, block.crc);
+            writeIntLE(out, block.length);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] zlib(List<Block> blocks, ByteBuffer content, Mode mode) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // 32K window deflate, check bits making the header a multiple of 31
+        out.write(0x78);
+        out.write(mode == Mode.ZOPFLI || level >= 7 ? 0xda : level >= 6 ? 0x9c : level >= 2 ? 0x5e : 0x01);
+        for (Block block : blocks) {
+            out.write(block.deflate, 0, block.deflate.length);
+        }
+        Adler32 adler32 = new Adler32();
+        adler32.update(content.duplicate());
+        long checksum = adler32.getValue();
+        out.write((int) (checksum >>> 24));
+        out.write((int) (checksum >>> 16));
+        out.write((int) (checksum >>> 8));
+        out.write((int) checksum);
+        return out.toByteArray();
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, long value) {
+        out.write((int) value);
+        out.write((int) (value >>> 8));
+        out.write((int) (value >>> 16));
+        out.write((int) (value >>> 24));
+    }
+
+    private static class Block {
+
+        private final int length;
+        private long crc;
+        private byte[] gzip;
+        private byte[] deflate;
+
+        Block(int length) {
+            this.length = length;
+        }
+    }
+
+    private static class Result {
+
+        private final String path;
+        private final int length;
+        private final Mode mode;
+        private final Map<Encoding, Integer> sizes = new EnumMap<>(Encoding.class);
+
+        Result(Path path, int length, Mode mode) {
+            this.path = path.toString();
+            this.length = length;
+            this.mode = mode;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(path).append(": ").append(length).append(" bytes");
+            sizes.forEach((encoding, size) -> builder.append(", ").append(encoding.name().toLowerCase(Locale.ROOT))
+                    .append(": ").append(size).append(" bytes"));
+            if (mode == Mode.ZOPFLI) {
+                builder.append(" (zopfli)");
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -1,11 +1,26 @@
 package com.github.kospiotr.bundler;
 
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
+import com.github.kospiotr.bundler.util.ZopfliDeflater;
+
 import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 
 /**
  * Generate package bundles.
@@ -14,16 +29,145 @@ import java.io.File;
 public class ProcessMojo extends AbstractMojo {
 
     /**
-     * Input file.
+     * Input file. Required unless inputFiles is given.
      */
-    @Parameter(property = "inputFile", required = true)
+    @Parameter(property = "inputFile")
     File inputFilePath;
 
     /**
-     * Location of the output file.
+     * Location of the output file. Required unless inputFiles is given.
      */
-    @Parameter(property = "outputFile", required = true)
+    @Parameter(property = "outputFile")
     File outputFilePath;
+
+    /**
+     * Set of pages to process: base directory, include / exclude globs and the output directory the matching pages
+     * are written to (keeping their relative path). May be combined with inputFilePath / outputFilePath.
+     */
+    @Parameter
+    InputFiles inputFiles;
+
+    /**
+     * Number of threads pages, and the bundle tags within a page, are processed on. Values lower than 1 use the number
+     * of available processors.
+     */
+    @Parameter(defaultValue = "0", property = "bundler.threads")
+    int threads;
+
+    /**
+     * Whether to skip pages and bundles whose sources have not changed since the previous build and whose output
+     * still exists.
+     */
+    @Parameter(defaultValue = "true", property = "bundler.incremental")
+    boolean incremental;
+
+    /**
+     * Location of the file keeping track of processed pages and bundles between builds.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/bundler/${mojoExecution.executionId}.state", property = "bundler.stateFile")
+    File stateFile;
+
+    /**
+     * Directory optimized sources are cached in. May be shared between projects.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/bundler-cache", property = "bundler.cacheDirectory")
+    File cacheDirectory;
+
+    /**
+     * Maximal size of the optimized sources cache in megabytes, least recently used entries are removed at the end of
+     * the build. 0 disables the cache.
+     */
+    @Parameter(defaultValue = "100", property = "bundler.cacheSize")
+    int cacheSize;
+
+    /**
+     * Precompressed siblings written next to every bundle and processed page, e.g. {@code app.min.js.gz}. Possible
+     * values: gzip, deflate.
+     */
+    @Parameter(property = "bundler.precompress")
+    String[] precompress;
+
+    /**
+     * Compression level of the precompressed siblings, from 0 (no compression) to 9 (best compression).
+     */
+    @Parameter(defaultValue = "9", property = "bundler.compressionLevel")
+    int compressionLevel = Deflater.BEST_COMPRESSION;
+
+    /**
+     * How the precompressed siblings are compressed: default, or zopfli for a few percent smaller files at a much
+     * longer compression time. Bundles may choose their own with the {@code compression} option, e.g.
+     * {@code <!-- bundle:js app.min.js compression=zopfli -->}.
+     */
+    @Parameter(defaultValue = "default", property = "bundler.compressionMode")
+    String compressionMode = "default";
+
+    /**
+     * Number of optimization iterations of the zopfli compression mode.
+     */
+    @Parameter(defaultValue = "15", property = "bundler.zopfliIterations")
+    int zopfliIterations = ZopfliDeflater.DEFAULT_ITERATIONS;
+
+    /**
+     * Bundles whose sources add up to more than this many megabytes are assembled as a stream: sources are read,
+     * optimized and appended to the output one at a time, so that memory is bounded by the largest source instead of
+     * the whole bundle. 0 streams every bundle.
+     */
+    @Parameter(defaultValue = "16", property = "bundler.streamingThreshold")
+    int streamingThreshold = 16;
+
+    /**
+     * Maximal size in megabytes of the sources kept in memory during the build, so that sources included by several
+     * pages and bundles are read once. Least recently used sources are evicted first. 0 disables the cache.
+     */
+    @Parameter(defaultValue = "64", property = "bundler.sourceCacheSize")
+    int sourceCacheSize = 64;
+
+    /**
+     * Whether the sources of all the bundles of a page are read concurrently before the bundles are built, on virtual
+     * threads when running on JDK 21+. Speeds up builds on file systems with a high latency.
+     */
+    @Parameter(defaultValue = "true", property = "bundler.prefetch")
+    boolean prefetch = true;
+
+    /**
+     * Assets (images, fonts, SVGs) referenced by the style sheets through {@code url()} whose size in bytes is at most
+     * this threshold are inlined as {@code data:} URIs. 0 disables inlining.
+     */
+    @Parameter(defaultValue = "0", property = "bundler.dataUriThreshold")
+    int dataUriThreshold = 0;
+
+    /**
+     * Maximal length in bytes of the data URIs inlined into a single style sheet bundle, assets referenced once it is
+     * reached are left as they are.
+     */
+    @Parameter(defaultValue = "131072", property = "bundler.dataUriBundleLimit")
+    int dataUriBundleLimit = 131072;
+
+    /**
+     * Whether the style sheet bundles are shrunk as a whole once their sources have been optimized: adjacent rules
+     * with the same selector or identical declarations are merged, duplicate declarations and rules overridden by an
+     * identical later rule are dropped. Bundles assembled as a stream are left as they are.
+     */
+    @Parameter(defaultValue = "false", property = "bundler.mergeCssRules")
+    boolean mergeCssRules;
+
+    /**
+     * Whether the assets referenced by the style sheets through {@code url()} are copied to the output base directory
+     * under a name containing the hash of their content, with the references rewritten to match. Requires both
+     * inputBaseDir and outputBaseDir.
+     */
+    @Parameter(defaultValue = "false", property = "bundler.fingerprintAssets")
+    boolean fingerprintAssets;
+
+    /**
+     * Location of the JSON manifest mapping the original names of the fingerprinted assets to their fingerprinted
+     * names, both relative to the output base directory. Defaults to {@code asset-manifest.json} in outputBaseDir.
+     */
+    @Parameter(property = "bundler.assetManifest")
+    File assetManifest;
+
+    @Parameter(defaultValue = "${plugin.version}", readonly = true)
+    String pluginVersion;
     
     /**
      * Location of the base of the web application. This will be used to enable the processing of JS / CSS resources that 
@@ -37,12 +181,22 @@ public class ProcessMojo extends AbstractMojo {
     @Parameter(property = "outputBaseDir", required = false)
     File outputBaseDir;
 
+    /**
+     * EL expressions at the beginning of source and output paths standing for the context path of the web
+     * application, such paths are resolved against inputBaseDir / outputBaseDir. An expression may be followed by
+     * {@code =} and a directory within the base directories, e.g. {@code #{resource.path}/=resources}. Defaults to
+     * {@code #{request.contextPath}/} and {@code #{facesContext.externalContext.request.contextPath}/}.
+     */
+    @Parameter(property = "bundler.contextPathExpressions")
+    String[] contextPathExpressions;
+
 
 	/**
      * Hashing Algrithm. Possible values for shipped providers:
      * MD5,
      * SHA-1,
-     * SHA-256
+     * SHA-256,
+     * XXHASH64 (fast, non-cryptographic)
      */
     @Parameter(defaultValue = "MD5", property = "hashingAlgorithm", required = true)
     String hashingAlgorithm;
@@ -65,6 +219,13 @@ public class ProcessMojo extends AbstractMojo {
     @Parameter(defaultValue = "simple", property = "jsOptimizer", required = true)
     String jsOptimizer;
 
+    private BundleRegistry bundleRegistry = new BundleRegistry();
+    private final AtomicInteger skippedPages = new AtomicInteger();
+    private BuildState buildState;
+    private Executor executor = Runnable::run;
+    private OptimizerCache optimizerCache;
+    private volatile PathResolver pathResolver;
+
     public ProcessMojo() {
     }
 
@@ -83,14 +244,230 @@ public class ProcessMojo extends AbstractMojo {
     }
     
 
-    public void execute() {
+    public void execute() throws MojoExecutionException {
+        List<Page> pages = collectPages();
+        if (pages.isEmpty()) {
+            getLog().info("No pages to process");
+            return;
+        }
+        build(pages, Collections.<Page>emptyList());
+    }
+
+    /**
+     * Processes the given pages.
+     *
+     * @param pages         pages to process
+     * @param retainedPages pages known to be up to date which are not checked nor processed, but whose state is
+     *                      kept for the next build
+     */
+    void build(List<Page> pages, Collection<Page> retainedPages) throws MojoExecutionException {
+        // a single instance counts all the writes of the build
+        ResourceAccess resourceAccess = new ResourceAccess(sourceCacheSize * 1024L * 1024L);
+        JsTagProcessor jsTagProcessor = new JsTagProcessor();
+        jsTagProcessor.setResourceAccess(resourceAccess);
+        CssTagProcessor cssTagProcessor = new CssTagProcessor();
+        cssTagProcessor.setResourceAccess(resourceAccess);
+
         Tokenizer tokenizer = new Tokenizer(this);
         tokenizer.registerProcessor(new RemoveTagProcessor());
-        tokenizer.registerProcessor(new JsTagProcessor());
-        tokenizer.registerProcessor(new CssTagProcessor());
+        tokenizer.registerProcessor(jsTagProcessor);
+        tokenizer.registerProcessor(cssTagProcessor);
+
+        FileProcessor fileProcessor = new FileProcessor(tokenizer, resourceAccess);
+        long start = System.currentTimeMillis();
+        pathResolver = null;
+        try {
+            getPathResolver();
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        bundleRegistry = new BundleRegistry();
+        skippedPages.set(0);
+        buildState = null;
+        if (incremental && stateFile != null) {
+            buildState = BuildState.load(stateFile.getAbsoluteFile().toPath(), getConfigurationFingerprint());
+            for (Page page : retainedPages) {
+                buildState.retainPage(page.getInputFilePath());
+            }
+        }
+        Precompressor precompressor = createPrecompressor(resourceAccess);
+        fileProcessor.setPrecompressor(precompressor);
+        jsTagProcessor.setPrecompressor(precompressor);
+        cssTagProcessor.setPrecompressor(precompressor);
+        AssetFingerprinter assetFingerprinter = createAssetFingerprinter(resourceAccess);
+        cssTagProcessor.setAssetFingerprinter(assetFingerprinter);
+        // pages and the bundle tags within them share the pool, a fork join pool compensates for workers blocked
+        // waiting for tags or for bundles built by other pages
+        ForkJoinPool pool = getThreadCount() > 1 ? new ForkJoinPool(getThreadCount()) : null;
+        if (pool != null) {
+            executor = pool;
+            tokenizer.setExecutor(pool);
+        }
+        SourcePrefetcher prefetcher = prefetch ? new SourcePrefetcher(resourceAccess, buildState) : null;
+        jsTagProcessor.setPrefetcher(prefetcher);
+        cssTagProcessor.setPrefetcher(prefetcher);
+        optimizerCache = null;
+        if (cacheDirectory != null && cacheSize > 0) {
+            optimizerCache = new OptimizerCache(cacheDirectory.getAbsoluteFile().toPath(), cacheSize * 1024L * 1024L, pluginVersion);
+        }
+        try {
+            if (pool == null || pages.size() <= 1) {
+                for (Page page : pages) {
+                    processPage(fileProcessor, page);
+                }
+            } else {
+                processPagesInParallel(fileProcessor, pages, pool);
+            }
+            if (assetFingerprinter != null) {
+                assetFingerprinter.finish();
+            }
+        } finally {
+            if (pool != null) {
+                executor = Runnable::run;
+                pool.shutdownNow();
+            }
+            if (prefetcher != null) {
+                prefetcher.close();
+            }
+            if (buildState != null) {
+                buildState.save();
+            }
+        }
+        int upToDateBundles = buildState != null ? buildState.getUpToDateBundleCount() : 0;
+        getLog().info(String.format("Processed %d pages in %d ms. Pages up to date: %d. Bundles built: %d, up to date: %d, reused: %d",
+                pages.size(), System.currentTimeMillis() - start, skippedPages.get(),
+                bundleRegistry.getBuiltCount() - upToDateBundles, upToDateBundles, bundleRegistry.getReusedCount()));
+        getLog().info(String.format("Files written: %d, unchanged: %d", resourceAccess.getWrittenCount(), resourceAccess.getSkippedCount()));
+        if (prefetcher != null) {
+            getLog().info(String.format("Sources prefetched: %d, on %s threads", prefetcher.getPrefetchedCount(),
+                    prefetcher.isVirtual() ? "virtual" : "platform"));
+        }
+        if (assetFingerprinter != null) {
+            getLog().info(String.format("Assets fingerprinted, copied: %d, unchanged: %d",
+                    assetFingerprinter.getCopiedCount(), assetFingerprinter.getSkippedCount()));
+        }
+        DataUriInliner dataUriInliner = cssTagProcessor.getDataUriInliner();
+        if (dataUriInliner != null) {
+            getLog().info(String.format("Assets inlined as data URIs: %d, %d bytes",
+                    dataUriInliner.getInlinedCount(), dataUriInliner.getInlinedLength()));
+        }
+        SourceCache sourceCache = resourceAccess.getCache();
+        if (sourceCache != null) {
+            getLog().info(String.format("Source cache hits: %d, misses: %d, evicted: %d, size: %d bytes",
+                    sourceCache.getHitCount(), sourceCache.getMissCount(), sourceCache.getEvictionCount(), sourceCache.getSize()));
+        }
+        if (precompressor != null) {
+            for (String line : precompressor.getReport()) {
+                getLog().info("Precompressed " + line);
+            }
+        }
+        if (optimizerCache != null) {
+            int evicted = optimizerCache.evict();
+            getLog().info(String.format("Optimizer cache hits: %d, misses: %d, evicted: %d",
+                    optimizerCache.getHitCount(), optimizerCache.getMissCount(), evicted));
+        }
+    }
+
+    /**
+     * @return precompressor compressing on the executor of the build, which is only set up later, or null when
+     * precompression is disabled
+     */
+    private Precompressor createPrecompressor(ResourceAccess resourceAccess) throws MojoExecutionException {
+        if (precompress == null || precompress.length == 0) {
+            return null;
+        }
+        try {
+            List<Precompressor.Encoding> encodings = new ArrayList<>();
+            for (String name : precompress) {
+                encodings.add(Precompressor.Encoding.parse(name));
+            }
+            return new Precompressor(encodings, compressionLevel, Precompressor.Mode.parse(compressionMode), zopfliIterations,
+                    buildState, command -> getExecutor().execute(command), resourceAccess);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
+    private void processPagesInParallel(FileProcessor fileProcessor, List<Page> pages, Executor executor) throws MojoExecutionException {
+        getLog().info("Processing " + pages.size() + " pages using " + getThreadCount() + " threads");
+        List<CompletableFuture<Void>> results = new ArrayList<>(pages.size());
+        for (Page page : pages) {
+            results.add(CompletableFuture.runAsync(() -> processPage(fileProcessor, page), executor));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                results.get(i).join();
+            } catch (CompletionException e) {
+                throw new MojoExecutionException("Failed to process " + pages.get(i).getInputFilePath(), e.getCause());
+            }
+        }
+    }
+
+    private void processPage(FileProcessor fileProcessor, Page page) {
+        if (buildState != null) {
+            if (buildState.isPageUpToDate(page)) {
+                getLog().info("Page is up to date: " + page.getInputFilePath());
+                skippedPages.incrementAndGet();
+                return;
+            }
+            // fingerprint has to be taken before the page is read
+            buildState.fingerprint(page.getInputFilePath());
+        }
+        getLog().info("Processing page: " + page.getInputFilePath() + " -> " + page.getOutputFilePath());
+        fileProcessor.process(page);
+        if (buildState != null) {
+            buildState.recordPage(page);
+        }
+    }
 
-        FileProcessor fileProcessor = new FileProcessor(tokenizer);
-        fileProcessor.process(inputFilePath.toPath(), outputFilePath.toPath());
+    List<Page> collectPages() throws MojoExecutionException {
+        List<Page> pages = new ArrayList<>();
+        if (inputFilePath != null || outputFilePath != null) {
+            if (inputFilePath == null || outputFilePath == null) {
+                throw new MojoExecutionException("Both inputFilePath and outputFilePath must be given");
+            }
+            pages.add(new Page(inputFilePath.getAbsoluteFile().toPath(), outputFilePath.getAbsoluteFile().toPath()));
+        }
+        if (inputFiles != null) {
+            try {
+                pages.addAll(inputFiles.scan());
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
+            }
+        }
+        if (inputFilePath == null && inputFiles == null) {
+            throw new MojoExecutionException("Either inputFilePath / outputFilePath or inputFiles must be given");
+        }
+        return pages;
+    }
+
+    /**
+     * @return description of every setting influencing the output, previous build state is discarded when it changes
+     */
+    String getConfigurationFingerprint() {
+        return "inputBaseDir=" + inputBaseDir +
+                ";outputBaseDir=" + outputBaseDir +
+                ";contextPathExpressions=" + Arrays.toString(contextPathExpressions) +
+                ";hashingAlgorithm=" + hashingAlgorithm +
+                ";cssOptimizer=" + cssOptimizer +
+                ";jsOptimizer=" + jsOptimizer +
+                ";munge=" + munge +
+                ";preserveAllSemiColons=" + preserveAllSemiColons +
+                ";disableOptimizations=" + disableOptimizations +
+                ";precompress=" + Arrays.toString(precompress) +
+                ";compressionLevel=" + compressionLevel +
+                ";compressionMode=" + compressionMode +
+                ";zopfliIterations=" + zopfliIterations +
+                ";dataUriThreshold=" + dataUriThreshold +
+                ";dataUriBundleLimit=" + dataUriBundleLimit +
+                ";mergeCssRules=" + mergeCssRules +
+                ";fingerprintAssets=" + fingerprintAssets +
+                ";assetManifest=" + assetManifest +
+                ";pluginVersion=" + pluginVersion;
+    }
+
+    int getThreadCount() {
+        return threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
     }
 
     public File getInputFilePath() {
@@ -101,6 +478,97 @@ public class ProcessMojo extends AbstractMojo {
         return outputFilePath;
     }
         
+    int getSkippedPageCount() {
+        return skippedPages.get();
+    }
+
+    BundleRegistry getBundleRegistry() {
+        return bundleRegistry;
+    }
+
+    /**
+     * @return executor for work within a single bundle, runs tasks in the calling thread unless threads are configured
+     */
+    Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return size of the sources in bytes above which bundles are assembled as a stream
+     */
+    long getStreamingThreshold() {
+        return streamingThreshold * 1024L * 1024L;
+    }
+
+    /**
+     * @return fingerprinter of the assets referenced by the style sheets or null when disabled
+     */
+    private AssetFingerprinter createAssetFingerprinter(ResourceAccess resourceAccess) throws MojoExecutionException {
+        if (!fingerprintAssets) {
+            return null;
+        }
+        if (inputBaseDir == null || outputBaseDir == null) {
+            throw new MojoExecutionException("Both inputBaseDir and outputBaseDir must be given to fingerprint assets");
+        }
+        Path outputBasePath = outputBaseDir.getAbsoluteFile().toPath();
+        Path manifestPath = assetManifest != null ? assetManifest.getAbsoluteFile().toPath() : outputBasePath.resolve("asset-manifest.json");
+        return new AssetFingerprinter(resourceAccess, buildState, command -> getExecutor().execute(command), hashingAlgorithm,
+                getPathResolver().getInputBasePath(), outputBasePath, manifestPath);
+    }
+
+    /**
+     * @return maximal size in bytes of the assets inlined as data URIs, 0 when disabled
+     */
+    int getDataUriThreshold() {
+        return dataUriThreshold;
+    }
+
+    /**
+     * @return maximal length in bytes of the data URIs inlined into a single bundle
+     */
+    int getDataUriBundleLimit() {
+        return dataUriBundleLimit;
+    }
+
+    /**
+     * @return resolver of the paths written in the pages, shared by the whole build
+     * @throws IllegalArgumentException when the context path expressions are invalid
+     */
+    PathResolver getPathResolver() {
+        PathResolver resolver = pathResolver;
+        if (resolver == null) {
+            // concurrently created resolvers are equivalent, any of them may be kept
+            resolver = new PathResolver(
+                    inputBaseDir != null ? inputBaseDir.getAbsoluteFile().toPath() : null,
+                    outputBaseDir != null ? outputBaseDir.getAbsoluteFile().toPath() : null,
+                    contextPathExpressions != null ? Arrays.asList(contextPathExpressions) : PathResolver.DEFAULT_EXPRESSIONS);
+            pathResolver = resolver;
+        }
+        return resolver;
+    }
+
+    /**
+     * @return cache of optimized sources or null when disabled
+     */
+    OptimizerCache getOptimizerCache() {
+        return optimizerCache;
+    }
+
+    /**
+     * @return state of the previous build or null when incremental build is disabled
+     */
+    BuildState getBuildState() {
+        return buildState;
+    }
+
+    public InputFiles getInputFiles() {
+        return inputFiles;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
     public File getInputBaseDir() {
 		return inputBaseDir;
 	}
@@ -125,6 +593,10 @@ public class ProcessMojo extends AbstractMojo {
         return preserveAllSemiColons;
     }
 
+    boolean isMergeCssRules() {
+        return mergeCssRules;
+    }
+
     public boolean isDisableOptimizations() {
         return disableOptimizations;
     }
@@ -1,12 +1,19 @@
 package com.github.kospiotr.bundler;
 
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.github.kospiotr.bundler.util.HashGenerator;
 
@@ -18,13 +25,38 @@ public abstract class RegexBasedTagProcessor extends TagProcessor {
 	 */
 	public static final String HASH_PLACEHOLDER = "#hash#";
 	
-	private static final String REQUEST_CONTEXTPATH_EL_EXPRESSION_REGEX = "#\\{request.contextPath\\}/";
-	private static final String FACES_REQUEST_CONTEXTPATH_EL_EXPRESSION_REGEX = "#\\{facesContext.externalContext.request.contextPath\\}/";
-    private static final Charset CHARSET = StandardCharsets.UTF_8;    
     private static final String MINIFIED_KEYWORD = ".min.";
+    private static final String COMPRESSION_OPTION = "compression=";
+    private static final byte[] NEW_LINE = {'\n'};
     
     private ResourceAccess resourceAccess = new ResourceAccess();
 
+    private Precompressor precompressor;
+
+    private SourcePrefetcher prefetcher;
+
+    void setResourceAccess(ResourceAccess resourceAccess) {
+        this.resourceAccess = resourceAccess;
+    }
+
+    ResourceAccess getResourceAccess() {
+        return resourceAccess;
+    }
+
+    /**
+     * @param precompressor precompressor writing compressed siblings of the bundles, may be null
+     */
+    void setPrecompressor(Precompressor precompressor) {
+        this.precompressor = precompressor;
+    }
+
+    /**
+     * @param prefetcher prefetcher reading the sources ahead of the bundles, may be null
+     */
+    void setPrefetcher(SourcePrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
     /**
      * Construct tag which will be outputted as a result of bundle
      *
@@ -34,12 +66,11 @@ public abstract class RegexBasedTagProcessor extends TagProcessor {
     protected abstract String createBundledTag(String fileName);
 
     /**
-     * Regex that represents inner tags that will be processed and bundled.
-     * It MUST return first capturing group which represents partial file path to read
+     * Lexer extracting the partial file paths to read from the inner tags that will be processed and bundled.
      *
-     * @return inner tag regex
+     * @return inner tag lexer, shared between blocks
      */
-    protected abstract String tagRegex();
+    protected abstract InnerTagLexer innerTagLexer();
 
     @Override
     public String process(Tag tag) {
@@ -47,7 +78,10 @@ public abstract class RegexBasedTagProcessor extends TagProcessor {
         log.info("Processing bundling tag: " + tag.getContent());
 
         String fileName = extractFileName(tag);
-        Path parentSrcPath = getMojo().getInputFilePath().getAbsoluteFile().toPath().getParent();
+        Precompressor.Mode compressionMode = extractCompressionMode(tag);
+        Page page = getPage(tag);
+        Path parentSrcPath = page.getInputFilePath().toAbsolutePath().getParent();
+        Path parentDestPath = page.getOutputFilePath().toAbsolutePath().getParent();
         String tagContent = tag.getContent();
 
         log.debug("FileName=" + fileName);
@@ -55,55 +89,10 @@ public abstract class RegexBasedTagProcessor extends TagProcessor {
         log.debug("TagContent=\n" + tagContent.trim());
 
         try {
-            List<TagSource> tagSources = processTags(fileName, parentSrcPath, tagContent);
-            log.info("Optimizing...");
-
-            StringBuilder outputBuilder = new StringBuilder();
-            int lengthBeforeCompress = 0, lengthAfterCompress = 0;
-            
-            for (TagSource tagSource : tagSources) {
-                String srcContent = tagSource.getSrcContent();
-                lengthBeforeCompress += srcContent.getBytes(CHARSET).length;
-                
-                try {
-                    // If the filename indicates that the content has been minified, we don't need to optimize it again.
-                    String processedContent;
-                    
-                    if (tagSource.getSrcPath().getFileName().toString().contains(MINIFIED_KEYWORD)) {
-                    	log("Skip optimizing %s because it's already been minified.", tagSource.getSrcPath());
-                        processedContent = srcContent;
-                    } else {
-                    	log("Optimizing %s ...", tagSource.getSrcPath());
-                        processedContent = postProcessOutputFileContent(srcContent);
-                    }
-                    
-                    outputBuilder.append(processedContent).append("\n");
-                    lengthAfterCompress += processedContent != null ? processedContent.getBytes(CHARSET).length : 0;
-                    
-                } catch (Exception ex) {
-                    log.error("Failed to optimize data. Use it directly. File=" + tagSource.getSrcPath(), ex);
-                }
-            }
-            
-            double compressionRatio = lengthAfterCompress != 0 ? (double) lengthAfterCompress / lengthBeforeCompress : 0;
-            log.info(String.format("%d->%d CompressionRatio: %d%%", lengthBeforeCompress, lengthAfterCompress, (int) (compressionRatio * 100)));
-
-            String content = outputBuilder.toString();
-            Path parentDestPath = getMojo().getOutputFilePath().getAbsoluteFile().toPath().getParent();            
-            
-            fileName = verifyAndReplaceHashPlaceholder(fileName, content);
-            
-            Path tagDestPath = getAbsolutResourcePath(fileName, parentDestPath, getMojo().getOutputBaseDir().getAbsoluteFile().toPath());
-            
-            log.info("Writing to file: " + tagDestPath);
-            
-            resourceAccess.write(tagDestPath, content);
-            String bundledTag = createBundledTag(fileName);
-            
-            log.info("Done");
-            
+            BundleKey bundleKey = createBundleKey(fileName, parentSrcPath, parentDestPath, tagContent, compressionMode);
+            String bundledTag = getMojo().getBundleRegistry().getOrBuild(bundleKey, () -> buildBundle(bundleKey, parentDestPath, compressionMode));
+            page.addBundleId(bundleKey.getId());
             return bundledTag;
-            
         } catch (Exception ex) {
             log.error(ex);
             throw ex;
@@ -112,39 +101,368 @@ public abstract class RegexBasedTagProcessor extends TagProcessor {
         }
     }
 
+    /**
+     * Starts reading the sources of the bundles unless they are built already, up to date or streamed, which is found
+     * out on the threads of the prefetcher. Invalid tags are left to be reported once processed.
+     */
+    @Override
+    void prefetch(List<Tag> tags) {
+        if (prefetcher == null) {
+            return;
+        }
+        for (Tag tag : tags) {
+            prefetcher.prefetch(() -> {
+                try {
+                    Page page = getPage(tag);
+                    BundleKey bundleKey = createBundleKey(extractFileName(tag), page.getInputFilePath().toAbsolutePath().getParent(),
+                            page.getOutputFilePath().toAbsolutePath().getParent(), tag.getContent(), extractCompressionMode(tag));
+                    BuildState buildState = getMojo().getBuildState();
+                    if (getMojo().getBundleRegistry().contains(bundleKey)
+                            || buildState != null && buildState.isBundleUpToDate(bundleKey.getId())
+                            || isStreamed(bundleKey)) {
+                        return Collections.emptyList();
+                    }
+                    return bundleKey.getSrcPaths();
+                } catch (RuntimeException e) {
+                    log.debug("Not prefetching the sources of " + tag.getContent(), e);
+                    return Collections.emptyList();
+                }
+            });
+        }
+    }
+
+    private BundleKey createBundleKey(String fileName, Path parentSrcPath, Path parentDestPath, String tagContent,
+                                      Precompressor.Mode compressionMode) {
+        Path inputBasePath = getMojo().getPathResolver().getInputBasePath();
+        List<String> srcs = extractSources(tagContent);
+        List<Path> srcPaths = new ArrayList<>(srcs.size());
+        for (String src : srcs) {
+            srcPaths.add(getAbsolutResourcePath(src, parentSrcPath, inputBasePath));
+        }
+        Path destPath = getAbsolutResourcePath(fileName, parentDestPath, getMojo().getPathResolver().getOutputBasePath());
+        String settings = "hashingAlgorithm=" + getMojo().getHashingAlgorithm() + ";compression=" + compressionMode + ";" + getOptimizerSettings();
+        return new BundleKey(getType(), fileName, destPath, srcs, srcPaths, settings);
+    }
+
+    private String buildBundle(BundleKey bundleKey, Path parentDestPath, Precompressor.Mode compressionMode) {
+        BuildState buildState = getMojo().getBuildState();
+        if (buildState != null) {
+            String bundledTag = buildState.getUpToDateBundledTag(bundleKey.getId());
+            if (bundledTag != null) {
+                log.info("Sources have not changed since the previous build, skipping");
+                return bundledTag;
+            }
+            // fingerprints have to be taken before the sources are read
+            for (Path srcPath : bundleKey.getSrcPaths()) {
+                buildState.fingerprint(srcPath);
+            }
+        }
+
+        String fileName = bundleKey.getFileName();
+        Path outputBasePath = getMojo().getPathResolver().getOutputBasePath();
+        // the hash is computed while the bundle is assembled
+        HashGenerator.Hasher hasher = fileName.contains(HASH_PLACEHOLDER) ? HashGenerator.newHasher(getMojo().getHashingAlgorithm()) : null;
+        SourceFinisher finisher = createSourceFinisher(bundleKey);
+        Path tagDestPath;
+        boolean changed;
+
+        if (isStreamed(bundleKey)) {
+            log.info("Streaming...");
+            // the file name is only known once the whole bundle has been hashed
+            Path directory = getAbsolutResourcePath(fileName, parentDestPath, outputBasePath).getParent();
+            while (directory.toString().contains(HASH_PLACEHOLDER)) {
+                directory = directory.getParent();
+            }
+            AtomicReference<String> outputFileName = new AtomicReference<>();
+            changed = resourceAccess.write(directory, out -> streamBundle(bundleKey, out, hasher, finisher), () -> {
+                outputFileName.set(verifyAndReplaceHashPlaceholder(bundleKey.getFileName(), hasher));
+                return getAbsolutResourcePath(outputFileName.get(), parentDestPath, outputBasePath);
+            });
+            fileName = outputFileName.get();
+            tagDestPath = getAbsolutResourcePath(fileName, parentDestPath, outputBasePath);
+            log.info("Written to file: " + tagDestPath);
+        } else {
+            ResourceContent content = assembleBundle(bundleKey, hasher, finisher);
+            fileName = verifyAndReplaceHashPlaceholder(fileName, hasher);
+            tagDestPath = getAbsolutResourcePath(fileName, parentDestPath, outputBasePath);
+            log.info("Writing to file: " + tagDestPath);
+            changed = resourceAccess.write(tagDestPath, content);
+        }
+
+        if (precompressor != null) {
+            precompressor.compress(tagDestPath, changed, compressionMode);
+        }
+        String bundledTag = createBundledTag(fileName);
+
+        if (buildState != null) {
+            List<Path> srcPaths = new ArrayList<>(bundleKey.getSrcPaths());
+            for (Path srcPath : bundleKey.getSrcPaths()) {
+                srcPaths.addAll(getDependencies(srcPath));
+            }
+            if (finisher != null) {
+                srcPaths.addAll(finisher.getDependencies());
+            }
+            buildState.recordBundle(bundleKey.getId(), srcPaths, tagDestPath, bundledTag);
+        }
+
+        log.info("Done");
+
+        return bundledTag;
+    }
+
+    /**
+     * Reads all the sources, optimizes them in parallel and concatenates them in declaration order.
+     *
+     * @param finisher finisher of the optimized sources, may be null
+     */
+    private ResourceContent assembleBundle(BundleKey bundleKey, HashGenerator.Hasher hasher, SourceFinisher finisher) {
+        List<CompletableFuture<TagSource>> tagSources = readTags(bundleKey);
+        log.info("Optimizing...");
+
+        // every source is optimized as soon as it has been read
+        List<CompletableFuture<ResourceContent>> optimizedSources = new ArrayList<>(tagSources.size());
+        for (CompletableFuture<TagSource> tagSource : tagSources) {
+            optimizedSources.add(tagSource.thenApplyAsync(this::optimize, getMojo().getExecutor()));
+        }
+
+        List<ResourceContent> processedContents = new ArrayList<>(tagSources.size());
+        int lengthBeforeCompress = 0, lengthAfterCompress = 0;
+
+        for (int i = 0; i < tagSources.size(); i++) {
+            ResourceContent processedContent = finish(finisher, join(optimizedSources.get(i)));
+            processedContents.add(processedContent);
+            lengthBeforeCompress += join(tagSources.get(i)).getSrcContent().length();
+            lengthAfterCompress += processedContent.length();
+        }
+
+        logCompressionRatio(lengthBeforeCompress, lengthAfterCompress);
+        if (!isBundleFinished()) {
+            return concatenate(processedContents, lengthAfterCompress, hasher);
+        }
+        // the hash is only known once the whole bundle has been finished
+        ResourceContent content = finishBundle(bundleKey, concatenate(processedContents, lengthAfterCompress, null));
+        if (hasher != null) {
+            byte[] bytes = content.getBytes();
+            hasher.update(bytes, 0, bytes.length);
+        }
+        return content;
+    }
+
+    /**
+     * Reads, optimizes and appends the sources one at a time, with at most as many sources in flight as there are
+     * threads, so that memory is bounded by the largest sources rather than by the whole bundle. Sources that have
+     * already been minified are copied from their file to the output as they are.
+     *
+     * @param finisher finisher of the optimized sources, may be null
+     */
+    private void streamBundle(BundleKey bundleKey, WritableByteChannel out, HashGenerator.Hasher hasher,
+                              SourceFinisher finisher) throws IOException {
+        int maxInFlight = Math.max(1, getMojo().getThreadCount());
+        Deque<PendingSource> pendingSources = new ArrayDeque<>(maxInFlight);
+        long[] lengths = new long[2];
+
+        for (int i = 0; i < bundleKey.getSrcs().size(); i++) {
+            Path srcPath = bundleKey.getSrcPaths().get(i);
+            if (isPassedThrough(srcPath)) {
+                pendingSources.add(new PendingSource(srcPath, null));
+            } else {
+                TagSource tagSource = processTag(bundleKey, i);
+                lengths[0] += tagSource.getSrcContent().length();
+                pendingSources.add(new PendingSource(null, CompletableFuture.supplyAsync(() -> optimize(tagSource), getMojo().getExecutor())));
+            }
+            if (pendingSources.size() >= maxInFlight) {
+                append(pendingSources.remove(), out, hasher, finisher, lengths);
+            }
+        }
+        while (!pendingSources.isEmpty()) {
+            append(pendingSources.remove(), out, hasher, finisher, lengths);
+        }
+
+        logCompressionRatio(lengths[0], lengths[1]);
+    }
+
+    /**
+     * @return whether the source is copied to the bundle as it is, it must be neither optimized nor preprocessed
+     */
+    private boolean isPassedThrough(Path srcPath) {
+        return srcPath.getFileName().toString().contains(MINIFIED_KEYWORD) && !isContentPreprocessed();
+    }
+
+    /**
+     * @param lengths total length of the sources before and after optimization, updated
+     */
+    private void append(PendingSource source, WritableByteChannel out, HashGenerator.Hasher hasher, SourceFinisher finisher,
+                        long[] lengths) throws IOException {
+        if (source.passThroughPath == null) {
+            lengths[1] += append(finish(finisher, source.optimizedContent.join()), out, hasher);
+            return;
+        }
+        log("Copying %s as it is, it's already been minified.", source.passThroughPath);
+        long length = resourceAccess.transfer(source.passThroughPath, out, hasher != null ? hasher::update : null);
+        writeFully(out, ByteBuffer.wrap(NEW_LINE));
+        if (hasher != null) {
+            hasher.update(NEW_LINE, 0, NEW_LINE.length);
+        }
+        lengths[0] += length;
+        lengths[1] += length;
+    }
+
+    /**
+     * Writes the content followed by a new line.
+     *
+     * @param hasher hasher updated with the written bytes, may be null
+     * @return length of the content
+     */
+    private static int append(ResourceContent content, WritableByteChannel out, HashGenerator.Hasher hasher) throws IOException {
+        byte[] bytes = content.getBytes();
+        writeFully(out, ByteBuffer.wrap(bytes));
+        writeFully(out, ByteBuffer.wrap(NEW_LINE));
+        if (hasher != null) {
+            hasher.update(bytes, 0, bytes.length);
+            hasher.update(NEW_LINE, 0, NEW_LINE.length);
+        }
+        return bytes.length;
+    }
+
+    private static ResourceContent finish(SourceFinisher finisher, ResourceContent content) {
+        return finisher != null ? finisher.finish(content) : content;
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * @return whether the sources of the bundle are large enough to be assembled as a stream
+     */
+    private boolean isStreamed(BundleKey bundleKey) {
+        long size = 0;
+        for (Path srcPath : bundleKey.getSrcPaths()) {
+            try {
+                size += Files.size(srcPath);
+            } catch (IOException e) {
+                // reported once the source is read
+            }
+        }
+        return size > getMojo().getStreamingThreshold();
+    }
+
+    private void logCompressionRatio(long lengthBeforeCompress, long lengthAfterCompress) {
+        double compressionRatio = lengthAfterCompress != 0 ? (double) lengthAfterCompress / lengthBeforeCompress : 0;
+        log.info(String.format("%d->%d CompressionRatio: %d%%", lengthBeforeCompress, lengthAfterCompress, (int) (compressionRatio * 100)));
+    }
+
+    /**
+     * Joins the contents, each followed by a new line, encoding every content at most once.
+     *
+     * @param hasher hasher updated with every appended part, may be null
+     */
+    private static ResourceContent concatenate(List<ResourceContent> contents, int length, HashGenerator.Hasher hasher) {
+        byte[] output = new byte[length + contents.size()];
+        int offset = 0;
+        for (ResourceContent content : contents) {
+            byte[] bytes = content.getBytes();
+            System.arraycopy(bytes, 0, output, offset, bytes.length);
+            offset += bytes.length;
+            output[offset++] = '\n';
+            if (hasher != null) {
+                hasher.update(output, offset - bytes.length - 1, bytes.length + 1);
+            }
+        }
+        return ResourceContent.of(output);
+    }
+
+    private ResourceContent optimize(TagSource tagSource) {
+        ResourceContent srcContent = tagSource.getSrcContent();
+        try {
+            // If the filename indicates that the content has been minified, we don't need to optimize it again.
+            if (tagSource.getSrcPath().getFileName().toString().contains(MINIFIED_KEYWORD)) {
+                log("Skip optimizing %s because it's already been minified.", tagSource.getSrcPath());
+                return srcContent;
+            }
+            OptimizerCache optimizerCache = getMojo().getOptimizerCache();
+            String cacheKey = null;
+            if (optimizerCache != null) {
+                cacheKey = optimizerCache.key(srcContent, getType() + ";" + getOptimizerSettings());
+                ResourceContent cachedContent = optimizerCache.get(cacheKey);
+                if (cachedContent != null) {
+                    log("Using cached optimized %s", tagSource.getSrcPath());
+                    return cachedContent;
+                }
+            }
+            log("Optimizing %s ...", tagSource.getSrcPath());
+            ResourceContent processedContent = postProcessOutputFileContent(srcContent);
+            if (processedContent == null) {
+                return srcContent;
+            }
+            if (optimizerCache != null) {
+                optimizerCache.put(cacheKey, processedContent);
+            }
+            return processedContent;
+        } catch (Exception ex) {
+            log.error("Failed to optimize data. Use it directly. File=" + tagSource.getSrcPath(), ex);
+            return srcContent;
+        }
+    }
+
     /**
      * Verifies if the filename contains the #{@link RegexBasedTagProcessor#HASH_PLACEHOLDER} and if so, calculates the
      * hash and replaces it the filename's placeholder.
      * @param fileName
-     * @param content
+     * @param hasher hasher already updated with the whole content
      * @return The filename with the placeholder replaced or the untouched filename if no placeholder found
      */
-	private String verifyAndReplaceHashPlaceholder(String fileName, String content) {
+	private String verifyAndReplaceHashPlaceholder(String fileName, HashGenerator.Hasher hasher) {
 		
 		if (fileName.contains(HASH_PLACEHOLDER)) {
-		    String hashValue = HashGenerator.computeHash(content, getMojo().getHashingAlgorithm());
+		    String hashValue = hasher.getHash();
 		    fileName = fileName.replace(HASH_PLACEHOLDER, hashValue);
 		}
 		
 		return fileName;
 	}
 
+    /**
+     * @see PathResolver#resolve(String, Path, Path)
+     */
     protected Path getAbsolutResourcePath(String srcPath, Path parentSrcPath, Path alternativeParentPath) {
-    	String src = srcPath.replaceAll(REQUEST_CONTEXTPATH_EL_EXPRESSION_REGEX, "").replaceAll(FACES_REQUEST_CONTEXTPATH_EL_EXPRESSION_REGEX, "");    	
-    	return (src.equals(srcPath)) ? parentSrcPath.resolve(srcPath) : alternativeParentPath.resolve(src);
+        return getMojo().getPathResolver().resolve(srcPath, parentSrcPath, alternativeParentPath);
     }
     
     
+    /**
+     * Settings influencing the optimized output. Bundles declared with the same sources and output file are only
+     * shared between pages when built with equal settings.
+     *
+     * @return optimizer settings
+     */
+    protected String getOptimizerSettings() {
+        return "";
+    }
+
     /**
      * Template method allowing enhance output file content
      *
      * @param content output file content
      * @return enhanced output file content
      */
-    protected String postProcessOutputFileContent(String content) {
+    protected ResourceContent postProcessOutputFileContent(ResourceContent content) {
         return content;
     }
 
+    /**
+     * Tags processed outside of a page (e.g. directly from tests) fall back to the single input / output file
+     * configured in the mojo.
+     */
+    private Page getPage(Tag tag) {
+        if (tag.getPage() != null) {
+            return tag.getPage();
+        }
+        return new Page(getMojo().getInputFilePath().toPath(), getMojo().getOutputFilePath().toPath());
+    }
+
     private String extractFileName(Tag tag) {
         String[] attributes = tag.getAttributes();
         String fileName = attributes == null || attributes.length == 0 ? null : attributes[0];
@@ -156,28 +474,121 @@ public abstract class RegexBasedTagProcessor extends TagProcessor {
         return fileName;
     }
 
-    private List<TagSource> processTags(String fileName, Path parentSrcPath, String tagContent) {
-        Pattern tagPattern = Pattern.compile(tagRegex(), Pattern.DOTALL);
-        Matcher m = tagPattern.matcher(tagContent);
-        List<TagSource> tagSources = new ArrayList<>();
-        
-        while (m.find()) {            
-        	String src = m.group(1);            
-        	Path tagSrcPath = getAbsolutResourcePath(src, parentSrcPath, getMojo().getInputBaseDir().getAbsoluteFile().toPath());            
-            String srcContent = resourceAccess.read(tagSrcPath);
-            srcContent = preprocessTagContent(fileName, srcContent, src);
-            
-           log("Loading %s. Length=%d", tagSrcPath, srcContent.getBytes(CHARSET).length);            
-        
-            tagSources.add(new TagSource(tagSrcPath, srcContent));
+    /**
+     * @return compression mode chosen by the {@code compression} option following the file name, null when none
+     */
+    private Precompressor.Mode extractCompressionMode(Tag tag) {
+        String[] attributes = tag.getAttributes();
+        for (int i = 1; attributes != null && i < attributes.length; i++) {
+            if (attributes[i].startsWith(COMPRESSION_OPTION)) {
+                return Precompressor.Mode.parse(attributes[i].substring(COMPRESSION_OPTION.length()));
+            }
         }
-        
+        return null;
+    }
+
+    private List<String> extractSources(String tagContent) {
+        return innerTagLexer().extract(tagContent);
+    }
+
+    /**
+     * @return sources of the bundle, read by the prefetcher when there is one and preprocessed on the executor
+     */
+    private List<CompletableFuture<TagSource>> readTags(BundleKey bundleKey) {
+        List<CompletableFuture<TagSource>> tagSources = new ArrayList<>();
+
+        for (int i = 0; i < bundleKey.getSrcs().size(); i++) {
+            int index = i;
+            tagSources.add(prefetcher == null
+                    ? CompletableFuture.completedFuture(processTag(bundleKey, index))
+                    : prefetcher.get(bundleKey.getSrcPaths().get(index))
+                            .thenApplyAsync(content -> processTag(bundleKey, index, content), getMojo().getExecutor()));
+        }
+
         return tagSources;
     }
 
-    protected String preprocessTagContent(String fileName, String srcContent, String src) {
+    private TagSource processTag(BundleKey bundleKey, int index) {
+        return processTag(bundleKey, index, resourceAccess.read(bundleKey.getSrcPaths().get(index)));
+    }
+
+    private TagSource processTag(BundleKey bundleKey, int index, ResourceContent srcContent) {
+        String src = bundleKey.getSrcs().get(index);
+        Path tagSrcPath = bundleKey.getSrcPaths().get(index);
+        srcContent = preprocessTagContent(bundleKey.getFileName(), srcContent, src, tagSrcPath);
+
+        log("Loading %s. Length=%d", tagSrcPath, srcContent.length());
+
+        return new TagSource(tagSrcPath, srcContent);
+    }
+
+    /**
+     * Waits for the future, rethrowing the failure as it has been thrown.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param fileName   output file name
+     * @param srcContent content of the source
+     * @param src        source as written in the page
+     * @param srcPath    path of the source
+     * @return content of the source to optimize and bundle
+     */
+    protected ResourceContent preprocessTagContent(String fileName, ResourceContent srcContent, String src, Path srcPath) {
         return srcContent;
     }
+
+    /**
+     * @param srcPath path of a preprocessed source
+     * @return files other than the source read by {@link #preprocessTagContent}, the bundle is built again when any
+     * of them changes
+     */
+    protected Collection<Path> getDependencies(Path srcPath) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return finisher of the optimized sources of the bundle, or null when they are bundled as they are
+     */
+    SourceFinisher createSourceFinisher(BundleKey bundleKey) {
+        return null;
+    }
+
+    /**
+     * @return whether the bundles are {@link #finishBundle(BundleKey, ResourceContent) finished} as a whole
+     */
+    boolean isBundleFinished() {
+        return false;
+    }
+
+    /**
+     * Last step applied to the whole content of a bundle assembled in memory, bundles assembled as a stream are left
+     * as they are.
+     *
+     * @param bundleKey bundle being assembled
+     * @param content   concatenated optimized sources
+     * @return content of the bundle
+     */
+    ResourceContent finishBundle(BundleKey bundleKey, ResourceContent content) {
+        return content;
+    }
+
+    /**
+     * @return whether {@link #preprocessTagContent(String, ResourceContent, String, Path)} may change the content, otherwise
+     * minified sources of streamed bundles are copied to the output without being read
+     */
+    protected boolean isContentPreprocessed() {
+        return false;
+    }
         
     protected void log(String text, Object...args) {
     	 if (getMojo().isVerbose()) {
@@ -185,12 +596,40 @@ public abstract class RegexBasedTagProcessor extends TagProcessor {
          }
     }
 
+    /**
+     * Last step applied to the optimized sources of a single bundle, one at a time and in declaration order, so that
+     * it may depend on the sources preceding the current one.
+     */
+    interface SourceFinisher {
+
+        ResourceContent finish(ResourceContent content);
+
+        /**
+         * @return files read by the finisher, the bundle is built again when any of them changes
+         */
+        Collection<Path> getDependencies();
+    }
+
+    /**
+     * Source of a streamed bundle waiting for its turn to be appended: either being optimized or passed through.
+     */
+    private static class PendingSource {
+
+        private final Path passThroughPath;
+        private final CompletableFuture<ResourceContent> optimizedContent;
+
+        PendingSource(Path passThroughPath, CompletableFuture<ResourceContent> optimizedContent) {
+            this.passThroughPath = passThroughPath;
+            this.optimizedContent = optimizedContent;
+        }
+    }
+
     private static class TagSource {
 
         private Path srcPath;
-        private String srcContent;
+        private ResourceContent srcContent;
 
-        public TagSource(Path srcPath, String srcContent) {
+        public TagSource(Path srcPath, ResourceContent srcContent) {
             this.srcPath = srcPath;
             this.srcContent = srcContent;
         }
@@ -199,7 +638,7 @@ public abstract class RegexBasedTagProcessor extends TagProcessor {
             return srcPath;
         }
        
-        public String getSrcContent() {
+        public ResourceContent getSrcContent() {
             return srcContent;
         }
 
@@ -1,30 +1,360 @@
 package com.github.kospiotr.bundler;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 class ResourceAccess {
 
-    private static final Charset CHARSET = StandardCharsets.UTF_8;
+    /**
+     * Files larger than this are memory mapped when their content is only passed through, e.g. to be hashed, instead
+     * of being read into the heap.
+     */
+    static final long MAP_THRESHOLD = 1024 * 1024;
 
-    public String read(Path path) {
-        try {
-            byte[] encoded = Files.readAllBytes(path);
-            return new String(encoded, CHARSET);
+    private static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Permissions of new outputs on POSIX file systems, temporary files are only readable by their owner.
+     */
+    private static final Set<PosixFilePermission> DEFAULT_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final SourceCache cache;
+
+    public ResourceAccess() {
+        this(0);
+    }
+
+    /**
+     * @param cacheSize maximal size in bytes of the read content kept in memory for later reads of the same files, 0
+     *                  disables the cache
+     */
+    public ResourceAccess(long cacheSize) {
+        this.cache = cacheSize > 0 ? new SourceCache(cacheSize) : null;
+    }
+
+    /**
+     * Reads the content of the file, from the cache when the file has been read before and hasn't changed since.
+     */
+    public ResourceContent read(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (cache == null) {
+                return ResourceContent.of(readBytes(channel, channel.size()));
+            }
+            // attributes are taken before the content, a file changing meanwhile is read again next time
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            byte[] content = cache.get(path, attributes);
+            if (content == null) {
+                content = readBytes(channel, channel.size());
+                cache.put(path, attributes, content);
+            }
+            return ResourceContent.of(content);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void write(Path path, String s) {
+    /**
+     * Writes the content unless the file already has exactly the same content, so that unchanged outputs keep their
+     * modification time. The content is written to a temporary file next to the target and moved in place, readers
+     * never see a partially written file.
+     *
+     * @return whether the file has been written
+     */
+    public boolean write(Path path, ResourceContent content) {
+        invalidate(path);
         try {
-            Files.createDirectories(path.getParent());
-            Files.write(path, s.getBytes(CHARSET));
+            if (hasContent(path, content.getBytes())) {
+                skipped.incrementAndGet();
+                return false;
+            }
+            Path tempFile = createTempFile(path);
+            try {
+                Files.write(tempFile, content.getBytes());
+                moveInPlace(tempFile, path);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            written.incrementAndGet();
+            return true;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Streaming variant of {@link #write(Path, ResourceContent)}: the content is written by the writer to a temporary
+     * file, which is then compared with the existing file.
+     *
+     * @return whether the file has been written
+     */
+    public boolean write(Path path, ContentWriter writer) {
+        return write(path.getParent(), writer, () -> path);
+    }
+
+    /**
+     * Streaming write of content whose path is only known once it has been written, e.g. because its name contains
+     * the hash of the content.
+     *
+     * @param directory directory the content is written to before being moved to its path, on the same file store
+     * @param writer    writes the content
+     * @param path      supplies the path of the file, called once the content has been written
+     * @return whether the file has been written
+     */
+    public boolean write(Path directory, ContentWriter writer, Supplier<Path> path) {
+        try {
+            Files.createDirectories(directory);
+            Path tempFile = Files.createTempFile(directory, ".bundler", ".tmp");
+            try {
+                try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                    writer.writeTo(out);
+                }
+                Path target = path.get();
+                invalidate(target);
+                if (isSameContent(tempFile, target)) {
+                    skipped.incrementAndGet();
+                    return false;
+                }
+                Files.createDirectories(target.getParent());
+                moveInPlace(tempFile, target);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            written.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Copies the file unless the target already has exactly the same content, through a temporary file moved in
+     * place like {@link #write(Path, ResourceContent)}.
+     *
+     * @return whether the target has been written
+     */
+    public boolean copy(Path source, Path target) {
+        invalidate(target);
+        try {
+            if (isSameContent(source, target)) {
+                skipped.incrementAndGet();
+                return false;
+            }
+            Path tempFile = createTempFile(target);
+            try {
+                Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                moveInPlace(tempFile, target);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            written.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return whether the file existed and has been deleted
+     */
+    public boolean delete(Path path) {
+        invalidate(path);
+        try {
+            return Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return cache of the read content or null when disabled
+     */
+    SourceCache getCache() {
+        return cache;
+    }
+
+    public int getWrittenCount() {
+        return written.get();
+    }
+
+    public int getSkippedCount() {
+        return skipped.get();
+    }
+
+    private static Path createTempFile(Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        return Files.createTempFile(path.getParent(), "." + path.getFileName(), ".tmp");
+    }
+
+    private void invalidate(Path path) {
+        if (cache != null) {
+            cache.invalidate(path);
+        }
+    }
+
+    /**
+     * Moves the temporary file in place, with the permissions of the file it replaces or the default ones.
+     */
+    private static void moveInPlace(Path tempFile, Path path) throws IOException {
+        PosixFileAttributeView attributeView = Files.getFileAttributeView(tempFile, PosixFileAttributeView.class);
+        if (attributeView != null) {
+            attributeView.setPermissions(Files.isRegularFile(path) ? Files.getPosixFilePermissions(path) : DEFAULT_PERMISSIONS);
+        }
+        try {
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Compares sizes first, then the content chunk by chunk, stopping at the first difference.
+     */
+    private static boolean hasContent(Path path, byte[] content) throws IOException {
+        if (!Files.isRegularFile(path) || Files.size(path) != content.length) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(COMPARE_BUFFER_SIZE);
+            int offset = 0;
+            while (offset < content.length) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                if (read == -1) {
+                    return false;
+                }
+                buffer.flip();
+                if (!buffer.equals(ByteBuffer.wrap(content, offset, read))) {
+                    return false;
+                }
+                offset += read;
+            }
+            return true;
+        }
+    }
+
+    private static boolean isSameContent(Path first, Path second) throws IOException {
+        if (!Files.isRegularFile(second) || Files.size(first) != Files.size(second)) {
+            return false;
+        }
+        try (FileChannel firstChannel = FileChannel.open(first, StandardOpenOption.READ);
+             FileChannel secondChannel = FileChannel.open(second, StandardOpenOption.READ)) {
+            ByteBuffer firstBuffer = ByteBuffer.allocate(COMPARE_BUFFER_SIZE);
+            ByteBuffer secondBuffer = ByteBuffer.allocate(COMPARE_BUFFER_SIZE);
+            while (true) {
+                firstBuffer.clear();
+                secondBuffer.clear();
+                int read = readFully(firstChannel, firstBuffer);
+                if (readFully(secondChannel, secondBuffer) != read) {
+                    return false;
+                }
+                if (read == 0) {
+                    return true;
+                }
+                firstBuffer.flip();
+                secondBuffer.flip();
+                if (!firstBuffer.equals(secondBuffer)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            // keep reading until the buffer is full
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Reads the raw content of the file. Large files are memory mapped.
+     *
+     * @param path file to read
+     * @return buffer positioned at the beginning of the content
+     */
+    public ByteBuffer readBuffer(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel, channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long size) throws IOException {
+        if (size > MAP_THRESHOLD) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        return ByteBuffer.wrap(readBytes(channel, size));
+    }
+
+    /**
+     * Reads the whole content into the heap, content that is kept is not worth mapping first.
+     */
+    private static byte[] readBytes(FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) != -1) {
+            // keep reading until the buffer is full
+        }
+        if (buffer.hasRemaining()) {
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Copies the file to the channel without passing its content through the heap where the platform allows it.
+     *
+     * @param digest consumer of the content, e.g. a hasher, may be null. The file is then read once into a buffer,
+     *               memory mapped for large files, which is both passed to the digest and copied to the channel
+     * @return number of bytes copied
+     */
+    public long transfer(Path path, WritableByteChannel out, Consumer<ByteBuffer> digest) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (digest == null) {
+                for (long position = 0; position < size; ) {
+                    long transferred = channel.transferTo(position, size - position, out);
+                    if (transferred == 0 && channel.size() <= position) {
+                        throw new IOException("File has been truncated while being read: " + path);
+                    }
+                    position += transferred;
+                }
+                return size;
+            }
+            ByteBuffer content = read(channel, size);
+            digest.accept(content.duplicate());
+            while (content.hasRemaining()) {
+                out.write(content);
+            }
+            return size;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes content to the channel of a {@link #write(Path, ContentWriter) streaming write}.
+     */
+    interface ContentWriter {
+
+        void writeTo(WritableByteChannel out) throws IOException;
+    }
 }
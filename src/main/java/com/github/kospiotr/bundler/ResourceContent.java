@@ -0,0 +1,83 @@
+package com.github.kospiotr.bundler;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Content of a resource carried through the bundling pipeline: UTF-8 encoded bytes together with their decoded view.
+ * Whichever side is missing is computed on first use and kept, so content that is only read, measured, hashed and
+ * written is never decoded, and content that is processed as text is encoded once.
+ * <p>
+ * Instances are immutable, the returned byte array must not be modified.
+ */
+public final class ResourceContent {
+
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private volatile byte[] bytes;
+    private volatile String string;
+
+    private ResourceContent(byte[] bytes, String string) {
+        this.bytes = bytes;
+        this.string = string;
+    }
+
+    public static ResourceContent of(byte[] bytes) {
+        return new ResourceContent(bytes, null);
+    }
+
+    public static ResourceContent of(String string) {
+        return new ResourceContent(null, string);
+    }
+
+    public byte[] getBytes() {
+        byte[] result = bytes;
+        if (result == null) {
+            result = string.getBytes(CHARSET);
+            bytes = result;
+        }
+        return result;
+    }
+
+    public String getString() {
+        String result = string;
+        if (result == null) {
+            result = new String(bytes, CHARSET);
+            string = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return length of the content in bytes
+     */
+    public int length() {
+        return getBytes().length;
+    }
+
+    public boolean isEmpty() {
+        return bytes != null ? bytes.length == 0 : string.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return Arrays.equals(getBytes(), ((ResourceContent) o).getBytes());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(getBytes());
+    }
+
+    @Override
+    public String toString() {
+        return getString();
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.kospiotr.bundler;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory cache of the sources read during a build, so that sources included by several pages and bundles are
+ * read once. Entries are validated against the size and last modification time of the file, a changed file is simply
+ * read again.
+ * <p>
+ * The cache holds at most {@code maxSize} bytes of content, the least recently used entries are evicted when it is
+ * exceeded. Only the raw bytes are kept, decoding them would take up to twice their size on top, outside of the
+ * limit. Safe for concurrent use.
+ */
+class SourceCache {
+
+    private final long maxSize;
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger evictions = new AtomicInteger();
+
+    /**
+     * @param maxSize maximal total size of the cached content in bytes
+     */
+    SourceCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return cached content of the file or null when there is none or the file has changed since, must not be modified
+     */
+    byte[] get(Path path, BasicFileAttributes attributes) {
+        synchronized (entries) {
+            Entry entry = entries.get(path);
+            if (entry != null && entry.matches(attributes)) {
+                hits.incrementAndGet();
+                return entry.content;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches the content read from the file, evicting the least recently used entries when over the size limit.
+     * Content larger than the whole cache is not kept.
+     */
+    void put(Path path, BasicFileAttributes attributes, byte[] content) {
+        if (content.length > maxSize) {
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(path, new Entry(attributes, content));
+            if (previous != null) {
+                size -= previous.content.length;
+            }
+            size += content.length;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                size -= iterator.next().content.length;
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drops the entry of a file written during the build, its size and modification time may not tell.
+     */
+    void invalidate(Path path) {
+        synchronized (entries) {
+            Entry entry = entries.remove(path);
+            if (entry != null) {
+                size -= entry.content.length;
+            }
+        }
+    }
+
+    long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    int getHitCount() {
+        return hits.get();
+    }
+
+    int getMissCount() {
+        return misses.get();
+    }
+
+    int getEvictionCount() {
+        return evictions.get();
+    }
+
+    private static class Entry {
+
+        private final long size;
+        private final long lastModified;
+        private final byte[] content;
+
+        Entry(BasicFileAttributes attributes, byte[] content) {
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.content = content;
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis();
+        }
+    }
+}
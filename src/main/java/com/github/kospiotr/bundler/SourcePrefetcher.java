@@ -0,0 +1,149 @@
+package com.github.kospiotr.bundler;
+
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Reads sources ahead of the bundles needing them, concurrently, so that on file systems with a high latency (e.g. a
+ * network mounted workspace) the build waits for the bandwidth rather than for one round trip after another.
+ * <p>
+ * Reads run on virtual threads when the JVM provides them (JDK 21+) and on a pool of platform threads otherwise, with
+ * at most {@link #MAX_CONCURRENT_READS} reads in flight. Every read goes through {@link ResourceAccess}, so prefetched
+ * content lands in its cache as well.
+ * <p>
+ * Prefetched content is held until it is taken, only sources about to be read should be prefetched. A source is
+ * prefetched at most once, sources taken already are read again from the cache of {@link ResourceAccess} if at all.
+ */
+class SourcePrefetcher implements AutoCloseable {
+
+    static final int MAX_CONCURRENT_READS = 64;
+
+    private static final int PLATFORM_THREADS = 16;
+
+    private final ResourceAccess resourceAccess;
+    private final BuildState buildState;
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final Semaphore permits = new Semaphore(MAX_CONCURRENT_READS);
+    private final ConcurrentMap<Path, CompletableFuture<ResourceContent>> reads = new ConcurrentHashMap<>();
+    private final Set<Path> taken = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger prefetched = new AtomicInteger();
+
+    /**
+     * @param resourceAccess used to read the sources
+     * @param buildState     state of an incremental build, fingerprinting the sources before they are read, may be null
+     */
+    SourcePrefetcher(ResourceAccess resourceAccess, BuildState buildState) {
+        this.resourceAccess = resourceAccess;
+        this.buildState = buildState;
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        this.virtual = virtualExecutor != null;
+        this.executor = virtual ? virtualExecutor : newPlatformThreadExecutor();
+    }
+
+    /**
+     * Starts reading the source unless it is already being read or has been taken.
+     */
+    void prefetch(Path path) {
+        reads.computeIfAbsent(path, key -> {
+            // checked under the lock of the entry, a concurrent get() marks the source taken before removing its entry
+            if (taken.contains(key)) {
+                return null;
+            }
+            prefetched.incrementAndGet();
+            return CompletableFuture.supplyAsync(() -> read(key), executor);
+        });
+    }
+
+    /**
+     * Starts finding out which sources to read, off the calling thread since it may take file system round trips
+     * too, then reading them.
+     *
+     * @param sources supplies the sources to prefetch
+     */
+    void prefetch(Supplier<Collection<Path>> sources) {
+        executor.execute(() -> sources.get().forEach(this::prefetch));
+    }
+
+    /**
+     * @return content of the source, completed once its prefetch is done, or read now when it has not been prefetched
+     */
+    CompletableFuture<ResourceContent> get(Path path) {
+        taken.add(path);
+        CompletableFuture<ResourceContent> read = reads.remove(path);
+        if (read != null) {
+            return read;
+        }
+        return CompletableFuture.supplyAsync(() -> read(path), executor);
+    }
+
+    /**
+     * @return number of sources prefetched
+     */
+    int getPrefetchedCount() {
+        return prefetched.get();
+    }
+
+    /**
+     * @return number of prefetched sources not taken yet
+     */
+    int getHeldCount() {
+        return reads.size();
+    }
+
+    /**
+     * @return whether reads run on virtual threads
+     */
+    boolean isVirtual() {
+        return virtual;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        reads.clear();
+    }
+
+    private ResourceContent read(Path path) {
+        permits.acquireUninterruptibly();
+        try {
+            if (buildState != null) {
+                buildState.fingerprint(path);
+            }
+            return resourceAccess.read(path);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return executor starting a virtual thread per task or null before JDK 21
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(PLATFORM_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "bundler-prefetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
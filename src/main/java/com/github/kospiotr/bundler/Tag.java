@@ -6,11 +6,17 @@ class Tag {
     String content;
     String type;
     String[] attributes;
+    Page page;
 
     Tag(String content, String type, String[] attributes) {
+        this(content, type, attributes, null);
+    }
+
+    Tag(String content, String type, String[] attributes, Page page) {
         this.content = content;
         this.type = type;
         this.attributes = attributes;
+        this.page = page;
     }
 
     public String getContent() {
@@ -37,6 +43,17 @@ class Tag {
         this.attributes = attributes;
     }
 
+    /**
+     * @return page the tag was found in or null when the tag is processed outside of a page
+     */
+    public Page getPage() {
+        return page;
+    }
+
+    public void setPage(Page page) {
+        this.page = page;
+    }
+
     @Override
     public String toString() {
         return "Tag{" +
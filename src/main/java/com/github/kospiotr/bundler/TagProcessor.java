@@ -1,5 +1,7 @@
 package com.github.kospiotr.bundler;
 
+import java.util.List;
+
 import org.apache.maven.plugin.logging.Log;
 
 public abstract class TagProcessor {
@@ -11,6 +13,13 @@ public abstract class TagProcessor {
 
     abstract String process(Tag tag);
 
+    /**
+     * Called with all the tags of a page handled by this processor before any of them is processed, e.g. to start
+     * reading what the tags need.
+     */
+    void prefetch(List<Tag> tags) {
+    }
+
     public void setMojo(ProcessMojo mojo){
         this.mojo = mojo;
         this.log = mojo.getLog();
@@ -0,0 +1,185 @@
+package com.github.kospiotr.bundler;
+
+/**
+ * Finds bundle blocks:
+ *
+ * <pre>
+ * {@code
+ *     <!-- bundle:type attribute1 attribute2 -->content<!-- /bundle -->
+ * }
+ * </pre>
+ *
+ * in a single forward pass. Every character of the content is visited a bounded number of times, so scanning is
+ * linear in the content length, also for unclosed blocks and pages with lots of comments.
+ * <p>
+ * Markers are compared char by char and whitespace means {@code [ \t\n\x0B\f\r]}, so the scanner may also be used on a
+ * byte-per-char view of UTF-8 encoded content.
+ */
+class TagScanner {
+
+    private final String tagStart;
+    private final String tagEnd;
+    private final String openMarker;
+    private final String closeMarker;
+
+    TagScanner(String tagStart, String tagEnd, String tagName, String separator) {
+        this.tagStart = tagStart;
+        this.tagEnd = tagEnd;
+        this.openMarker = tagName + separator;
+        this.closeMarker = "/" + tagName;
+    }
+
+    /**
+     * @param content content to scan
+     * @param from    index to start scanning from
+     * @return first block starting at or after the given index or null when there is none
+     */
+    public Block find(CharSequence content, int from) {
+        int length = content.length();
+        int tagStartIndex = indexOf(content, tagStart, from);
+        while (tagStartIndex != -1) {
+            int index = skipWhitespaces(content, tagStartIndex + tagStart.length());
+            if (!startsWith(content, openMarker, index)) {
+                tagStartIndex = indexOf(content, tagStart, tagStartIndex + 1);
+                continue;
+            }
+
+            int typeStart = index + openMarker.length();
+            int typeEnd = typeStart;
+            while (typeEnd < length && !isWhitespace(content.charAt(typeEnd)) && !startsWith(content, tagEnd, typeEnd)) {
+                typeEnd++;
+            }
+            int attributesStart = skipWhitespaces(content, typeEnd);
+            int attributesEnd = indexOf(content, tagEnd, attributesStart);
+            if (attributesEnd == -1) {
+                // no block can be closed after this point
+                return null;
+            }
+
+            int contentStart = attributesEnd + tagEnd.length();
+            int closeStart = indexOf(content, tagStart, contentStart);
+            while (closeStart != -1) {
+                int closeEnd = matchClose(content, closeStart);
+                if (closeEnd != -1) {
+                    return new Block(tagStartIndex, closeEnd, typeStart, typeEnd, attributesStart, attributesEnd, contentStart, closeStart);
+                }
+                closeStart = indexOf(content, tagStart, closeStart + 1);
+            }
+            // unclosed block, no block can be closed after this point either
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * @return index right after the close marker starting at the given index or -1 when there is no close marker
+     */
+    private int matchClose(CharSequence content, int closeStart) {
+        int index = skipWhitespaces(content, closeStart + tagStart.length());
+        if (!startsWith(content, closeMarker, index)) {
+            return -1;
+        }
+        index = skipWhitespaces(content, index + closeMarker.length());
+        if (!startsWith(content, tagEnd, index)) {
+            return -1;
+        }
+        return index + tagEnd.length();
+    }
+
+    private static int skipWhitespaces(CharSequence content, int index) {
+        int length = content.length();
+        while (index < length && isWhitespace(content.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean startsWith(CharSequence content, String prefix, int index) {
+        int prefixLength = prefix.length();
+        if (index + prefixLength > content.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefixLength; i++) {
+            if (content.charAt(index + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int indexOf(CharSequence content, String str, int from) {
+        if (content instanceof String) {
+            return ((String) content).indexOf(str, from);
+        }
+        char first = str.charAt(0);
+        int max = content.length() - str.length();
+        for (int i = Math.max(from, 0); i <= max; i++) {
+            if (content.charAt(i) == first && startsWith(content, str, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Location of a bundle block. All end indexes are exclusive.
+     */
+    static class Block {
+
+        private final int start;
+        private final int end;
+        private final int typeStart;
+        private final int typeEnd;
+        private final int attributesStart;
+        private final int attributesEnd;
+        private final int contentStart;
+        private final int contentEnd;
+
+        Block(int start, int end, int typeStart, int typeEnd, int attributesStart, int attributesEnd, int contentStart, int contentEnd) {
+            this.start = start;
+            this.end = end;
+            this.typeStart = typeStart;
+            this.typeEnd = typeEnd;
+            this.attributesStart = attributesStart;
+            this.attributesEnd = attributesEnd;
+            this.contentStart = contentStart;
+            this.contentEnd = contentEnd;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public int getTypeStart() {
+            return typeStart;
+        }
+
+        public int getTypeEnd() {
+            return typeEnd;
+        }
+
+        public int getAttributesStart() {
+            return attributesStart;
+        }
+
+        public int getAttributesEnd() {
+            return attributesEnd;
+        }
+
+        public int getContentStart() {
+            return contentStart;
+        }
+
+        public int getContentEnd() {
+            return contentEnd;
+        }
+    }
+}
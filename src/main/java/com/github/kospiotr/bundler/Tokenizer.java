@@ -1,9 +1,18 @@
 package com.github.kospiotr.bundler;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 public class Tokenizer {
 
@@ -12,12 +21,16 @@ public class Tokenizer {
     public static final String DEFAULT_TAG_NAME = "bundle";
     public static final String DEFAULT_SEPARATOR = ":";
 
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+
     private final ProcessMojo mojo;
     final String tagStart;
     final String tagEnd;
     final String tagName;
     final String separator;
+    private final TagScanner tagScanner;
     private Map<String, TagProcessor> tagProcessors = new HashMap<>();
+    private Executor executor = Runnable::run;
 
 
     public Tokenizer(ProcessMojo mojo) {
@@ -26,6 +39,7 @@ public class Tokenizer {
         this.tagEnd = DEFAULT_TAG_END;
         this.tagName = DEFAULT_TAG_NAME;
         this.separator = DEFAULT_SEPARATOR;
+        this.tagScanner = new TagScanner(tagStart, tagEnd, tagName, separator);
     }
 
     public void registerProcessor(TagProcessor tagProcessor) {
@@ -37,32 +51,120 @@ public class Tokenizer {
         tagProcessor.setMojo(mojo);
     }
 
+    /**
+     * Sets the executor the tags of a page are processed on. By default tags are processed one by one in the calling
+     * thread.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
     public String process(String content) {
-        StringBuilder sb = new StringBuilder();
-        String regex = "\\Q" + tagStart + "\\E\\s*\\Q" + tagName + separator + "\\E([^ ]*)\\s*(.*?)\\Q" + tagEnd + "\\E" +
-                "(.*?)" +
-                "\\Q" + tagStart + "\\E\\s*\\Q/" + tagName + "\\E\\s*\\Q" + tagEnd + "\\E";
-        Pattern tagPattern = Pattern.compile(regex, Pattern.DOTALL);
-        Matcher m = tagPattern.matcher(content);
+        return process(null, content);
+    }
+
+    public String process(Page page, String content) {
+        List<TagScanner.Block> blocks = findBlocks(content);
+        List<CompletableFuture<String>> results = processBlocks(page, blocks, content::substring);
+        StringBuilder sb = new StringBuilder(content.length());
         int previousIndex = 0;
-        while (m.find(previousIndex)) {
-            String type = m.group(1);
-            String attributeContent = m.group(2);
-            String tagContent = m.group(3);
-            String[] attributes = extractAttributes(attributeContent);
-            Tag tag = new Tag(tagContent, type, attributes);
-
-            sb.append(content.substring(previousIndex, m.start()));
+        for (int i = 0; i < blocks.size(); i++) {
+            TagScanner.Block block = blocks.get(i);
+            sb.append(content, previousIndex, block.getStart());
+            sb.append(results.get(i).join());
+            previousIndex = block.getEnd();
+        }
+        sb.append(content, previousIndex, content.length());
+        return sb.toString();
+    }
+
+    /**
+     * Streaming variant of {@link #process(Page, String)}: bytes outside of bundle blocks are copied to the output
+     * untouched, only bundle blocks are decoded.
+     *
+     * @param page    page being processed
+     * @param content UTF-8 encoded page content
+     * @param out     channel the processed page is written to
+     */
+    public void process(Page page, ByteBuffer content, WritableByteChannel out) throws IOException {
+        ByteCharSequence chars = new ByteCharSequence(content);
+        List<TagScanner.Block> blocks = findBlocks(chars);
+        List<CompletableFuture<String>> results = processBlocks(page, blocks, (start, end) -> decode(chars, start, end));
+        int previousIndex = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            TagScanner.Block block = blocks.get(i);
+            writeFully(out, chars.slice(previousIndex, block.getStart()));
+            writeFully(out, CHARSET.encode(results.get(i).join()));
+            previousIndex = block.getEnd();
+        }
+        writeFully(out, chars.slice(previousIndex, chars.length()));
+    }
+
+    private List<TagScanner.Block> findBlocks(CharSequence content) {
+        List<TagScanner.Block> blocks = new ArrayList<>();
+        int previousIndex = 0;
+        TagScanner.Block block;
+        while ((block = tagScanner.find(content, previousIndex)) != null) {
+            blocks.add(block);
+            previousIndex = block.getEnd();
+        }
+        return blocks;
+    }
+
+    /**
+     * Submits every block to the executor. Returns only once all of them are done, so that no bundle is still being
+     * written when a failure of another one fails the page.
+     *
+     * @param decoder maps a range of the content to a string
+     * @return results in document order, all of them completed successfully
+     */
+    private List<CompletableFuture<String>> processBlocks(Page page, List<TagScanner.Block> blocks, RangeDecoder decoder) {
+        List<Tag> tags = new ArrayList<>(blocks.size());
+        Map<TagProcessor, List<Tag>> tagsByProcessor = new LinkedHashMap<>();
+        for (TagScanner.Block block : blocks) {
+            Tag tag = new Tag(
+                    decoder.decode(block.getContentStart(), block.getContentEnd()),
+                    decoder.decode(block.getTypeStart(), block.getTypeEnd()),
+                    extractAttributes(decoder.decode(block.getAttributesStart(), block.getAttributesEnd())),
+                    page);
             TagProcessor processor = tagProcessors.get(tag.getType());
             if (processor == null) {
                 throw new IllegalArgumentException("Tag type: " + tag.getType() + " is not supported");
             }
+            tags.add(tag);
+            tagsByProcessor.computeIfAbsent(processor, key -> new ArrayList<>()).add(tag);
+        }
+        // sources of all the blocks are read while the first ones are processed
+        tagsByProcessor.forEach(TagProcessor::prefetch);
+        List<CompletableFuture<String>> results = new ArrayList<>(tags.size());
+        for (Tag tag : tags) {
+            TagProcessor processor = tagProcessors.get(tag.getType());
+            results.add(CompletableFuture.supplyAsync(() -> processor.process(tag), executor));
+        }
+        RuntimeException failure = null;
+        for (CompletableFuture<String> result : results) {
+            try {
+                result.join();
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    private static String decode(ByteCharSequence chars, int start, int end) {
+        return CHARSET.decode(chars.slice(start, end)).toString();
+    }
 
-            sb.append(processor.process(tag));
-            previousIndex = m.end();
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
         }
-        sb.append(content.substring(previousIndex, content.length()));
-        return sb.toString();
     }
 
     private String[] extractAttributes(String attributeContent) {
@@ -71,4 +173,8 @@ public class Tokenizer {
                 attributeContent.split("\\s+");
     }
 
+    private interface RangeDecoder {
+
+        String decode(int start, int end);
+    }
 }
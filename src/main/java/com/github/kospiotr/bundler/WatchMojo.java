@@ -0,0 +1,196 @@
+package com.github.kospiotr.bundler;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Processes the pages like the process goal does and keeps watching the pages and their resources. Whenever a file
+ * changes, only the bundles built from it are built again and only the pages using them are processed again. When
+ * the file system loses track of the changes, all the pages are processed again.
+ * <p>
+ * Meant for local development, runs until the build is interrupted (Ctrl+C).
+ */
+@Mojo(name = "watch")
+public class WatchMojo extends ProcessMojo {
+
+    /**
+     * Time in milliseconds to wait for further changes before rebuilding, so a burst of saves triggers a single build.
+     */
+    @Parameter(defaultValue = "300", property = "bundler.debounce")
+    long debounce;
+
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final Set<Path> registeredDirectories = new HashSet<>();
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        // the dependencies of the pages are taken from the build state
+        incremental = true;
+        if (stateFile == null) {
+            throw new MojoExecutionException("stateFile is required for watching");
+        }
+
+        build(collectPages(), new ArrayList<Page>());
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            DependencyIndex dependencyIndex = new DependencyIndex(getBuildState());
+            registerDirectories(watchService, dependencyIndex);
+            getLog().info("Watching for changes, press Ctrl+C to stop");
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changedFiles = awaitChanges(watchService, dependencyIndex);
+                if (changedFiles != null && changedFiles.isEmpty()) {
+                    continue;
+                }
+                if (rebuild(changedFiles, dependencyIndex)) {
+                    dependencyIndex = new DependencyIndex(getBuildState());
+                    registerDirectories(watchService, dependencyIndex);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to watch for changes", e);
+        }
+    }
+
+    /**
+     * Processes again the pages affected by the changes, and the pages not processed yet.
+     *
+     * @param changedFiles changed files, null when any file may have changed
+     * @return whether any page has been processed
+     */
+    boolean rebuild(Set<Path> changedFiles, DependencyIndex dependencyIndex) throws MojoExecutionException {
+        List<Page> pages = new ArrayList<>();
+        List<Page> retainedPages = new ArrayList<>();
+        if (changedFiles == null) {
+            getLog().warn("Changes have been lost by the file system, processing all the pages again");
+            pages.addAll(collectPages());
+        } else {
+            if (getLog().isDebugEnabled()) {
+                getLog().debug("Changed files: " + changedFiles);
+            }
+            Set<Path> affectedPages = dependencyIndex.getAffectedPages(changedFiles);
+            for (Page page : collectPages()) {
+                Path inputFilePath = page.getInputFilePath();
+                if (affectedPages.contains(inputFilePath) || !dependencyIndex.containsPage(inputFilePath)) {
+                    pages.add(page);
+                } else {
+                    retainedPages.add(page);
+                }
+            }
+        }
+        if (pages.isEmpty()) {
+            return false;
+        }
+
+        try {
+            build(pages, retainedPages);
+        } catch (MojoExecutionException | RuntimeException e) {
+            // keep watching, the next change may fix the problem
+            getLog().error("Build failed", e);
+        }
+        return true;
+    }
+
+    /**
+     * Blocks until the first change and then collects further changes until none happens for the debounce time.
+     *
+     * @return changed files (outputs of the build excluded), null when the file system has lost events and any file
+     * may have changed
+     */
+    Set<Path> awaitChanges(WatchService watchService, DependencyIndex dependencyIndex) throws InterruptedException, IOException {
+        Set<Path> changedFiles = new LinkedHashSet<>();
+        boolean overflow = false;
+        WatchKey key = watchService.take();
+        while (key != null) {
+            Path directory = watchedDirectories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    overflow = true;
+                    continue;
+                }
+                if (directory == null) {
+                    continue;
+                }
+                Path changedFile = directory.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(changedFile)) {
+                    registerTree(watchService, changedFile);
+                } else if (!dependencyIndex.isOutput(changedFile)) {
+                    changedFiles.add(changedFile);
+                }
+            }
+            if (!key.reset()) {
+                registeredDirectories.remove(watchedDirectories.remove(key));
+            }
+            key = watchService.poll(debounce, TimeUnit.MILLISECONDS);
+        }
+        return overflow ? null : changedFiles;
+    }
+
+    void registerDirectories(WatchService watchService, DependencyIndex dependencyIndex) throws IOException {
+        if (getInputBaseDir() != null) {
+            registerTree(watchService, getInputBaseDir().getAbsoluteFile().toPath());
+        }
+        if (getInputFiles() != null && getInputFiles().getDirectory() != null) {
+            registerTree(watchService, getInputFiles().getDirectory().getAbsoluteFile().toPath());
+        }
+        File inputFile = getInputFilePath();
+        if (inputFile != null) {
+            register(watchService, inputFile.getAbsoluteFile().toPath().getParent());
+        }
+        // sources outside of the registered trees
+        for (Path directory : dependencyIndex.getDirectories()) {
+            register(watchService, directory);
+        }
+    }
+
+    private void registerTree(WatchService watchService, Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(watchService, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void register(WatchService watchService, Path directory) throws IOException {
+        Path normalized = directory.normalize();
+        if (registeredDirectories.contains(normalized) || !Files.isDirectory(normalized)) {
+            return;
+        }
+        WatchKey key = normalized.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        watchedDirectories.put(key, normalized);
+        registeredDirectories.add(normalized);
+    }
+}
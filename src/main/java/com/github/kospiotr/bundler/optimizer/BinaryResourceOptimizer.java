@@ -0,0 +1,12 @@
+package com.github.kospiotr.bundler.optimizer;
+
+/**
+ * Optimizer able to work on UTF-8 encoded content directly, sparing the decoding and encoding of the content around
+ * the String based methods.
+ */
+public interface BinaryResourceOptimizer extends ResourceOptimizer {
+
+    byte[] optimizeJs(byte[] content, JsOptimizerParams params);
+
+    byte[] optimizeCss(byte[] content);
+}
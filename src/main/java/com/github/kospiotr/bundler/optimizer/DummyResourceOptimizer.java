@@ -1,6 +1,6 @@
 package com.github.kospiotr.bundler.optimizer;
 
-public class DummyResourceOptimizer implements ResourceOptimizer {
+public class DummyResourceOptimizer implements BinaryResourceOptimizer {
 
     @Override
     public String optimizeJs(String content, JsOptimizerParams params) {
@@ -11,4 +11,14 @@ public class DummyResourceOptimizer implements ResourceOptimizer {
     public String optimizeCss(String content) {
         return content;
     }
+
+    @Override
+    public byte[] optimizeJs(byte[] content, JsOptimizerParams params) {
+        return content;
+    }
+
+    @Override
+    public byte[] optimizeCss(byte[] content) {
+        return content;
+    }
 }
@@ -38,4 +38,12 @@ public class JsOptimizerParams {
     public void setDisableOptimizations(boolean disableOptimizations) {
         this.disableOptimizations = disableOptimizations;
     }
+
+    @Override
+    public String toString() {
+        return "munge=" + munge +
+                ";verbose=" + verbose +
+                ";preserveAllSemiColons=" + preserveAllSemiColons +
+                ";disableOptimizations=" + disableOptimizations;
+    }
 }
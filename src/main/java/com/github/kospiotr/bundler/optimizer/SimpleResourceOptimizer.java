@@ -3,7 +3,9 @@ package com.github.kospiotr.bundler.optimizer;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -11,7 +13,7 @@ import java.nio.charset.StandardCharsets;
 import com.github.kospiotr.bundler.optimizer.support.CSSMin;
 import com.github.kospiotr.bundler.optimizer.support.JSMin;
 
-public class SimpleResourceOptimizer implements ResourceOptimizer {
+public class SimpleResourceOptimizer implements BinaryResourceOptimizer {
 
     private static final Charset CHARSET = StandardCharsets.UTF_8;
 
@@ -20,13 +22,21 @@ public class SimpleResourceOptimizer implements ResourceOptimizer {
         if (content.isEmpty()) {
             return content;
         }
+        return new String(optimizeJs(content.getBytes(CHARSET), params), CHARSET);
+    }
+
+    @Override
+    public byte[] optimizeJs(byte[] content, JsOptimizerParams params) {
+        if (content.length == 0) {
+            return content;
+        }
         try {
-            ByteArrayInputStream input = new ByteArrayInputStream(content.getBytes(CHARSET));
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ByteArrayInputStream input = new ByteArrayInputStream(content);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(content.length);
             PrintStream printStream = new PrintStream(output, true, CHARSET.name());
             new JSMin(input, printStream).jsmin();
             printStream.flush();
-            return new String(output.toByteArray(), CHARSET);
+            return output.toByteArray();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -37,13 +47,24 @@ public class SimpleResourceOptimizer implements ResourceOptimizer {
         if (content.isEmpty()) {
             return content;
         }
+        return new String(optimizeCss(new StringReader(content), content.length()), CHARSET);
+    }
+
+    @Override
+    public byte[] optimizeCss(byte[] content) {
+        if (content.length == 0) {
+            return content;
+        }
+        return optimizeCss(new InputStreamReader(new ByteArrayInputStream(content), CHARSET), content.length);
+    }
+
+    private byte[] optimizeCss(Reader input, int length) {
         try {
-            StringReader input = new StringReader(content);
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(length);
             PrintStream printStream = new PrintStream(output, true, CHARSET.name());
             CSSMin.formatFile(input, printStream);
             printStream.flush();
-            return new String(output.toByteArray(), CHARSET);
+            return output.toByteArray();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -1,26 +1,128 @@
 package com.github.kospiotr.bundler.util;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
-import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
-
 public class HashGenerator {
 
+    /**
+     * Fast non-cryptographic algorithm, see {@link XxHash64}.
+     */
+    public static final String XXHASH64 = "XXHASH64";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
 	/**
-	 * Computes the hash of the content using the selected algorithm.
+	 * Computes the hash of the UTF-8 encoded content using the selected algorithm.
 	 * @param content
 	 * @param hashAlgorithm
 	 * @return
 	 */
     public static String computeHash(String content, String hashAlgorithm) {
+        return computeHash(content.getBytes(StandardCharsets.UTF_8), hashAlgorithm);
+    }
+
+    /**
+     * Computes the hash of the binary content using the selected algorithm.
+     * @param content
+     * @param hashAlgorithm
+     * @return
+     */
+    public static String computeHash(byte[] content, String hashAlgorithm) {
+        Hasher hasher = newHasher(hashAlgorithm);
+        hasher.update(content, 0, content.length);
+        return hasher.getHash();
+    }
+
+    /**
+     * Creates a hasher computing the hash of content passed in parts, e.g. while it is being assembled.
+     * @param hashAlgorithm {@link #XXHASH64} or any algorithm supported by {@link MessageDigest}
+     * @return
+     */
+    public static Hasher newHasher(String hashAlgorithm) {
+        if (XXHASH64.equalsIgnoreCase(hashAlgorithm)) {
+            return new XxHash64Hasher();
+        }
         try {
-            MessageDigest md5 = MessageDigest.getInstance(hashAlgorithm);
-            byte[] digest = md5.digest(content.getBytes());
-            return new HexBinaryAdapter().marshal(digest).toLowerCase();
+            return new MessageDigestHasher(MessageDigest.getInstance(hashAlgorithm));
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
     }
-	
+
+    /**
+     * @return lower case hexadecimal representation of the bytes
+     */
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Computes the hash of content passed in parts. Not thread safe.
+     */
+    public interface Hasher {
+
+        void update(byte[] content, int offset, int length);
+
+        /**
+         * Updates the hash with the remaining content of the buffer, e.g. a memory mapped file, consuming it.
+         */
+        void update(ByteBuffer content);
+
+        /**
+         * @return lower case hexadecimal hash of all the content passed
+         */
+        String getHash();
+    }
+
+    private static class MessageDigestHasher implements Hasher {
+
+        private final MessageDigest messageDigest;
+
+        MessageDigestHasher(MessageDigest messageDigest) {
+            this.messageDigest = messageDigest;
+        }
+
+        @Override
+        public void update(byte[] content, int offset, int length) {
+            messageDigest.update(content, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer content) {
+            messageDigest.update(content);
+        }
+
+        @Override
+        public String getHash() {
+            return toHex(messageDigest.digest());
+        }
+    }
+
+    private static class XxHash64Hasher implements Hasher {
+
+        private final XxHash64 xxHash64 = new XxHash64();
+
+        @Override
+        public void update(byte[] content, int offset, int length) {
+            xxHash64.update(content, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer content) {
+            xxHash64.update(content);
+        }
+
+        @Override
+        public String getHash() {
+            return String.format("%016x", xxHash64.getValue());
+        }
+    }
 }
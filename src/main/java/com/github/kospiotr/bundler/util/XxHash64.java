@@ -0,0 +1,176 @@
+package com.github.kospiotr.bundler.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming implementation of the xxHash64 (https://github.com/Cyan4973/xxHash) non-cryptographic hash function.
+ * Much faster than MD5 / SHA-*, good enough for cache busting file names, but not for anything security related.
+ */
+public class XxHash64 {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private final long seed;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long totalLength;
+    private final byte[] buffer = new byte[32];
+    private int bufferSize;
+
+    public XxHash64() {
+        this(0);
+    }
+
+    public XxHash64(long seed) {
+        this.seed = seed;
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+    }
+
+    public void update(byte[] input, int offset, int length) {
+        totalLength += length;
+        int end = offset + length;
+
+        if (bufferSize > 0) {
+            int fill = Math.min(32 - bufferSize, length);
+            System.arraycopy(input, offset, buffer, bufferSize, fill);
+            bufferSize += fill;
+            offset += fill;
+            if (bufferSize < 32) {
+                return;
+            }
+            processStripe(buffer, 0);
+            bufferSize = 0;
+        }
+
+        for (; offset + 32 <= end; offset += 32) {
+            processStripe(input, offset);
+        }
+
+        bufferSize = end - offset;
+        System.arraycopy(input, offset, buffer, 0, bufferSize);
+    }
+
+    /**
+     * Updates the hash with the remaining bytes of the buffer, consuming them. Direct buffers, e.g. memory mapped
+     * files, are read in place.
+     */
+    public void update(ByteBuffer input) {
+        if (input.hasArray()) {
+            update(input.array(), input.arrayOffset() + input.position(), input.remaining());
+            input.position(input.limit());
+            return;
+        }
+        ByteBuffer in = input.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int length = in.remaining();
+        totalLength += length;
+        input.position(input.limit());
+
+        if (bufferSize > 0) {
+            int fill = Math.min(32 - bufferSize, length);
+            in.get(buffer, bufferSize, fill);
+            bufferSize += fill;
+            if (bufferSize < 32) {
+                return;
+            }
+            processStripe(buffer, 0);
+            bufferSize = 0;
+        }
+
+        int offset = in.position();
+        for (; offset + 32 <= length; offset += 32) {
+            v1 = round(v1, in.getLong(offset));
+            v2 = round(v2, in.getLong(offset + 8));
+            v3 = round(v3, in.getLong(offset + 16));
+            v4 = round(v4, in.getLong(offset + 24));
+        }
+
+        bufferSize = length - offset;
+        in.position(offset);
+        in.get(buffer, 0, bufferSize);
+    }
+
+    /**
+     * @return hash of all the bytes passed so far, further updates are still possible
+     */
+    public long getValue() {
+        long hash;
+        if (totalLength >= 32) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = seed + PRIME5;
+        }
+        hash += totalLength;
+
+        int offset = 0;
+        for (; offset + 8 <= bufferSize; offset += 8) {
+            hash ^= round(0, getLong(buffer, offset));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+        }
+        if (offset + 4 <= bufferSize) {
+            hash ^= (getInt(buffer, offset) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            offset += 4;
+        }
+        for (; offset < bufferSize; offset++) {
+            hash ^= (buffer[offset] & 0xFFL) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private void processStripe(byte[] input, int offset) {
+        v1 = round(v1, getLong(input, offset));
+        v2 = round(v2, getLong(input, offset + 8));
+        v3 = round(v3, getLong(input, offset + 16));
+        v4 = round(v4, getLong(input, offset + 24));
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME1;
+    }
+
+    private static long mergeRound(long accumulator, long value) {
+        accumulator ^= round(0, value);
+        return accumulator * PRIME1 + PRIME4;
+    }
+
+    private static long getLong(byte[] b, int i) {
+        return (b[i] & 0xFFL)
+                | (b[i + 1] & 0xFFL) << 8
+                | (b[i + 2] & 0xFFL) << 16
+                | (b[i + 3] & 0xFFL) << 24
+                | (b[i + 4] & 0xFFL) << 32
+                | (b[i + 5] & 0xFFL) << 40
+                | (b[i + 6] & 0xFFL) << 48
+                | (b[i + 7] & 0xFFL) << 56;
+    }
+
+    private static int getInt(byte[] b, int i) {
+        return (b[i] & 0xFF)
+                | (b[i + 1] & 0xFF) << 8
+                | (b[i + 2] & 0xFF) << 16
+                | (b[i + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,912 @@
+package com.github.kospiotr.bundler.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Pure Java DEFLATE (RFC 1951) encoder trading compression time for output size, following the approach of Zopfli
+ * (https://github.com/google/zopfli):
+ * <ul>
+ * <li>the matches of every position are found once, for every match length the closest match is kept</li>
+ * <li>the input is split into blocks wherever separate Huffman codes pay off</li>
+ * <li>every block is parsed iteratively: the cheapest path through literals and matches is found using the symbol
+ * costs of the previous iteration, until the result stops improving</li>
+ * </ul>
+ * The output is typically a few percent smaller than {@link java.util.zip.Deflater#BEST_COMPRESSION}, at a compression
+ * speed orders of magnitude lower. Decompression speed is unaffected. Instances are immutable and may be shared
+ * between threads.
+ */
+public class ZopfliDeflater {
+
+    /**
+     * Number of iterations Zopfli uses by default.
+     */
+    public static final int DEFAULT_ITERATIONS = 15;
+
+    private static final int WINDOW_SIZE = 32 * 1024;
+    private static final int MIN_MATCH = 3;
+    private static final int MAX_MATCH = 258;
+    private static final int HASH_BITS = 15;
+    private static final int MAX_CHAIN_HITS = 8192;
+    private static final int MAX_BLOCKS = 15;
+    private static final int MAX_STORED_LENGTH = 65535;
+    private static final int END_OF_BLOCK = 256;
+
+    private static final int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59,
+            67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4,
+            5, 5, 5, 5, 0};
+    private static final int[] DIST_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513,
+            769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DIST_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10,
+            11, 11, 12, 12, 13, 13};
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+    private static final int[] LENGTH_SYMBOL = new int[MAX_MATCH + 1];
+    private static final int[] FIXED_LITERAL_LENGTHS = new int[288];
+    private static final int[] FIXED_DISTANCE_LENGTHS = new int[32];
+
+    static {
+        for (int symbol = 0; symbol < LENGTH_BASE.length; symbol++) {
+            // 258 has its own symbol, although the previous one could express it as well
+            int last = symbol == LENGTH_BASE.length - 1 ? MAX_MATCH : LENGTH_BASE[symbol + 1] - 1;
+            for (int length = LENGTH_BASE[symbol]; length <= last; length++) {
+                LENGTH_SYMBOL[length] = symbol;
+            }
+        }
+        Arrays.fill(FIXED_LITERAL_LENGTHS, 0, 144, 8);
+        Arrays.fill(FIXED_LITERAL_LENGTHS, 144, 256, 9);
+        Arrays.fill(FIXED_LITERAL_LENGTHS, 256, 280, 7);
+        Arrays.fill(FIXED_LITERAL_LENGTHS, 280, 288, 8);
+        Arrays.fill(FIXED_DISTANCE_LENGTHS, 5);
+    }
+
+    private final int iterations;
+
+    public ZopfliDeflater() {
+        this(DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * @param iterations number of optimal parsing iterations per block, more iterations rarely pay off beyond 15
+     */
+    public ZopfliDeflater(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Number of iterations must be positive: " + iterations);
+        }
+        this.iterations = iterations;
+    }
+
+    /**
+     * Compresses the data as raw deflate data (no zlib / gzip wrapper).
+     *
+     * @param data  data to compress, up to 32K preceding {@code start} are used as the dictionary
+     * @param start index of the first byte to compress
+     * @param end   index after the last byte to compress
+     * @param last  whether the data ends the stream, otherwise the output is flushed to a byte boundary with an empty
+     *              stored block (like {@link java.util.zip.Deflater#SYNC_FLUSH}) so that another part can follow
+     * @return compressed data
+     */
+    public byte[] deflate(byte[] data, int start, int end, boolean last) {
+        BitWriter out = new BitWriter(Math.max(64, (end - start) / 3));
+        if (start == end) {
+            if (last) {
+                // fixed block holding just the end of block symbol
+                out.write(1, 1);
+                out.write(1, 2);
+                out.write(0, 7);
+            }
+        } else {
+            Matches matches = findMatches(data, Math.max(0, start - WINDOW_SIZE), start, end);
+            Lz77 greedy = greedyParse(data, start, end, matches);
+            int[] blockStarts = splitBlocks(greedy, start);
+            for (int i = 0; i < blockStarts.length; i++) {
+                int blockStart = blockStarts[i];
+                int blockEnd = i + 1 < blockStarts.length ? blockStarts[i + 1] : end;
+                Lz77 block = optimalParse(data, blockStart, blockEnd, matches, start,
+                        greedy.slice(greedy.indexOf(blockStart), i + 1 < blockStarts.length ? greedy.indexOf(blockEnd) : greedy.size));
+                writeBlock(out, data, blockStart, blockEnd, block, last && i == blockStarts.length - 1);
+            }
+        }
+        if (!last) {
+            out.write(0, 3);
+            out.alignToByte();
+            out.write(0, 16);
+            out.write(0xffff, 16);
+        }
+        out.alignToByte();
+        return out.toByteArray();
+    }
+
+    /**
+     * For every position, the closest match of every length, stored as (length, distance) pairs of increasing length:
+     * a match of length l is available at the distance of the first pair whose length is at least l.
+     */
+    private static final class Matches {
+
+        private final int start;
+        private final int[] offsets;
+        private int[] lengths = new int[1024];
+        private int[] distances = new int[1024];
+        private int size;
+
+        Matches(int start, int end) {
+            this.start = start;
+            this.offsets = new int[end - start + 1];
+        }
+
+        void add(int length, int distance) {
+            if (size == lengths.length) {
+                lengths = Arrays.copyOf(lengths, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            lengths[size] = length;
+            distances[size] = distance;
+            size++;
+        }
+
+        int first(int position) {
+            return offsets[position - start];
+        }
+
+        int end(int position) {
+            return offsets[position - start + 1];
+        }
+
+        /**
+         * @return longest match length at the position, 0 when there is none
+         */
+        int longest(int position) {
+            int end = end(position);
+            return end > first(position) ? lengths[end - 1] : 0;
+        }
+    }
+
+    private static Matches findMatches(byte[] data, int windowStart, int start, int end) {
+        Matches matches = new Matches(start, end);
+        int[] head = new int[1 << HASH_BITS];
+        Arrays.fill(head, -1);
+        int[] previous = new int[end - windowStart];
+
+        for (int i = windowStart; i < start; i++) {
+            if (i + MIN_MATCH <= end) {
+                int hash = hash(data, i);
+                previous[i - windowStart] = head[hash];
+                head[hash] = i;
+            }
+        }
+
+        for (int i = start; i < end; i++) {
+            matches.offsets[i - start] = matches.size;
+            if (i + MIN_MATCH > end) {
+                continue;
+            }
+            int hash = hash(data, i);
+            int maxLength = Math.min(MAX_MATCH, end - i);
+            int bestLength = MIN_MATCH - 1;
+            int hits = 0;
+            for (int candidate = head[hash]; candidate >= windowStart && i - candidate <= WINDOW_SIZE
+                    && hits < MAX_CHAIN_HITS; candidate = previous[candidate - windowStart], hits++) {
+                if (data[candidate + bestLength] != data[i + bestLength]) {
+                    continue;
+                }
+                int length = 0;
+                while (length < maxLength && data[candidate + length] == data[i + length]) {
+                    length++;
+                }
+                if (length > bestLength) {
+                    matches.add(length, i - candidate);
+                    bestLength = length;
+                    if (length == maxLength) {
+                        break;
+                    }
+                }
+            }
+            previous[i - windowStart] = head[hash];
+            head[hash] = i;
+        }
+        matches.offsets[end - start] = matches.size;
+        return matches;
+    }
+
+    private static int hash(byte[] data, int i) {
+        return ((data[i] & 0xff) << 10 ^ (data[i + 1] & 0xff) << 5 ^ (data[i + 2] & 0xff)) & ((1 << HASH_BITS) - 1);
+    }
+
+    /**
+     * Sequence of literals (distance 0) and matches, together with the input position of every symbol.
+     */
+    private static final class Lz77 {
+
+        private int[] litLens;
+        private int[] distances;
+        private int[] positions;
+        private int size;
+
+        Lz77(int capacity) {
+            litLens = new int[Math.max(16, capacity)];
+            distances = new int[litLens.length];
+            positions = new int[litLens.length];
+        }
+
+        void add(int litLen, int distance, int position) {
+            if (size == litLens.length) {
+                litLens = Arrays.copyOf(litLens, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            litLens[size] = litLen;
+            distances[size] = distance;
+            positions[size] = position;
+            size++;
+        }
+
+        /**
+         * @return index of the symbol starting at the position
+         */
+        int indexOf(int position) {
+            int index = Arrays.binarySearch(positions, 0, size, position);
+            if (index < 0) {
+                throw new IllegalArgumentException("No symbol starts at " + position);
+            }
+            return index;
+        }
+
+        Lz77 slice(int from, int to) {
+            Lz77 slice = new Lz77(to - from);
+            for (int i = from; i < to; i++) {
+                slice.add(litLens[i], distances[i], positions[i]);
+            }
+            return slice;
+        }
+
+        /**
+         * Counts the literal / length and distance symbols of the range, including the end of block symbol.
+         */
+        void count(int from, int to, int[] litLenCounts, int[] distanceCounts) {
+            Arrays.fill(litLenCounts, 0);
+            Arrays.fill(distanceCounts, 0);
+            for (int i = from; i < to; i++) {
+                if (distances[i] == 0) {
+                    litLenCounts[litLens[i]]++;
+                } else {
+                    litLenCounts[257 + LENGTH_SYMBOL[litLens[i]]]++;
+                    distanceCounts[distanceSymbol(distances[i])]++;
+                }
+            }
+            litLenCounts[END_OF_BLOCK] = 1;
+        }
+
+        /**
+         * @return number of extra bits of the lengths and distances of the range
+         */
+        long extraBits(int from, int to) {
+            long bits = 0;
+            for (int i = from; i < to; i++) {
+                if (distances[i] != 0) {
+                    bits += LENGTH_EXTRA[LENGTH_SYMBOL[litLens[i]]] + DIST_EXTRA[distanceSymbol(distances[i])];
+                }
+            }
+            return bits;
+        }
+    }
+
+    /**
+     * Lazy matching parse, like zlib's: a match is deferred when the next position has a longer one. Used to estimate
+     * the statistics the optimal parsing starts with and to find the block boundaries.
+     */
+    private static Lz77 greedyParse(byte[] data, int start, int end, Matches matches) {
+        Lz77 lz77 = new Lz77((end - start) / 4);
+        int i = start;
+        while (i < end) {
+            int length = matches.longest(i);
+            if (length >= MIN_MATCH && (i + 1 >= end || matches.longest(i + 1) <= length)) {
+                lz77.add(length, matches.distances[matches.end(i) - 1], i);
+                i += length;
+            } else {
+                lz77.add(data[i] & 0xff, 0, i);
+                i++;
+            }
+        }
+        return lz77;
+    }
+
+    /**
+     * Iteratively finds the cheapest parse of the block, the costs of the symbols being estimated from the result of
+     * the previous iteration.
+     */
+    private Lz77 optimalParse(byte[] data, int blockStart, int blockEnd, Matches matches, int start, Lz77 initial) {
+        SymbolStats stats = SymbolStats.of(initial);
+        SymbolStats bestStats = stats;
+        SymbolStats lastStats = null;
+        Lz77 best = initial;
+        long bestSize = blockSize(initial, 0, initial.size);
+        long lastSize = -1;
+        int lastRandomStep = -1;
+        Random random = new Random(blockStart - start);
+
+        for (int i = 0; i < iterations; i++) {
+            Lz77 lz77 = shortestPath(data, blockStart, blockEnd, matches, stats);
+            long size = blockSize(lz77, 0, lz77.size);
+            if (size < bestSize) {
+                best = lz77;
+                bestSize = size;
+                bestStats = stats;
+            }
+            lastStats = stats;
+            stats = SymbolStats.of(lz77);
+            if (lastRandomStep != -1) {
+                // converges slower but better, only once stuck
+                stats = stats.weighted(lastStats);
+            }
+            if (i > 5 && size == lastSize) {
+                stats = bestStats.randomized(random);
+                lastRandomStep = i;
+            }
+            lastSize = size;
+        }
+        return best;
+    }
+
+    private static Lz77 shortestPath(byte[] data, int blockStart, int blockEnd, Matches matches, SymbolStats stats) {
+        int length = blockEnd - blockStart;
+        double[] costs = new double[length + 1];
+        int[] stepLengths = new int[length + 1];
+        int[] stepDistances = new int[length + 1];
+        Arrays.fill(costs, Double.MAX_VALUE);
+        costs[0] = 0;
+
+        double[] lengthCosts = new double[MAX_MATCH + 1];
+        for (int l = MIN_MATCH; l <= MAX_MATCH; l++) {
+            int symbol = LENGTH_SYMBOL[l];
+            lengthCosts[l] = stats.litLenCosts[257 + symbol] + LENGTH_EXTRA[symbol];
+        }
+
+        for (int j = 0; j < length; j++) {
+            int i = blockStart + j;
+            double cost = costs[j];
+            double literalCost = cost + stats.litLenCosts[data[i] & 0xff];
+            if (literalCost < costs[j + 1]) {
+                costs[j + 1] = literalCost;
+                stepLengths[j + 1] = 1;
+                stepDistances[j + 1] = 0;
+            }
+            int maxLength = length - j;
+            int previousLength = MIN_MATCH - 1;
+            for (int k = matches.first(i), kEnd = matches.end(i); k < kEnd && previousLength < maxLength; k++) {
+                int distance = matches.distances[k];
+                int distanceSymbol = distanceSymbol(distance);
+                double distanceCost = cost + stats.distanceCosts[distanceSymbol] + DIST_EXTRA[distanceSymbol];
+                int upTo = Math.min(matches.lengths[k], maxLength);
+                for (int l = previousLength + 1; l <= upTo; l++) {
+                    double matchCost = distanceCost + lengthCosts[l];
+                    if (matchCost < costs[j + l]) {
+                        costs[j + l] = matchCost;
+                        stepLengths[j + l] = l;
+                        stepDistances[j + l] = distance;
+                    }
+                }
+                previousLength = upTo;
+            }
+        }
+
+        int steps = 0;
+        for (int j = length; j > 0; j -= stepLengths[j]) {
+            steps++;
+        }
+        int[] path = new int[steps];
+        for (int j = length, s = steps - 1; j > 0; j -= stepLengths[j], s--) {
+            path[s] = j;
+        }
+        Lz77 lz77 = new Lz77(steps);
+        int position = blockStart;
+        for (int j : path) {
+            int stepLength = stepLengths[j];
+            if (stepDistances[j] == 0) {
+                lz77.add(data[position] & 0xff, 0, position);
+            } else {
+                lz77.add(stepLength, stepDistances[j], position);
+            }
+            position += stepLength;
+        }
+        return lz77;
+    }
+
+    /**
+     * Entropy based cost estimates of the symbols, in bits.
+     */
+    private static final class SymbolStats {
+
+        private final int[] litLenCounts;
+        private final int[] distanceCounts;
+        private final double[] litLenCosts = new double[288];
+        private final double[] distanceCosts = new double[32];
+
+        SymbolStats(int[] litLenCounts, int[] distanceCounts) {
+            this.litLenCounts = litLenCounts;
+            this.distanceCounts = distanceCounts;
+            computeCosts(litLenCounts, litLenCosts);
+            computeCosts(distanceCounts, distanceCosts);
+        }
+
+        static SymbolStats of(Lz77 lz77) {
+            int[] litLenCounts = new int[288];
+            int[] distanceCounts = new int[32];
+            lz77.count(0, lz77.size, litLenCounts, distanceCounts);
+            return new SymbolStats(litLenCounts, distanceCounts);
+        }
+
+        SymbolStats weighted(SymbolStats previous) {
+            int[] litLenCounts = new int[288];
+            int[] distanceCounts = new int[32];
+            for (int i = 0; i < litLenCounts.length; i++) {
+                litLenCounts[i] = this.litLenCounts[i] + previous.litLenCounts[i] / 2;
+            }
+            for (int i = 0; i < distanceCounts.length; i++) {
+                distanceCounts[i] = this.distanceCounts[i] + previous.distanceCounts[i] / 2;
+            }
+            litLenCounts[END_OF_BLOCK] = 1;
+            return new SymbolStats(litLenCounts, distanceCounts);
+        }
+
+        /**
+         * @return statistics with a third of the counts replaced by random other ones, to escape local optima
+         */
+        SymbolStats randomized(Random random) {
+            int[] litLenCounts = randomized(this.litLenCounts, random);
+            int[] distanceCounts = randomized(this.distanceCounts, random);
+            litLenCounts[END_OF_BLOCK] = 1;
+            return new SymbolStats(litLenCounts, distanceCounts);
+        }
+
+        private static int[] randomized(int[] counts, Random random) {
+            int[] result = counts.clone();
+            for (int i = 0; i < result.length; i++) {
+                if (random.nextInt(3) == 0) {
+                    result[i] = result[random.nextInt(result.length)];
+                }
+            }
+            return result;
+        }
+
+        private static void computeCosts(int[] counts, double[] costs) {
+            long total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            double log2Total = total == 0 ? 0 : log2(total);
+            for (int i = 0; i < counts.length; i++) {
+                // unused symbols cost as much as the rarest possible one
+                costs[i] = counts[i] == 0 ? log2Total : log2Total - log2(counts[i]);
+            }
+        }
+
+        private static double log2(double value) {
+            return Math.log(value) / Math.log(2);
+        }
+    }
+
+    /**
+     * Recursively splits the greedy parse where the sum of the sizes of the parts is smaller than the size of the
+     * whole, up to {@link #MAX_BLOCKS}.
+     *
+     * @return input positions the blocks start at, in order
+     */
+    private static int[] splitBlocks(Lz77 lz77, int start) {
+        int[] splits = new int[MAX_BLOCKS - 1];
+        int splitCount = 0;
+        int[] segmentStarts = new int[MAX_BLOCKS];
+        int[] segmentEnds = new int[MAX_BLOCKS];
+        boolean[] done = new boolean[MAX_BLOCKS];
+        segmentStarts[0] = 0;
+        segmentEnds[0] = lz77.size;
+        int segments = 1;
+
+        while (segments < MAX_BLOCKS) {
+            int largest = -1;
+            for (int i = 0; i < segments; i++) {
+                if (!done[i] && segmentEnds[i] - segmentStarts[i] >= 10
+                        && (largest == -1 || segmentEnds[i] - segmentStarts[i] > segmentEnds[largest] - segmentStarts[largest])) {
+                    largest = i;
+                }
+            }
+            if (largest == -1) {
+                break;
+            }
+            int from = segmentStarts[largest];
+            int to = segmentEnds[largest];
+            int split = findCheapestSplit(lz77, from, to);
+            long splitSize = blockSize(lz77, from, split) + blockSize(lz77, split, to);
+            if (split <= from + 1 || split >= to || splitSize >= blockSize(lz77, from, to)) {
+                done[largest] = true;
+                continue;
+            }
+            segmentStarts[segments] = split;
+            segmentEnds[segments] = to;
+            segmentEnds[largest] = split;
+            segments++;
+            splits[splitCount++] = lz77.positions[split];
+        }
+
+        int[] blockStarts = new int[splitCount + 1];
+        blockStarts[0] = start;
+        System.arraycopy(splits, 0, blockStarts, 1, splitCount);
+        Arrays.sort(blockStarts);
+        return blockStarts;
+    }
+
+    /**
+     * Finds the split minimizing the estimated size of the parts: every candidate for short ranges, otherwise by
+     * repeatedly sampling the range and narrowing it around the best sample.
+     */
+    private static int findCheapestSplit(Lz77 lz77, int from, int to) {
+        int low = from + 1;
+        int high = to;
+        if (high - low < 1024) {
+            int best = low;
+            long bestSize = Long.MAX_VALUE;
+            for (int i = low; i < high; i++) {
+                long size = blockSize(lz77, from, i) + blockSize(lz77, i, to);
+                if (size < bestSize) {
+                    best = i;
+                    bestSize = size;
+                }
+            }
+            return best;
+        }
+        int samples = 9;
+        int best = low;
+        long lastBestSize = Long.MAX_VALUE;
+        int[] points = new int[samples];
+        while (high - low > samples) {
+            int bestSample = 0;
+            long bestSize = Long.MAX_VALUE;
+            for (int i = 0; i < samples; i++) {
+                points[i] = low + (i + 1) * ((high - low) / (samples + 1));
+                long size = blockSize(lz77, from, points[i]) + blockSize(lz77, points[i], to);
+                if (size < bestSize) {
+                    bestSample = i;
+                    bestSize = size;
+                }
+            }
+            if (bestSize > lastBestSize) {
+                break;
+            }
+            low = bestSample == 0 ? low : points[bestSample - 1];
+            high = bestSample == samples - 1 ? high : points[bestSample + 1];
+            best = points[bestSample];
+            lastBestSize = bestSize;
+        }
+        return best;
+    }
+
+    /**
+     * @return size in bits of the symbols encoded as the smaller of a fixed and a dynamic Huffman block
+     */
+    private static long blockSize(Lz77 lz77, int from, int to) {
+        int[] litLenCounts = new int[288];
+        int[] distanceCounts = new int[32];
+        lz77.count(from, to, litLenCounts, distanceCounts);
+        long extraBits = lz77.extraBits(from, to);
+        int[] litLenLengths = codeLengths(litLenCounts, 286, 15);
+        int[] distanceLengths = codeLengths(distanceCounts, 30, 15);
+        long dynamicSize = 3 + encodeTree(litLenLengths, distanceLengths, null)
+                + dataBits(litLenCounts, distanceCounts, litLenLengths, distanceLengths) + extraBits;
+        long fixedSize = 3 + dataBits(litLenCounts, distanceCounts, FIXED_LITERAL_LENGTHS, FIXED_DISTANCE_LENGTHS) + extraBits;
+        return Math.min(dynamicSize, fixedSize);
+    }
+
+    private static long dataBits(int[] litLenCounts, int[] distanceCounts, int[] litLenLengths, int[] distanceLengths) {
+        long bits = 0;
+        for (int i = 0; i < 286; i++) {
+            bits += (long) litLenCounts[i] * litLenLengths[i];
+        }
+        for (int i = 0; i < 30; i++) {
+            bits += (long) distanceCounts[i] * distanceLengths[i];
+        }
+        return bits;
+    }
+
+    /**
+     * Writes the block as the smallest of a stored, fixed and dynamic Huffman block.
+     */
+    private static void writeBlock(BitWriter out, byte[] data, int blockStart, int blockEnd, Lz77 lz77, boolean last) {
+        int[] litLenCounts = new int[288];
+        int[] distanceCounts = new int[32];
+        lz77.count(0, lz77.size, litLenCounts, distanceCounts);
+        long extraBits = lz77.extraBits(0, lz77.size);
+        int[] litLenLengths = codeLengths(litLenCounts, 286, 15);
+        int[] distanceLengths = codeLengths(distanceCounts, 30, 15);
+        long dynamicSize = encodeTree(litLenLengths, distanceLengths, null)
+                + dataBits(litLenCounts, distanceCounts, litLenLengths, distanceLengths) + extraBits;
+        long fixedSize = dataBits(litLenCounts, distanceCounts, FIXED_LITERAL_LENGTHS, FIXED_DISTANCE_LENGTHS) + extraBits;
+        int length = blockEnd - blockStart;
+        long storedSize = 8L * length + 40L * ((length + MAX_STORED_LENGTH - 1) / MAX_STORED_LENGTH);
+
+        if (storedSize < fixedSize && storedSize < dynamicSize) {
+            for (int offset = blockStart; offset < blockEnd; offset += MAX_STORED_LENGTH) {
+                int chunk = Math.min(MAX_STORED_LENGTH, blockEnd - offset);
+                out.write(last && offset + chunk == blockEnd ? 1 : 0, 1);
+                out.write(0, 2);
+                out.alignToByte();
+                out.write(chunk, 16);
+                out.write(~chunk & 0xffff, 16);
+                out.writeBytes(data, offset, chunk);
+            }
+            return;
+        }
+
+        out.write(last ? 1 : 0, 1);
+        if (fixedSize <= dynamicSize) {
+            out.write(1, 2);
+            litLenLengths = FIXED_LITERAL_LENGTHS;
+            distanceLengths = FIXED_DISTANCE_LENGTHS;
+        } else {
+            out.write(2, 2);
+            encodeTree(litLenLengths, distanceLengths, out);
+        }
+        int[] litLenCodes = canonicalCodes(litLenLengths);
+        int[] distanceCodes = canonicalCodes(distanceLengths);
+        for (int i = 0; i < lz77.size; i++) {
+            int litLen = lz77.litLens[i];
+            int distance = lz77.distances[i];
+            if (distance == 0) {
+                out.writeCode(litLenCodes[litLen], litLenLengths[litLen]);
+            } else {
+                int lengthSymbol = LENGTH_SYMBOL[litLen];
+                out.writeCode(litLenCodes[257 + lengthSymbol], litLenLengths[257 + lengthSymbol]);
+                out.write(litLen - LENGTH_BASE[lengthSymbol], LENGTH_EXTRA[lengthSymbol]);
+                int distanceSymbol = distanceSymbol(distance);
+                out.writeCode(distanceCodes[distanceSymbol], distanceLengths[distanceSymbol]);
+                out.write(distance - DIST_BASE[distanceSymbol], DIST_EXTRA[distanceSymbol]);
+            }
+        }
+        out.writeCode(litLenCodes[END_OF_BLOCK], litLenLengths[END_OF_BLOCK]);
+    }
+
+    /**
+     * Encodes the code lengths of a dynamic block (RFC 1951 3.2.7), run length encoded.
+     *
+     * @param out writer or null to compute the size only
+     * @return size of the encoded tree in bits
+     */
+    private static long encodeTree(int[] litLenLengths, int[] distanceLengths, BitWriter out) {
+        int litLenCount = 286;
+        while (litLenCount > 257 && litLenLengths[litLenCount - 1] == 0) {
+            litLenCount--;
+        }
+        int distanceCount = 30;
+        while (distanceCount > 1 && distanceLengths[distanceCount - 1] == 0) {
+            distanceCount--;
+        }
+        int[] lengths = new int[litLenCount + distanceCount];
+        System.arraycopy(litLenLengths, 0, lengths, 0, litLenCount);
+        System.arraycopy(distanceLengths, 0, lengths, litLenCount, distanceCount);
+
+        int[] symbols = new int[lengths.length];
+        int[] extras = new int[lengths.length];
+        int count = 0;
+        for (int i = 0; i < lengths.length; ) {
+            int value = lengths[i];
+            int run = 1;
+            while (i + run < lengths.length && lengths[i + run] == value) {
+                run++;
+            }
+            i += run;
+            if (value == 0) {
+                while (run >= 11) {
+                    int repeat = Math.min(run, 138);
+                    symbols[count] = 18;
+                    extras[count++] = repeat - 11;
+                    run -= repeat;
+                }
+                if (run >= 3) {
+                    symbols[count] = 17;
+                    extras[count++] = run - 3;
+                    run = 0;
+                }
+            } else {
+                symbols[count++] = value;
+                run--;
+                while (run >= 3) {
+                    int repeat = Math.min(run, 6);
+                    symbols[count] = 16;
+                    extras[count++] = repeat - 3;
+                    run -= repeat;
+                }
+            }
+            while (run-- > 0) {
+                symbols[count++] = value;
+            }
+        }
+
+        int[] codeLengthCounts = new int[19];
+        for (int i = 0; i < count; i++) {
+            codeLengthCounts[symbols[i]]++;
+        }
+        int[] codeLengthLengths = codeLengths(codeLengthCounts, 19, 7);
+        int codeLengthCount = 19;
+        while (codeLengthCount > 4 && codeLengthLengths[CODE_LENGTH_ORDER[codeLengthCount - 1]] == 0) {
+            codeLengthCount--;
+        }
+
+        long bits = 14 + 3L * codeLengthCount;
+        for (int i = 0; i < count; i++) {
+            bits += codeLengthLengths[symbols[i]] + extraBitsOfCodeLengthSymbol(symbols[i]);
+        }
+        if (out != null) {
+            out.write(litLenCount - 257, 5);
+            out.write(distanceCount - 1, 5);
+            out.write(codeLengthCount - 4, 4);
+            for (int i = 0; i < codeLengthCount; i++) {
+                out.write(codeLengthLengths[CODE_LENGTH_ORDER[i]], 3);
+            }
+            int[] codes = canonicalCodes(codeLengthLengths);
+            for (int i = 0; i < count; i++) {
+                out.writeCode(codes[symbols[i]], codeLengthLengths[symbols[i]]);
+                out.write(extras[i], extraBitsOfCodeLengthSymbol(symbols[i]));
+            }
+        }
+        return bits;
+    }
+
+    private static int extraBitsOfCodeLengthSymbol(int symbol) {
+        return symbol == 16 ? 2 : symbol == 17 ? 3 : symbol == 18 ? 7 : 0;
+    }
+
+    /**
+     * Computes Huffman code lengths limited to the given number of bits. Overlong codes are shortened by moving leaves
+     * up the tree, as in JPEG (ITU T.81 K.3), which is close to optimal for the rare cases the limit is hit. At least
+     * two symbols always get a code, decoders reject incomplete codes.
+     *
+     * @param counts  symbol frequencies
+     * @param symbols number of symbols to compute lengths for
+     * @param maxBits maximal code length
+     * @return code lengths, 0 for unused symbols
+     */
+    static int[] codeLengths(int[] counts, int symbols, int maxBits) {
+        int[] lengths = new int[counts.length];
+        Integer[] leaves = new Integer[symbols];
+        int leafCount = 0;
+        for (int i = 0; i < symbols; i++) {
+            if (counts[i] > 0) {
+                leaves[leafCount++] = i;
+            }
+        }
+        if (leafCount < 2) {
+            int used = leafCount == 1 ? leaves[0] : 0;
+            lengths[used] = 1;
+            lengths[used == 0 ? 1 : 0] = 1;
+            return lengths;
+        }
+        Arrays.sort(leaves, 0, leafCount, (a, b) -> counts[a] != counts[b] ? Integer.compare(counts[a], counts[b]) : Integer.compare(a, b));
+
+        // two queue Huffman construction: leaves sorted by weight, internal nodes are created in weight order
+        long[] weights = new long[2 * leafCount - 1];
+        int[] parents = new int[2 * leafCount - 1];
+        for (int i = 0; i < leafCount; i++) {
+            weights[i] = counts[leaves[i]];
+        }
+        int nextLeaf = 0;
+        int nextNode = leafCount;
+        for (int node = leafCount; node < weights.length; node++) {
+            int[] children = new int[2];
+            for (int c = 0; c < 2; c++) {
+                if (nextLeaf < leafCount && (nextNode >= node || weights[nextLeaf] <= weights[nextNode])) {
+                    children[c] = nextLeaf++;
+                } else {
+                    children[c] = nextNode++;
+                }
+            }
+            weights[node] = weights[children[0]] + weights[children[1]];
+            parents[children[0]] = node;
+            parents[children[1]] = node;
+        }
+        int[] depths = new int[weights.length];
+        int[] lengthCounts = new int[Math.max(maxBits, leafCount) + 1];
+        for (int node = weights.length - 2; node >= 0; node--) {
+            depths[node] = depths[parents[node]] + 1;
+        }
+        int maxLength = 0;
+        for (int i = 0; i < leafCount; i++) {
+            lengthCounts[depths[i]]++;
+            maxLength = Math.max(maxLength, depths[i]);
+        }
+
+        for (int length = maxLength; length > maxBits; length--) {
+            while (lengthCounts[length] > 0) {
+                int shorter = length - 2;
+                while (lengthCounts[shorter] == 0) {
+                    shorter--;
+                }
+                lengthCounts[length] -= 2;
+                lengthCounts[length - 1]++;
+                lengthCounts[shorter + 1] += 2;
+                lengthCounts[shorter]--;
+            }
+        }
+
+        // the least frequent symbols get the longest codes
+        int leaf = 0;
+        for (int length = Math.min(maxLength, maxBits); length > 0; length--) {
+            for (int i = 0; i < lengthCounts[length]; i++) {
+                lengths[leaves[leaf++]] = length;
+            }
+        }
+        return lengths;
+    }
+
+    /**
+     * @return canonical Huffman codes of the lengths (RFC 1951 3.2.2)
+     */
+    private static int[] canonicalCodes(int[] lengths) {
+        int[] lengthCounts = new int[16];
+        for (int length : lengths) {
+            lengthCounts[length]++;
+        }
+        lengthCounts[0] = 0;
+        int[] nextCodes = new int[16];
+        int code = 0;
+        for (int bits = 1; bits < 16; bits++) {
+            code = (code + lengthCounts[bits - 1]) << 1;
+            nextCodes[bits] = code;
+        }
+        int[] codes = new int[lengths.length];
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] != 0) {
+                codes[i] = nextCodes[lengths[i]]++;
+            }
+        }
+        return codes;
+    }
+
+    private static int distanceSymbol(int distance) {
+        if (distance <= 4) {
+            return distance - 1;
+        }
+        int log2 = 31 - Integer.numberOfLeadingZeros(distance - 1);
+        return log2 * 2 + ((distance - 1) >> (log2 - 1) & 1);
+    }
+
+    /**
+     * Writes bits least significant first, Huffman codes most significant first, as deflate requires.
+     */
+    private static final class BitWriter {
+
+        private final ByteArrayOutputStream out;
+        private long buffer;
+        private int bitCount;
+
+        BitWriter(int capacity) {
+            out = new ByteArrayOutputStream(capacity);
+        }
+
+        void write(int value, int bits) {
+            buffer |= (long) value << bitCount;
+            bitCount += bits;
+            while (bitCount >= 8) {
+                out.write((int) buffer);
+                buffer >>>= 8;
+                bitCount -= 8;
+            }
+        }
+
+        void writeCode(int code, int length) {
+            write(Integer.reverse(code) >>> (32 - length), length);
+        }
+
+        void writeBytes(byte[] data, int offset, int length) {
+            out.write(data, offset, length);
+        }
+
+        void alignToByte() {
+            if (bitCount > 0) {
+                write(0, 8 - bitCount);
+            }
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+}
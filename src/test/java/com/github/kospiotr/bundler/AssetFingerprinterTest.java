@@ -0,0 +1,159 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.kospiotr.bundler.util.HashGenerator;
+
+public class AssetFingerprinterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path input;
+    private Path output;
+    private Path manifest;
+    private Path stateFile;
+
+    @Before
+    public void before() throws Exception {
+        input = temporaryFolder.newFolder("input").toPath();
+        output = temporaryFolder.newFolder("output").toPath();
+        manifest = output.resolve("asset-manifest.json");
+        stateFile = temporaryFolder.getRoot().toPath().resolve("bundler.state");
+    }
+
+    @Test
+    public void shouldInsertHashBeforeExtension() {
+        assertThat(AssetFingerprinter.insertHash("logo.png", "abc")).isEqualTo("logo.abc.png");
+        assertThat(AssetFingerprinter.insertHash("font.min.woff2", "abc")).isEqualTo("font.min.abc.woff2");
+        assertThat(AssetFingerprinter.insertHash("LICENSE", "abc")).isEqualTo("LICENSE.abc");
+        assertThat(AssetFingerprinter.insertHash(".htaccess", "abc")).isEqualTo(".htaccess.abc");
+    }
+
+    @Test
+    public void shouldCopyAssetsUnderFingerprintedNamesAndWriteManifest() throws Exception {
+        write("img/a.png", "a");
+        write("img/b \"quoted\".svg", "b");
+        AssetFingerprinter fingerprinter = createFingerprinter(null);
+
+        Path a = fingerprinter.fingerprint(input.resolve("img/a.png"), output.resolve("img/a.png"));
+        Path b = fingerprinter.fingerprint(input.resolve("img/b \"quoted\".svg"), output.resolve("img/b \"quoted\".svg"));
+        assertThat(fingerprinter.fingerprint(input.resolve("img/missing.png"), output.resolve("img/missing.png"))).isNull();
+        fingerprinter.finish();
+
+        assertThat(a).isEqualTo(output.resolve("img/a." + HashGenerator.computeHash("a", "MD5") + ".png"));
+        assertThat(new String(Files.readAllBytes(a), StandardCharsets.UTF_8)).isEqualTo("a");
+        assertThat(Files.exists(b)).isTrue();
+        assertThat(fingerprinter.getCopiedCount()).isEqualTo(2);
+        assertThat(new String(Files.readAllBytes(manifest), StandardCharsets.UTF_8)).isEqualTo("{\n" +
+                "  \"img/a.png\": \"img/" + a.getFileName() + "\",\n" +
+                "  \"img/b \\\"quoted\\\".svg\": \"img/" + b.getFileName().toString().replace("\"", "\\\"") + "\"\n" +
+                "}\n");
+    }
+
+    @Test
+    public void shouldSkipAssetsUnchangedSinceThePreviousBuild() throws Exception {
+        write("img/a.png", "a");
+        write("img/b.png", "b");
+        BuildState buildState = BuildState.load(stateFile, "configuration");
+        AssetFingerprinter first = createFingerprinter(buildState);
+        first.fingerprint(input.resolve("img/a.png"), output.resolve("img/a.png"));
+        first.fingerprint(input.resolve("img/b.png"), output.resolve("img/b.png"));
+        first.finish();
+        buildState.recordBundle("bundle", Arrays.asList(input.resolve("img/a.png"), input.resolve("img/b.png")),
+                output.resolve("app.css"), "<link/>");
+        buildState.save();
+
+        write("img/b.png", "changed b");
+        AssetFingerprinter second = createFingerprinter(BuildState.load(stateFile, "configuration"));
+        Path a = second.fingerprint(input.resolve("img/a.png"), output.resolve("img/a.png"));
+        Path b = second.fingerprint(input.resolve("img/b.png"), output.resolve("img/b.png"));
+        second.finish();
+
+        assertThat(second.getSkippedCount()).isEqualTo(1);
+        assertThat(second.getCopiedCount()).isEqualTo(1);
+        assertThat(a.getFileName().toString()).contains(HashGenerator.computeHash("a", "MD5"));
+        assertThat(b.getFileName().toString()).contains(HashGenerator.computeHash("changed b", "MD5"));
+        assertThat(new String(Files.readAllBytes(manifest), StandardCharsets.UTF_8)).contains(b.getFileName().toString());
+    }
+
+    @Test
+    public void shouldDropManifestEntriesOfAssetsNoLongerReferenced() throws Exception {
+        write("img/a.png", "a");
+        write("img/b.png", "b");
+        write("img/c.png", "c");
+        BuildState buildState = BuildState.load(stateFile, "configuration");
+        AssetFingerprinter first = createFingerprinter(buildState);
+        for (String asset : Arrays.asList("img/a.png", "img/b.png", "img/c.png")) {
+            first.fingerprint(input.resolve(asset), output.resolve(asset));
+        }
+        buildState.recordBundle("first", Arrays.asList(input.resolve("img/a.png"), input.resolve("img/b.png")),
+                output.resolve("first.css"), "<link/>");
+        buildState.recordBundle("second", Arrays.asList(input.resolve("img/c.png")), output.resolve("second.css"), "<link/>");
+        first.finish();
+        buildState.save();
+        Files.createFile(output.resolve("first.css"));
+        Files.createFile(output.resolve("second.css"));
+
+        // the first bundle no longer references b, the second one is up to date
+        BuildState nextBuildState = BuildState.load(stateFile, "configuration");
+        AssetFingerprinter second = createFingerprinter(nextBuildState);
+        assertThat(nextBuildState.getUpToDateBundledTag("second")).isEqualTo("<link/>");
+        Path a = second.fingerprint(input.resolve("img/a.png"), output.resolve("img/a.png"));
+        nextBuildState.recordBundle("first", Arrays.asList(input.resolve("img/a.png")), output.resolve("first.css"), "<link/>");
+        second.finish();
+
+        assertThat(new String(Files.readAllBytes(manifest), StandardCharsets.UTF_8)).isEqualTo("{\n" +
+                "  \"img/a.png\": \"img/" + a.getFileName() + "\",\n" +
+                "  \"img/c.png\": \"img/c." + HashGenerator.computeHash("c", "MD5") + ".png\"\n" +
+                "}\n");
+    }
+
+    @Test
+    public void shouldFingerprintAssetReferencedConcurrentlyOnce() throws Exception {
+        write("img/a.png", "a");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            AssetFingerprinter fingerprinter = new AssetFingerprinter(new ResourceAccess(), null, executor, "MD5",
+                    input, output, manifest);
+            List<Future<Path>> paths = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                paths.add(executor.submit(() -> fingerprinter.fingerprint(input.resolve("img/a.png"), output.resolve("img/a.png"))));
+            }
+            for (Future<Path> path : paths) {
+                assertThat(path.get()).isEqualTo(output.resolve("img/a." + HashGenerator.computeHash("a", "MD5") + ".png"));
+            }
+            fingerprinter.finish();
+
+            assertThat(fingerprinter.getCopiedCount() + fingerprinter.getSkippedCount()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private AssetFingerprinter createFingerprinter(BuildState buildState) {
+        return new AssetFingerprinter(new ResourceAccess(), buildState, Runnable::run, "MD5", input, output, manifest);
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = input.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class BundleRegistryTest {
+
+    private final BundleRegistry bundleRegistry = new BundleRegistry();
+
+    @Test
+    public void shouldBuildBundleOnce() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+
+        String tag1 = bundleRegistry.getOrBuild(key("app.js", "lib1.js", "lib2.js"), () -> "tag" + builds.incrementAndGet());
+        String tag2 = bundleRegistry.getOrBuild(key("app.js", "lib1.js", "lib2.js"), () -> "tag" + builds.incrementAndGet());
+
+        assertThat(tag1).isEqualTo("tag1");
+        assertThat(tag2).isEqualTo("tag1");
+        assertThat(builds.get()).isEqualTo(1);
+        assertThat(bundleRegistry.getBuiltCount()).isEqualTo(1);
+        assertThat(bundleRegistry.getReusedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldBuildBundlesWithDifferentSourceOrderSeparately() throws Exception {
+        bundleRegistry.getOrBuild(key("app.js", "lib1.js", "lib2.js"), () -> "tag1");
+        String tag = bundleRegistry.getOrBuild(key("app.js", "lib2.js", "lib1.js"), () -> "tag2");
+
+        assertThat(tag).isEqualTo("tag2");
+        assertThat(bundleRegistry.getBuiltCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldWaitForBundleInProgress() throws Exception {
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger builds = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> bundleRegistry.getOrBuild(key("app.js", "lib1.js"), () -> {
+                builds.incrementAndGet();
+                building.countDown();
+                await(release);
+                return "tag";
+            })));
+            await(building);
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> bundleRegistry.getOrBuild(key("app.js", "lib1.js"), () -> "tag" + builds.incrementAndGet())));
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("tag");
+            }
+            assertThat(builds.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldPropagateFailureToEveryPage() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            try {
+                bundleRegistry.getOrBuild(key("app.js", "missing.js"), () -> {
+                    throw new IllegalStateException("missing.js not found");
+                });
+                fail("Should have thrown exception");
+            } catch (IllegalStateException e) {
+                assertThat(e).hasMessage("missing.js not found");
+            }
+        }
+    }
+
+    private BundleKey key(String fileName, String... srcs) {
+        List<Path> srcPaths = new ArrayList<>();
+        for (String src : srcs) {
+            srcPaths.add(Paths.get("/input").resolve(src));
+        }
+        return new BundleKey("js", fileName, Paths.get("/output").resolve(fileName), Arrays.asList(srcs), srcPaths, "");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
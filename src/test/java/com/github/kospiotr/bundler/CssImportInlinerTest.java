@@ -0,0 +1,140 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CssImportInlinerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+    private final AtomicInteger reads = new AtomicInteger();
+    private final List<String> warnings = new ArrayList<>();
+    private CssImportInliner inliner;
+
+    @Before
+    public void before() throws Exception {
+        directory = temporaryFolder.newFolder("css").toPath();
+        inliner = new CssImportInliner(path -> {
+            reads.incrementAndGet();
+            try {
+                return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, warnings::add);
+    }
+
+    @Test
+    public void shouldInlineImportsRecursively() throws Exception {
+        write("a.css", "@import 'b.css';\na {}");
+        write("b.css", "@charset \"UTF-8\";\n@import url(\"c.css\");\nb {}");
+        write("c.css", "c {}");
+
+        assertThat(inline("a.css")).isEqualTo("\nc {}\nb {}\na {}");
+        assertThat(inliner.getImports(directory.resolve("a.css")))
+                .containsOnly(directory.resolve("b.css"), directory.resolve("c.css"));
+    }
+
+    @Test
+    public void shouldWrapImportsWithMediaQueries() throws Exception {
+        write("a.css", "@import url(print.css) print and (orientation: landscape);\na {}");
+        write("print.css", "p {}");
+
+        assertThat(inline("a.css")).isEqualTo("@media print and (orientation: landscape) {\np {}\n}\na {}");
+    }
+
+    @Test
+    public void shouldInlineStyleSheetAgainUnlessInlinedWithoutMediaQueries() throws Exception {
+        write("a.css", "@import 'p.css' print;\n@import 'p.css' screen;\n@import 'p.css';\n@import 'p.css' print;\na {}");
+        write("p.css", "p {}");
+
+        assertThat(inline("a.css")).isEqualTo("@media print {\np {}\n}\n@media screen {\np {}\n}\np {}\n\na {}");
+    }
+
+    @Test
+    public void shouldRebaseUrlsOfImportedStyleSheets() throws Exception {
+        write("a.css", "@import 'theme/b.css';\na { background: url(img/a.png); }");
+        write("theme/b.css", "b { background: url('../img/b.png?v=1'); }\nc { background: url(img/c.png) }\n" +
+                "d { background: url(data:image/png;base64,AA==) }");
+
+        assertThat(inline("a.css")).isEqualTo("b { background: url('img/b.png?v=1'); }\nc { background: url(theme/img/c.png) }\n" +
+                "d { background: url(data:image/png;base64,AA==) }\na { background: url(img/a.png); }");
+    }
+
+    @Test
+    public void shouldDropCyclicAndDuplicateImports() throws Exception {
+        write("a.css", "@import 'b.css';\n@import 'c.css';\na {}");
+        write("b.css", "@import 'a.css';\n@import 'c.css';\nb {}");
+        write("c.css", "c {}");
+
+        assertThat(inline("a.css")).isEqualTo("\nc {}\nb {}\n\na {}");
+        assertThat(warnings).hasSize(1);
+        assertThat(warnings.get(0)).startsWith("Dropping cyclic import");
+    }
+
+    @Test
+    public void shouldKeepRemoteUnreadableAndLateImports() throws Exception {
+        String content = "@import url(https://fonts.example.com/css);\n@import 'missing.css';\n@import 'a.css' layer(base);\n" +
+                "a {}\n@import 'late.css';";
+        write("a.css", content);
+
+        assertThat(inline("a.css")).isEqualTo(content);
+        assertThat(warnings).hasSize(1);
+        assertThat(warnings.get(0)).startsWith("Keeping import");
+    }
+
+    @Test
+    public void shouldMoveKeptImportsOfImportedStyleSheetsToTheBeginning() throws Exception {
+        write("a.css", "@charset \"UTF-8\";\n@import 'theme/b.css';\n@import 'c.css' print;\na {}");
+        write("theme/b.css", "@import url(fonts.css) layer(fonts);\nb {}");
+        write("c.css", "@import url(https://fonts.example.com/c);\nc {}");
+
+        assertThat(inline("a.css")).isEqualTo("@charset \"UTF-8\";@import url(theme/fonts.css) layer(fonts);\n" +
+                "@import 'c.css' print;\n\n\nb {}\n\na {}");
+    }
+
+    @Test
+    public void shouldParseImportedStyleSheetsOnce() throws Exception {
+        write("a.css", "@import 'common.css';\na {}");
+        write("b.css", "@import 'common.css';\nb {}");
+        write("common.css", "common {}");
+
+        inline("a.css");
+        inline("b.css");
+
+        assertThat(reads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReturnStyleSheetsWithoutImportsAsTheyAre() throws Exception {
+        String content = "@charset \"UTF-8\";\na { background: url(a.png); }";
+
+        assertThat(inliner.inline(directory.resolve("a.css"), content)).isSameAs(content);
+    }
+
+    private String inline(String path) throws IOException {
+        Path file = directory.resolve(path);
+        return inliner.inline(file, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = directory.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class CssRuleMergerTest {
+
+    @Test
+    public void shouldDropDuplicateDeclarationsKeepingTheLastOne() {
+        assertThat(CssRuleMerger.merge("a{color:red;margin:0;color:red}b{background:red;background:url(x.png)}"))
+                .isEqualTo("a{margin:0;color:red}b{background:red;background:url(x.png)}");
+    }
+
+    @Test
+    public void shouldMergeAdjacentRulesWithSameSelectorOrDeclarations() {
+        assertThat(CssRuleMerger.merge("a{color:red}b{color:red}c{margin:0}c{padding:0;margin:0}"))
+                .isEqualTo("a,b{color:red}c{padding:0;margin:0}");
+    }
+
+    @Test
+    public void shouldDropRulesOverriddenByIdenticalLaterRule() {
+        assertThat(CssRuleMerger.merge("e{color:red}f{color:blue}e{color:red}"))
+                .isEqualTo("f{color:blue}e{color:red}");
+        // the later rule is kept, dropping it could let f win
+        assertThat(CssRuleMerger.merge("e{color:red}f{color:blue}")).isEqualTo("e{color:red}f{color:blue}");
+    }
+
+    @Test
+    public void shouldMergeWithinBlocksButNotAcrossThem() {
+        String css = "a{color:red}@media print{a{color:red}b{color:red}}@font-face{font-family:x;font-family:x}b{color:red}";
+
+        assertThat(CssRuleMerger.merge(css))
+                .isEqualTo("a{color:red}@media print{a,b{color:red}}@font-face{font-family:x;font-family:x}b{color:red}");
+    }
+
+    @Test
+    public void shouldNotMergeSelectorsBrowsersMayNotSupport() {
+        String css = "a::-moz-selection{color:red}a::selection{color:red}b:is(.x){color:red}";
+
+        assertThat(CssRuleMerger.merge(css)).isSameAs(css);
+    }
+
+    @Test
+    public void shouldNotMergeUnknownPseudoClassesAndElements() {
+        String css = "a:focus-visible{color:red}b:user-invalid{color:red}c::backdrop{color:red}d::part(label){color:red}" +
+                "e:not(.x .y){color:red}f:nth-child(2 of .x){color:red}g[lang=en i]{color:red}h{color:red}";
+
+        assertThat(CssRuleMerger.merge(css)).isSameAs(css);
+    }
+
+    @Test
+    public void shouldMergeSelectorsKnownToBeSupported() {
+        String css = "ul>li:nth-child(2n+1):hover{color:red}a:not(.x)::before{color:red}input[type=\"text\"]{color:red}" +
+                ".sm\\:flex:lang(en-US){color:red}p:first-letter, #id ~ *{color:red}";
+
+        assertThat(CssRuleMerger.merge(css)).isEqualTo("ul>li:nth-child(2n+1):hover,a:not(.x)::before,input[type=\"text\"]," +
+                ".sm\\:flex:lang(en-US),p:first-letter, #id ~ *{color:red}");
+    }
+
+    @Test
+    public void shouldKeepStringsCommentsAndUnchangedFormatting() {
+        String css = "/* a{color:red} */\na { content: \"}{;\" }\n\nb{background:url(data:image/png;base64,AA==)}\n" +
+                "c{background:url(data:image/png;base64,AA==)}\n";
+
+        assertThat(CssRuleMerger.merge(css)).isEqualTo("/* a{color:red} */\na { content: \"}{;\" }\n\n" +
+                "b,c{background:url(data:image/png;base64,AA==)}\n");
+    }
+
+    @Test
+    public void shouldLeaveInvalidOrNestedStyleSheetsAsTheyAre() {
+        String unbalanced = "a{color:red}a{color:red";
+        String nested = "a{color:red;&:hover{color:blue}}a{color:red;&:hover{color:blue}}";
+
+        assertThat(CssRuleMerger.merge(unbalanced)).isSameAs(unbalanced);
+        assertThat(CssRuleMerger.merge(nested)).isSameAs(nested);
+    }
+}
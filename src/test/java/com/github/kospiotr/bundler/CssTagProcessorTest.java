@@ -60,8 +60,8 @@ public class CssTagProcessorTest {
         } catch (Exception e) {
             assertThat(e).hasMessage("File Name attribute is required");
             verify(resourceAccess, never()).read(any(Path.class));
-            verify(resourceAccess, never()).write(any(Path.class), any(String.class));
-            verify(resourceAccess, never()).write(any(Path.class), any(String.class));
+            verify(resourceAccess, never()).write(any(Path.class), any(ResourceContent.class));
+            verify(resourceAccess, never()).write(any(Path.class), any(ResourceContent.class));
             verify(resourceOptimizer, never()).optimizeCss(any(String.class));
         }
     }
@@ -73,45 +73,45 @@ public class CssTagProcessorTest {
 
         assertThat(result).isEqualTo("<link rel=\"stylesheet\" href=\"app.css\" />");
         verify(resourceAccess, never()).read(any(Path.class));
-        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.css")), any(String.class));
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.css")), any(ResourceContent.class));
         verify(resourceOptimizer, never()).optimizeCss(any(String.class));
     }
 
     @Test
     public void shouldProcessSingleTag() throws Exception {
-        when(resourceAccess.read(any(Path.class))).thenReturn("");
+        when(resourceAccess.read(any(Path.class))).thenReturn(ResourceContent.of(""));
         Tag jsTag = createCssTag("<link rel=\"stylesheet\" href=\"my/lib/path/lib.css\" />", "app.css");
         String result = cssTagProcessor.process(jsTag);
 
         assertThat(result).isEqualTo("<link rel=\"stylesheet\" href=\"app.css\" />");
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib.css")));
-        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.css")), any(String.class));
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.css")), any(ResourceContent.class));
         verify(resourceOptimizer, times(1)).optimizeCss(any(String.class));
     }
 
     @Test
     public void shouldProcessMultipleInlineTags() throws Exception {
-        when(resourceAccess.read(any(Path.class))).thenReturn("");
+        when(resourceAccess.read(any(Path.class))).thenReturn(ResourceContent.of(""));
         Tag jsTag = createCssTag("<link href=\"my/lib/path/lib1.css\" /><link href=\"my/lib/path/lib2.css\" />", "app.css");
         String result = cssTagProcessor.process(jsTag);
 
         assertThat(result).isEqualTo("<link rel=\"stylesheet\" href=\"app.css\" />");
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib1.css")));
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib2.css")));
-        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.css")), any(String.class));
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.css")), any(ResourceContent.class));
         verify(resourceOptimizer, times(2)).optimizeCss(any(String.class));
     }
 
     @Test
     public void shouldProcessMultipleMultiLineTags() throws Exception {
-        when(resourceAccess.read(any(Path.class))).thenReturn("");
+        when(resourceAccess.read(any(Path.class))).thenReturn(ResourceContent.of(""));
         Tag jsTag = createCssTag("<link href=\"my/lib/path/lib1.css\" />\n<!-- sample comment -->\n<link href=\"my/lib/path/lib2.css\" />", "app.css");
         String result = cssTagProcessor.process(jsTag);
 
         assertThat(result).isEqualTo("<link rel=\"stylesheet\" href=\"app.css\" />");
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib1.css")));
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib2.css")));
-        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.css")), any(String.class));
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.css")), any(ResourceContent.class));
         verify(resourceOptimizer, times(2)).optimizeCss(any(String.class));
     }
 
@@ -157,14 +157,14 @@ public class CssTagProcessorTest {
 
     @Test
     public void shouldProcessWithMinifiedFiles() throws Exception {
-        when(resourceAccess.read(any(Path.class))).thenReturn("");
+        when(resourceAccess.read(any(Path.class))).thenReturn(ResourceContent.of(""));
         Tag jsTag = createCssTag("<link href=\"my/lib/path/lib1.min.css\" /><link href=\"my/lib/path/lib2.css\" />", "app.css");
         String result = cssTagProcessor.process(jsTag);
 
         assertThat(result).isEqualTo("<link rel=\"stylesheet\" href=\"app.css\" />");
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib1.min.css")));
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib2.css")));
-        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.css")), any(String.class));
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.css")), any(ResourceContent.class));
         verify(resourceOptimizer, times(1)).optimizeCss(any(String.class));
     }
     
@@ -172,14 +172,14 @@ public class CssTagProcessorTest {
     public void shouldNormalizePathsWhenProcessingFilesFromDifferentPathLevels1() throws Exception {
         
     	when(resourceAccess.read(argThat(new PathHamcrestMatcher("glob:**/lib1.css"))))
-                .thenReturn("h1 {background-image: url(\"../../images/paper1.gif\");}\n" +
-                            "h2 {background-image: url(../../images/paper2.gif);}");
+                .thenReturn(ResourceContent.of("h1 {background-image: url(\"../../images/paper1.gif\");}\n" +
+                            "h2 {background-image: url(../../images/paper2.gif);}"));
     	
     	when(resourceAccess.read(argThat(new PathHamcrestMatcher("glob:**/lib2.css"))))
-        .thenReturn("h3 {background-image: url('../images/paper3.gif');}");
+        .thenReturn(ResourceContent.of("h3 {background-image: url('../images/paper3.gif');}"));
     	
     	when(resourceAccess.read(argThat(new PathHamcrestMatcher("glob:**/lib3.css"))))
-        .thenReturn("h4 {background-image: url(\"../images/paper4.gif?#iefix\");}");
+        .thenReturn(ResourceContent.of("h4 {background-image: url(\"../images/paper4.gif?#iefix\");}"));
       
         when(resourceOptimizer.optimizeCss(anyString())).then(returnsFirstArg());
 
@@ -197,15 +197,40 @@ public class CssTagProcessorTest {
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib3.css")));
         
         verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.css")), 
-        							eq("h1 {background-image: url(\"../images/paper1.gif\");}\n" +
+        							eq(ResourceContent.of("h1 {background-image: url(\"../images/paper1.gif\");}\n" +
         							   "h2 {background-image: url(../images/paper2.gif);}\n" +
         							   "h3 {background-image: url('../images/paper3.gif');}\n" +                        
-        							   "h4 {background-image: url(\"../images/paper4.gif?#iefix\");}\n"));
+        							   "h4 {background-image: url(\"../images/paper4.gif?#iefix\");}\n")));
         
         verify(resourceOptimizer, times(3)).optimizeCss(any(String.class));
     }
 
 
+    @Test
+    public void shouldRelativizeUrlsToSourceDirectoryAndKeepOthers() throws Exception {
+        when(resourceAccess.read(argThat(new PathHamcrestMatcher("glob:**/lib1.css"))))
+                .thenReturn(ResourceContent.of("h1 {background: url(images/paper1.gif);}\n" +
+                        "h2 {background: url(data:image/png;base64,AAAA);}\n" +
+                        "h3 {background: url(https://cdn.example.com/paper3.gif);}\n" +
+                        "h4 {filter: url(#blur);}"));
+        when(resourceAccess.read(argThat(new PathHamcrestMatcher("glob:**/lib2.css"))))
+                .thenReturn(ResourceContent.of("h5 {background: url(images/paper1.gif);}"));
+        when(resourceOptimizer.optimizeCss(anyString())).then(returnsFirstArg());
+
+        Tag cssTag = createCssTag("<link href=\"#{request.contextPath}/resources/css/lib/lib1.css\" />"
+                        + "<link href=\"#{request.contextPath}/resources/css/lib/lib2.css\" />",
+                "#{request.contextPath}/resources/css/app.css");
+
+        cssTagProcessor.process(cssTag);
+
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.css")),
+                eq(ResourceContent.of("h1 {background: url(lib/images/paper1.gif);}\n" +
+                        "h2 {background: url(data:image/png;base64,AAAA);}\n" +
+                        "h3 {background: url(https://cdn.example.com/paper3.gif);}\n" +
+                        "h4 {filter: url(#blur);}\n" +
+                        "h5 {background: url(lib/images/paper1.gif);}\n")));
+    }
+
     private Tag createCssTag(String content, String... attributes) {
         return new Tag(content, "css", attributes);
     }
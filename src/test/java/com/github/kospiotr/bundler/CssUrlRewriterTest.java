@@ -0,0 +1,54 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class CssUrlRewriterTest {
+
+    private final CssUrlRewriter rewriter = new CssUrlRewriter(url -> "lib/" + url);
+
+    @Test
+    public void shouldRewriteQuotedAndUnquotedUrls() throws Exception {
+        assertThat(rewriter.rewrite("h1 {background: url(\"a.png\");}\nh2 {background: url('b.png')}\nh3 {background: url(c.png)}"))
+                .isEqualTo("h1 {background: url(\"lib/a.png\");}\nh2 {background: url('lib/b.png')}\nh3 {background: url(lib/c.png)}");
+    }
+
+    @Test
+    public void shouldDropWhitespaceAroundUrls() throws Exception {
+        assertThat(rewriter.rewrite("h1 {background: url( \"a.png\" );} h2 {background: url(\n b.png\n)}"))
+                .isEqualTo("h1 {background: url(\"lib/a.png\");} h2 {background: url(lib/b.png)}");
+    }
+
+    @Test
+    public void shouldSkipCommentsAndStrings() throws Exception {
+        String content = "/* url(a.png) */ h1:after {content: \"url(b.png)\"} h2:after {content: 'it\\'s url(c.png)'}";
+
+        assertThat(rewriter.rewrite(content)).isSameAs(content);
+    }
+
+    @Test
+    public void shouldKeepUrlsContainingQuotesAndParentheses() throws Exception {
+        assertThat(rewriter.rewrite("@font-face {src: url('a(1).woff') format('woff'), url(\"b\\\".svg\")}"))
+                .isEqualTo("@font-face {src: url('lib/a(1).woff') format('woff'), url(\"lib/b\\\".svg\")}");
+    }
+
+    @Test
+    public void shouldIgnoreOtherFunctionsAndInvalidTokens() throws Exception {
+        String content = "h1 {background: myurl(a.png); filter: url('b.png' x); mask: url(c.png";
+
+        assertThat(rewriter.rewrite(content)).isSameAs(content);
+    }
+
+    @Test
+    public void shouldRewriteManyUrlsInOnePass() throws Exception {
+        StringBuilder content = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            content.append(".icon-").append(i).append(" {background: url(icons.svg#i").append(i).append(")}\n");
+            expected.append(".icon-").append(i).append(" {background: url(lib/icons.svg#i").append(i).append(")}\n");
+        }
+
+        assertThat(rewriter.rewrite(content.toString())).isEqualTo(expected.toString());
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DataUriInlinerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+    private final AtomicInteger reads = new AtomicInteger();
+
+    @Before
+    public void before() throws Exception {
+        directory = temporaryFolder.newFolder("img").toPath();
+    }
+
+    @Test
+    public void shouldInlineSmallAssets() throws Exception {
+        write("a.png", "png");
+        write("b.svg", "<svg/>");
+        DataUriInliner.Bundle bundle = createInliner(16, 1024).newBundle(directory::resolve);
+
+        assertThat(bundle.inline("a { background: url(a.png); } b { background: url('b.svg'); }"))
+                .isEqualTo("a { background: url(data:image/png;base64," + base64("png") + "); } " +
+                        "b { background: url('data:image/svg+xml;base64," + base64("<svg/>") + "'); }");
+        assertThat(bundle.getAssets()).containsExactly(directory.resolve("a.png"), directory.resolve("b.svg"));
+    }
+
+    @Test
+    public void shouldKeepOtherReferences() throws Exception {
+        write("large.png", "larger than the threshold");
+        write("a.txt", "txt");
+        write("font.eot", "eot");
+        DataUriInliner.Bundle bundle = createInliner(16, 1024).newBundle(directory::resolve);
+        String content = "a { background: url(large.png); } b { background: url(a.txt); } c { background: url(missing.png); }" +
+                " @font-face { src: url(font.eot?#iefix); } d { background: url(/img/a.png); }";
+
+        assertThat(bundle.inline(content)).isSameAs(content);
+        assertThat(bundle.getAssets()).isEmpty();
+    }
+
+    @Test
+    public void shouldStopInliningOnceTheBundleLimitIsReached() throws Exception {
+        write("a.png", "aaa");
+        write("b.png", "bbb");
+        int dataUriLength = ("data:image/png;base64," + base64("aaa")).length();
+        DataUriInliner.Bundle bundle = createInliner(16, dataUriLength).newBundle(directory::resolve);
+
+        assertThat(bundle.inline("a { background: url(a.png); }")).contains("base64");
+        assertThat(bundle.inline("b { background: url(b.png); }")).isEqualTo("b { background: url(b.png); }");
+        assertThat(bundle.getAssets()).containsExactly(directory.resolve("a.png"));
+    }
+
+    @Test
+    public void shouldEncodeAssetsOnce() throws Exception {
+        write("a.png", "png");
+        DataUriInliner inliner = createInliner(16, 1024);
+
+        String first = inliner.newBundle(directory::resolve).inline("a { background: url(a.png); }");
+        String second = inliner.newBundle(directory::resolve).inline("b { background: url(a.png); }");
+
+        assertThat(first.substring(1)).isEqualTo(second.substring(1));
+        assertThat(reads.get()).isEqualTo(1);
+        assertThat(inliner.getInlinedCount()).isEqualTo(2);
+    }
+
+    private DataUriInliner createInliner(long maxAssetSize, long bundleLimit) {
+        return new DataUriInliner(maxAssetSize, bundleLimit, path -> {
+            reads.incrementAndGet();
+            try {
+                return ByteBuffer.wrap(Files.readAllBytes(path));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static String base64(String content) {
+        return Base64.getEncoder().encodeToString(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void write(String path, String content) throws IOException {
+        Files.write(directory.resolve(path), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
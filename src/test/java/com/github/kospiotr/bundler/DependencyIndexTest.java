@@ -0,0 +1,92 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DependencyIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path webapp;
+    private Path output;
+    private DependencyIndex dependencyIndex;
+
+    @Before
+    public void before() throws Exception {
+        webapp = temporaryFolder.newFolder("webapp").toPath();
+        output = temporaryFolder.newFolder("output").toPath();
+        write("resources/js/lib1.js", "var lib1 = 1;");
+        write("resources/js/lib2.js", "var lib2 = 2;");
+        write("resources/css/lib.css", "body {color: red}");
+        write("page1.xhtml", "<!-- bundle:js #{request.contextPath}/resources/js/app.js -->\n" +
+                "<script src=\"#{request.contextPath}/resources/js/lib1.js\"></script>\n" +
+                "<script src=\"#{request.contextPath}/resources/js/lib2.js\"></script>\n" +
+                "<!-- /bundle -->");
+        write("module/page2.xhtml", "<!-- bundle:js #{request.contextPath}/resources/js/other.js -->\n" +
+                "<script src=\"#{request.contextPath}/resources/js/lib2.js\"></script>\n" +
+                "<!-- /bundle -->\n" +
+                "<!-- bundle:css #{request.contextPath}/resources/css/app.css -->\n" +
+                "<link href=\"#{request.contextPath}/resources/css/lib.css\" />\n" +
+                "<!-- /bundle -->");
+
+        ProcessMojo mojo = new ProcessMojo(null, null, webapp.toFile(), output.toFile());
+        mojo.inputFiles = new InputFiles(webapp.toFile(), new String[]{"**/*.xhtml"}, null, output.toFile());
+        mojo.incremental = true;
+        mojo.stateFile = new File(temporaryFolder.getRoot(), "bundler.state");
+        mojo.execute();
+        dependencyIndex = new DependencyIndex(mojo.getBuildState());
+    }
+
+    @Test
+    public void shouldFindPagesAffectedBySourceChange() throws Exception {
+        assertThat(affectedPages("resources/js/lib1.js")).containsOnly(webapp.resolve("page1.xhtml"));
+        assertThat(affectedPages("resources/css/lib.css")).containsOnly(webapp.resolve("module/page2.xhtml"));
+        assertThat(affectedPages("resources/js/lib2.js")).containsOnly(webapp.resolve("page1.xhtml"), webapp.resolve("module/page2.xhtml"));
+    }
+
+    @Test
+    public void shouldFindChangedPage() throws Exception {
+        assertThat(affectedPages("module/page2.xhtml")).containsOnly(webapp.resolve("module/page2.xhtml"));
+        assertThat(dependencyIndex.containsPage(webapp.resolve("module/page2.xhtml"))).isTrue();
+        assertThat(dependencyIndex.containsPage(webapp.resolve("module/page3.xhtml"))).isFalse();
+    }
+
+    @Test
+    public void shouldIgnoreUnrelatedFiles() throws Exception {
+        assertThat(affectedPages("resources/js/unused.js")).isEmpty();
+    }
+
+    @Test
+    public void shouldRecognizeOutputs() throws Exception {
+        assertThat(dependencyIndex.isOutput(output.resolve("page1.xhtml"))).isTrue();
+        assertThat(dependencyIndex.isOutput(output.resolve("resources/js/app.js"))).isTrue();
+        assertThat(dependencyIndex.isOutput(webapp.resolve("resources/js/lib1.js"))).isFalse();
+    }
+
+    @Test
+    public void shouldListDirectoriesToWatch() throws Exception {
+        assertThat(dependencyIndex.getDirectories()).contains(webapp, webapp.resolve("module"), webapp.resolve("resources/js"), webapp.resolve("resources/css"));
+    }
+
+    private Iterable<Path> affectedPages(String changedFile) {
+        return dependencyIndex.getAffectedPages(Collections.singleton(webapp.resolve(changedFile)));
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = webapp.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.kospiotr.bundler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kospiotr.bundler.util.HashGenerator;
+
+/**
+ * Compares hashing the assembled bundle String (previous behaviour) with updating a hasher while the optimized sources
+ * are appended, for the supported algorithms. Run with {@code mvn test -Pbenchmark -Dbenchmark=HashGeneratorBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashGeneratorBenchmark {
+
+    @Param({"MD5", "SHA-256", "XXHASH64"})
+    String algorithm;
+
+    /**
+     * Total size of the bundle in kilobytes, split into 60 sources.
+     */
+    @Param({"64", "2048"})
+    int size;
+
+    private List<byte[]> sources;
+    private String bundle;
+
+    @Setup
+    public void setup() {
+        sources = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        int sourceLength = size * 1024 / 60;
+        for (int i = 0; i < 60; i++) {
+            StringBuilder source = new StringBuilder(sourceLength);
+            while (source.length() < sourceLength) {
+                source.append("function f").append(i).append("(a,b){return a+b*").append(source.length()).append("};");
+            }
+            sources.add(source.toString().getBytes(StandardCharsets.UTF_8));
+            sb.append(source).append('\n');
+        }
+        bundle = sb.toString();
+    }
+
+    @Benchmark
+    public String assembledString() {
+        return HashGenerator.computeHash(bundle, algorithm);
+    }
+
+    @Benchmark
+    public String incremental() {
+        HashGenerator.Hasher hasher = HashGenerator.newHasher(algorithm);
+        byte[] newLine = {'\n'};
+        for (byte[] source : sources) {
+            hasher.update(source, 0, source.length);
+            hasher.update(newLine, 0, 1);
+        }
+        return hasher.getHash();
+    }
+}
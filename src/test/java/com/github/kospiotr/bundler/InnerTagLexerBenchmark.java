@@ -0,0 +1,78 @@
+package com.github.kospiotr.bundler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link InnerTagLexer} with the regular expressions previously used to extract sources of a bundle block.
+ * Run with {@code mvn test -Pbenchmark -Dbenchmark=InnerTagLexerBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InnerTagLexerBenchmark {
+
+    private static final String SCRIPT_REGEX = "\\Q<script\\E.*?src\\=\"(.*?)\".*?\\>.*?\\Q</script>\\E";
+
+    private final InnerTagLexer lexer = new InnerTagLexer("script", "src", true);
+    private final Pattern precompiledPattern = Pattern.compile(SCRIPT_REGEX, Pattern.DOTALL);
+
+    @Param({"5", "60"})
+    int scripts;
+
+    private String content;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < scripts; i++) {
+            sb.append("\n    <script type=\"text/javascript\" src=\"#{request.contextPath}/resources/js/vendor/lib").append(i).append(".js\"></script>");
+            if (i % 10 == 0) {
+                sb.append("\n    <!-- vendor libraries ").append(i).append(" -->");
+            }
+        }
+        content = sb.append('\n').toString();
+    }
+
+    @Benchmark
+    public List<String> lexer() {
+        return lexer.extract(content);
+    }
+
+    @Benchmark
+    public List<String> regexCompiledPerBlock() {
+        return extract(Pattern.compile(SCRIPT_REGEX, Pattern.DOTALL));
+    }
+
+    @Benchmark
+    public List<String> regexPrecompiled() {
+        return extract(precompiledPattern);
+    }
+
+    private List<String> extract(Pattern pattern) {
+        Matcher m = pattern.matcher(content);
+        List<String> srcs = new ArrayList<>();
+        while (m.find()) {
+            srcs.add(m.group(1));
+        }
+        return srcs;
+    }
+}
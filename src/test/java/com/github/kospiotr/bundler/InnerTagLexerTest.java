@@ -0,0 +1,67 @@
+package com.github.kospiotr.bundler;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InnerTagLexerTest {
+
+    private final InnerTagLexer scriptLexer = new InnerTagLexer("script", "src", true);
+    private final InnerTagLexer linkLexer = new InnerTagLexer("link", "href", false);
+
+    @Test
+    public void shouldExtractDoubleSingleAndNotQuotedValues() throws Exception {
+        String content = "<script src=\"lib1.js\"></script>\n<script src='lib2.js'></script>\n<script src=lib3.js></script>";
+
+        assertThat(scriptLexer.extract(content)).containsExactly("lib1.js", "lib2.js", "lib3.js");
+    }
+
+    @Test
+    public void shouldExtractAttributeInAnyOrder() throws Exception {
+        String content = "<script type=\"text/javascript\" defer src = \"lib1.js\" async></script>" +
+                "<link href='app.css' rel=\"stylesheet\"/><link rel=\"stylesheet\" type=\"text/css\" href=\"theme.css\">";
+
+        assertThat(scriptLexer.extract(content)).containsExactly("lib1.js");
+        assertThat(linkLexer.extract(content)).containsExactly("app.css", "theme.css");
+    }
+
+    @Test
+    public void shouldMatchNamesCaseInsensitively() throws Exception {
+        String content = "<SCRIPT SRC=\"lib1.js\"></SCRIPT><Link HREF=\"app.css\">";
+
+        assertThat(scriptLexer.extract(content)).containsExactly("lib1.js");
+        assertThat(linkLexer.extract(content)).containsExactly("app.css");
+    }
+
+    @Test
+    public void shouldSkipCommentsAndElementContent() throws Exception {
+        String content = "<!-- <script src=\"commented.js\"></script> -->\n" +
+                "<script>document.write('<script src=\"written.js\"></scr' + 'ipt>');</script>\n" +
+                "<script src=\"lib1.js\"></script>";
+
+        assertThat(scriptLexer.extract(content)).containsExactly("lib1.js");
+    }
+
+    @Test
+    public void shouldSkipElementsWithoutAttributeOrWithSimilarNames() throws Exception {
+        String content = "<scripts src=\"no.js\"></scripts><script data-src=\"no.js\"></script><script>var a = 1;</script>" +
+                "<linked href=\"no.css\"><link rel=\"stylesheet\">";
+
+        assertThat(scriptLexer.extract(content)).isEmpty();
+        assertThat(linkLexer.extract(content)).isEmpty();
+    }
+
+    @Test
+    public void shouldKeepValuesWithElExpressions() throws Exception {
+        String content = "<script src=\"#{request.contextPath}/js/lib1.js\"></script>";
+
+        assertThat(scriptLexer.extract(content)).containsExactly("#{request.contextPath}/js/lib1.js");
+    }
+
+    @Test
+    public void shouldStopAtUnterminatedContent() throws Exception {
+        assertThat(scriptLexer.extract("<script src=\"lib1.js\"></script><script src=\"lib2")).containsExactly("lib1.js");
+        assertThat(scriptLexer.extract("<script src=\"lib1.js\"></script><!-- <script src=\"lib2.js\">")).containsExactly("lib1.js");
+        assertThat(scriptLexer.extract("<script src=\"lib1.js\">")).containsExactly("lib1.js");
+    }
+}
@@ -12,6 +12,8 @@ import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -59,8 +61,8 @@ public class JsTagProcessorTest {
         } catch (Exception e) {
             assertThat(e).hasMessage("File Name attribute is required");
             verify(resourceAccess, never()).read(any(Path.class));
-            verify(resourceAccess, never()).write(any(Path.class), any(String.class));
-            verify(resourceAccess, never()).write(any(Path.class), any(String.class));
+            verify(resourceAccess, never()).write(any(Path.class), any(ResourceContent.class));
+            verify(resourceAccess, never()).write(any(Path.class), any(ResourceContent.class));
             verify(resourceOptimizer, never()).optimizeJs(any(String.class), any(JsOptimizerParams.class));
         }
     }
@@ -72,26 +74,26 @@ public class JsTagProcessorTest {
 
         assertThat(result).isEqualTo("<script type=\"text/javascript\" src=\"app.js\"></script>");
         verify(resourceAccess, never()).read(any(Path.class));
-        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), any(String.class));
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), any(ResourceContent.class));
         verify(resourceOptimizer, never()).optimizeJs(any(String.class), any(JsOptimizerParams.class));
     }
 
     @Test
     public void shouldProcessSingleTag() throws Exception {
-        when(resourceAccess.read(any(Path.class))).thenReturn("");
+        when(resourceAccess.read(any(Path.class))).thenReturn(ResourceContent.of(""));
 
         Tag jsTag = createJsTag("<script src=\"my/lib/path/lib.js\"></script>", "app.js");
         String result = jsTagProcessor.process(jsTag);
 
         assertThat(result).isEqualTo("<script type=\"text/javascript\" src=\"app.js\"></script>");
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib.js")));
-        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), any(String.class));
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), any(ResourceContent.class));
         verify(resourceOptimizer, times(1)).optimizeJs(any(String.class), any(JsOptimizerParams.class));
     }
 
     @Test
     public void shouldProcessMultipleInlineTags() throws Exception {
-        when(resourceAccess.read(any(Path.class))).thenReturn("");
+        when(resourceAccess.read(any(Path.class))).thenReturn(ResourceContent.of(""));
 
         Tag jsTag = createJsTag("<script src=\"my/lib/path/lib1.js\"></script><script src=\"my/lib/path/lib2.js\"></script>", "app.js");
         String result = jsTagProcessor.process(jsTag);
@@ -99,13 +101,13 @@ public class JsTagProcessorTest {
         assertThat(result).isEqualTo("<script type=\"text/javascript\" src=\"app.js\"></script>");
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib1.js")));
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib2.js")));
-        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), any(String.class));
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), any(ResourceContent.class));
         verify(resourceOptimizer, times(2)).optimizeJs(any(String.class), any(JsOptimizerParams.class));
     }
 
     @Test
     public void shouldProcessMultipleMultiLineTags() throws Exception {
-        when(resourceAccess.read(any(Path.class))).thenReturn("");
+        when(resourceAccess.read(any(Path.class))).thenReturn(ResourceContent.of(""));
 
         Tag jsTag = createJsTag("<script src=\"my/lib/path/lib1.js\"></script>\n<!-- sample comment -->\n<script src=\"my/lib/path/lib2.js\"></script>", "app.js");
         String result = jsTagProcessor.process(jsTag);
@@ -113,13 +115,13 @@ public class JsTagProcessorTest {
         assertThat(result).isEqualTo("<script type=\"text/javascript\" src=\"app.js\"></script>");
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib1.js")));
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib2.js")));
-        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), any(String.class));
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), any(ResourceContent.class));
         verify(resourceOptimizer, times(2)).optimizeJs(any(String.class), any(JsOptimizerParams.class));
     }
 
     @Test
     public void shouldProcessWithMinifiedFiles() throws Exception {
-        when(resourceAccess.read(any(Path.class))).thenReturn("");
+        when(resourceAccess.read(any(Path.class))).thenReturn(ResourceContent.of(""));
 
         Tag jsTag = createJsTag("<script src=\"my/lib/path/lib1.min.js\"></script>\n<!-- sample comment -->\n<script src=\"my/lib/path/lib2.js\"></script>", "app.js");
         String result = jsTagProcessor.process(jsTag);
@@ -127,14 +129,14 @@ public class JsTagProcessorTest {
         assertThat(result).isEqualTo("<script type=\"text/javascript\" src=\"app.js\"></script>");
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib1.min.js")));
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib2.js")));
-        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), any(String.class));
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), any(ResourceContent.class));
         verify(resourceOptimizer, times(1)).optimizeJs(any(String.class), any(JsOptimizerParams.class));
     }
     
     
     @Test
     public void shouldProcessMultipleInlineTagsWithELExpression() throws Exception {
-        when(resourceAccess.read(any(Path.class))).thenReturn("");
+        when(resourceAccess.read(any(Path.class))).thenReturn(ResourceContent.of(""));
 
         Tag jsTag = createJsTag("<script src=\"#{request.contextPath}/my/lib/path/lib1.js\"></script><script src=\"#{facesContext.externalContext.request.contextPath}/my/lib/path/lib2.js\"></script>", "#{request.contextPath}/js/app.js");
         String result = jsTagProcessor.process(jsTag);
@@ -142,10 +144,60 @@ public class JsTagProcessorTest {
         assertThat(result).isEqualTo("<script type=\"text/javascript\" src=\"#{request.contextPath}/js/app.js\"></script>");
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib1.js")));
         verify(resourceAccess).read(argThat(new PathHamcrestMatcher("glob:**/lib2.js")));
-        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), any(String.class));
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), any(ResourceContent.class));
         verify(resourceOptimizer, times(2)).optimizeJs(any(String.class), any(JsOptimizerParams.class));
     }
 
+    @Test
+    public void shouldConcatenateSourcesOptimizedInParallelInDeclarationOrder() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        Mockito.doReturn(executor).when(processMojo).getExecutor();
+        when(resourceAccess.read(any(Path.class))).thenAnswer(invocation -> ResourceContent.of(invocation.getArguments()[0].toString().replaceAll(".*(lib\\d).js", "$1")));
+        when(resourceOptimizer.optimizeJs(any(String.class), any(JsOptimizerParams.class))).thenAnswer(invocation -> {
+            String content = (String) invocation.getArguments()[0];
+            // the first source finishes last
+            Thread.sleep(content.equals("lib1") ? 200 : 0);
+            return content + ".min";
+        });
+
+        try {
+            Tag jsTag = createJsTag("<script src=\"lib1.js\"></script><script src=\"lib2.js\"></script><script src=\"lib3.js\"></script>", "app.js");
+            jsTagProcessor.process(jsTag);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), Mockito.eq(ResourceContent.of("lib1.min\nlib2.min\nlib3.min\n")));
+    }
+
+    @Test
+    public void shouldUseSourceDirectlyWhenItsOptimizationFails() throws Exception {
+        when(resourceAccess.read(any(Path.class))).thenAnswer(invocation -> ResourceContent.of(invocation.getArguments()[0].toString().replaceAll(".*(lib\\d).js", "$1")));
+        when(resourceOptimizer.optimizeJs(any(String.class), any(JsOptimizerParams.class))).thenAnswer(invocation -> {
+            String content = (String) invocation.getArguments()[0];
+            if (content.equals("lib2")) {
+                throw new IllegalStateException("syntax error");
+            }
+            return content + ".min";
+        });
+
+        Tag jsTag = createJsTag("<script src=\"lib1.js\"></script><script src=\"lib2.js\"></script><script src=\"lib3.js\"></script>", "app.js");
+        jsTagProcessor.process(jsTag);
+
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app.js")), Mockito.eq(ResourceContent.of("lib1.min\nlib2\nlib3.min\n")));
+    }
+
+    @Test
+    public void shouldReplaceHashPlaceholderWithHashOfContent() throws Exception {
+        processMojo.hashingAlgorithm = "XXHASH64";
+        when(resourceAccess.read(any(Path.class))).thenReturn(ResourceContent.of("var a;"));
+        when(resourceOptimizer.optimizeJs(any(String.class), any(JsOptimizerParams.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
+
+        String result = jsTagProcessor.process(createJsTag("<script src=\"lib1.js\"></script>", "app-#hash#.js"));
+
+        assertThat(result).isEqualTo("<script type=\"text/javascript\" src=\"app-6b70741f08ef9c56.js\"></script>");
+        verify(resourceAccess).write(argThat(new PathHamcrestMatcher("glob:**/app-6b70741f08ef9c56.js")), Mockito.eq(ResourceContent.of("var a;\n")));
+    }
 
     private Tag createJsTag(String content, String... attributes) {
         return new Tag(content, "js", attributes);
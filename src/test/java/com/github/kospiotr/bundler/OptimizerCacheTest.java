@@ -0,0 +1,79 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OptimizerCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void before() throws Exception {
+        directory = temporaryFolder.newFolder("cache").toPath();
+    }
+
+    @Test
+    public void shouldReturnStoredContent() throws Exception {
+        OptimizerCache cache = new OptimizerCache(directory, 1024, "1.0");
+        String key = cache.key(ResourceContent.of("var a = 1;"), "js;jsOptimizer=simple");
+
+        assertThat(cache.get(key)).isNull();
+        cache.put(key, ResourceContent.of("var a=1;"));
+
+        assertThat(new OptimizerCache(directory, 1024, "1.0").get(key)).isEqualTo(ResourceContent.of("var a=1;"));
+        assertThat(cache.getHitCount()).isEqualTo(0);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldKeyByContentSettingsAndVersion() throws Exception {
+        OptimizerCache cache = new OptimizerCache(directory, 1024, "1.0");
+        String key = cache.key(ResourceContent.of("var a = 1;"), "js;jsOptimizer=simple");
+
+        assertThat(cache.key(ResourceContent.of("var a = 1;"), "js;jsOptimizer=simple")).isEqualTo(key);
+        assertThat(cache.key(ResourceContent.of("var a = 2;"), "js;jsOptimizer=simple")).isNotEqualTo(key);
+        assertThat(cache.key(ResourceContent.of("var a = 1;"), "js;jsOptimizer=yui")).isNotEqualTo(key);
+        assertThat(new OptimizerCache(directory, 1024, "1.1").key(ResourceContent.of("var a = 1;"), "js;jsOptimizer=simple")).isNotEqualTo(key);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntries() throws Exception {
+        OptimizerCache cache = new OptimizerCache(directory, 25, "1.0");
+        String first = store(cache, "first", "0123456789", 1000);
+        String second = store(cache, "second", "0123456789", 2000);
+        String third = store(cache, "third", "0123456789", 3000);
+        // using the first entry makes the second one the least recently used
+        assertThat(cache.get(first)).isEqualTo(ResourceContent.of("0123456789"));
+
+        assertThat(cache.evict()).isEqualTo(1);
+
+        assertThat(cache.get(first)).isNotNull();
+        assertThat(cache.get(second)).isNull();
+        assertThat(cache.get(third)).isNotNull();
+        try (Stream<Path> files = Files.walk(directory)) {
+            assertThat(files.filter(Files::isRegularFile).count()).isEqualTo(2);
+        }
+    }
+
+    private String store(OptimizerCache cache, String content, String optimizedContent, long lastUsed) throws Exception {
+        String key = cache.key(ResourceContent.of(content), "js");
+        cache.put(key, ResourceContent.of(optimizedContent));
+        try (Stream<Path> files = Files.walk(directory)) {
+            Path entry = files.filter(file -> file.getFileName().toString().startsWith(key)).findFirst().get();
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(lastUsed));
+        }
+        return key;
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class PathResolverTest {
+
+    private final Path inputBasePath = Paths.get("/input").toAbsolutePath();
+    private final Path outputBasePath = Paths.get("/output").toAbsolutePath();
+    private final Path pagePath = Paths.get("/input/pages").toAbsolutePath();
+
+    private final PathResolver resolver = new PathResolver(inputBasePath, outputBasePath, PathResolver.DEFAULT_EXPRESSIONS);
+
+    @Test
+    public void shouldResolveExpressionsAgainstBaseDirectory() throws Exception {
+        assertThat(resolver.resolve("#{request.contextPath}/js/app.js", pagePath, inputBasePath))
+                .isEqualTo(inputBasePath.resolve("js/app.js"));
+        assertThat(resolver.resolve("#{facesContext.externalContext.request.contextPath}/js/app.js", pagePath, outputBasePath))
+                .isEqualTo(outputBasePath.resolve("js/app.js"));
+    }
+
+    @Test
+    public void shouldResolveOtherPathsAgainstParentDirectory() throws Exception {
+        assertThat(resolver.resolve("js/app.js", pagePath, inputBasePath)).isEqualTo(pagePath.resolve("js/app.js"));
+        assertThat(resolver.resolve("#{other}/js/app.js", pagePath, inputBasePath)).isEqualTo(pagePath.resolve("#{other}/js/app.js"));
+    }
+
+    @Test
+    public void shouldResolveMappedExpressionsAgainstDirectoryWithinBaseDirectory() throws Exception {
+        PathResolver resolver = new PathResolver(inputBasePath, outputBasePath,
+                Arrays.asList("#{request.contextPath}/", " #{resource.path}/ = resources/static "));
+
+        assertThat(resolver.resolve("#{resource.path}/js/app.js", pagePath, inputBasePath))
+                .isEqualTo(inputBasePath.resolve("resources/static/js/app.js"));
+        assertThat(resolver.resolve("#{request.contextPath}/js/app.js", pagePath, inputBasePath))
+                .isEqualTo(inputBasePath.resolve("js/app.js"));
+    }
+
+    @Test
+    public void shouldShareEqualPaths() throws Exception {
+        Path first = resolver.resolve("#{request.contextPath}/js/app.js", pagePath, inputBasePath);
+        Path second = resolver.resolve("#{facesContext.externalContext.request.contextPath}/js/app.js", pagePath, inputBasePath);
+
+        assertThat(second).isSameAs(first);
+        assertThat(resolver.resolve("#{request.contextPath}/js/app.js", pagePath, inputBasePath)).isSameAs(first);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyExpressions() throws Exception {
+        new PathResolver(inputBasePath, outputBasePath, Arrays.asList("=resources"));
+    }
+}
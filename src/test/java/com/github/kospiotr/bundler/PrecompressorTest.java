@@ -0,0 +1,231 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PrecompressorTest {
+
+    private static final FileTime PAST = FileTime.fromMillis(1000000000000L);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ForkJoinPool pool = new ForkJoinPool(4);
+    private ResourceAccess resourceAccess = new ResourceAccess();
+    private Precompressor precompressor;
+    private Path file;
+    private Path stateFile;
+
+    @Before
+    public void before() throws Exception {
+        precompressor = new Precompressor(EnumSet.allOf(Precompressor.Encoding.class), 9, Precompressor.Mode.DEFAULT, 2, null, pool, resourceAccess);
+        file = temporaryFolder.newFolder("output").toPath().resolve("app.min.js");
+        stateFile = temporaryFolder.getRoot().toPath().resolve("bundler.state");
+    }
+
+    @After
+    public void after() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void shouldCompressSmallFile() throws Exception {
+        byte[] content = "var a = 1;\nvar b = 2;\n".getBytes("UTF-8");
+        Files.write(file, content);
+
+        precompressor.compress(file, true);
+
+        assertThat(gunzip(file.resolveSibling("app.min.js.gz"))).isEqualTo(content);
+        assertThat(inflate(file.resolveSibling("app.min.js.deflate"))).isEqualTo(content);
+    }
+
+    @Test
+    public void shouldCompressEmptyFile() throws Exception {
+        Files.write(file, new byte[0]);
+
+        precompressor.compress(file, true);
+
+        assertThat(gunzip(file.resolveSibling("app.min.js.gz"))).isEmpty();
+        assertThat(inflate(file.resolveSibling("app.min.js.deflate"))).isEmpty();
+    }
+
+    @Test
+    public void shouldCompressLargeFileInBlocks() throws Exception {
+        byte[] content = largeContent(3 * Precompressor.BLOCK_SIZE + 1000);
+        Files.write(file, content);
+
+        precompressor.compress(file, true);
+
+        byte[] gzip = Files.readAllBytes(file.resolveSibling("app.min.js.gz"));
+        assertThat(countGzipMembers(gzip)).isEqualTo(4);
+        assertThat(gunzip(file.resolveSibling("app.min.js.gz"))).isEqualTo(content);
+        assertThat(inflate(file.resolveSibling("app.min.js.deflate"))).isEqualTo(content);
+        assertThat(Files.size(file.resolveSibling("app.min.js.deflate"))).isLessThan(content.length / 2);
+        assertThat(precompressor.getReport()).hasSize(1);
+        assertThat(precompressor.getReport().get(0)).startsWith(file + ": " + content.length + " bytes, gzip: " + gzip.length + " bytes, deflate: ");
+    }
+
+    @Test
+    public void shouldCompressLargeFileWithZopfli() throws Exception {
+        byte[] content = largeContent(2 * Precompressor.BLOCK_SIZE + 1000);
+        Files.write(file, content);
+        precompressor.compress(file, true);
+        long gzipSize = Files.size(file.resolveSibling("app.min.js.gz"));
+        long deflateSize = Files.size(file.resolveSibling("app.min.js.deflate"));
+
+        precompressor.compress(file, true, Precompressor.Mode.ZOPFLI);
+
+        assertThat(gunzip(file.resolveSibling("app.min.js.gz"))).isEqualTo(content);
+        assertThat(inflate(file.resolveSibling("app.min.js.deflate"))).isEqualTo(content);
+        assertThat(Files.size(file.resolveSibling("app.min.js.gz"))).isLessThan(gzipSize);
+        assertThat(Files.size(file.resolveSibling("app.min.js.deflate"))).isLessThan(deflateSize);
+        assertThat(precompressor.getReport().get(1)).endsWith(" (zopfli)");
+    }
+
+    @Test
+    public void shouldNotRecompressUnchangedFile() throws Exception {
+        Files.write(file, "var a = 1;".getBytes("UTF-8"));
+        compressInBuild(EnumSet.allOf(Precompressor.Encoding.class), 9, true);
+        Files.setLastModifiedTime(file.resolveSibling("app.min.js.gz"), PAST);
+
+        assertThat(compressInBuild(EnumSet.allOf(Precompressor.Encoding.class), 9, false).getReport()).isEmpty();
+        assertThat(Files.getLastModifiedTime(file.resolveSibling("app.min.js.gz"))).isEqualTo(PAST);
+
+        Files.delete(file.resolveSibling("app.min.js.deflate"));
+        assertThat(compressInBuild(EnumSet.allOf(Precompressor.Encoding.class), 9, false).getReport()).hasSize(1);
+        assertThat(file.resolveSibling("app.min.js.deflate")).exists();
+    }
+
+    @Test
+    public void shouldRecompressUnchangedFileWithOtherSettings() throws Exception {
+        Files.write(file, largeContent(10000));
+        compressInBuild(EnumSet.allOf(Precompressor.Encoding.class), 9, true);
+        long gzipSize = Files.size(file.resolveSibling("app.min.js.gz"));
+
+        assertThat(compressInBuild(EnumSet.allOf(Precompressor.Encoding.class), 1, false).getReport()).hasSize(1);
+        assertThat(Files.size(file.resolveSibling("app.min.js.gz"))).isGreaterThan(gzipSize);
+
+        compressInBuild(EnumSet.of(Precompressor.Encoding.GZIP), 1, false);
+        assertThat(file.resolveSibling("app.min.js.gz")).exists();
+        assertThat(file.resolveSibling("app.min.js.deflate")).doesNotExist();
+    }
+
+    @Test
+    public void shouldRecompressWithoutBuildState() throws Exception {
+        Files.write(file, "var a = 1;".getBytes("UTF-8"));
+        precompressor.compress(file, true);
+
+        precompressor.compress(file, false);
+
+        assertThat(precompressor.getReport()).hasSize(2);
+    }
+
+    @Test
+    public void shouldRejectUnknownEncoding() throws Exception {
+        try {
+            Precompressor.Encoding.parse("brotli");
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("Unsupported precompression: brotli, supported: gzip, deflate");
+        }
+        assertThat(Precompressor.Encoding.parse(" Gzip ")).isEqualTo(Precompressor.Encoding.GZIP);
+    }
+
+    @Test
+    public void shouldRejectUnknownMode() throws Exception {
+        try {
+            Precompressor.Mode.parse("fastest");
+            fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("Unsupported compression mode: fastest, supported: default, zopfli");
+        }
+        assertThat(Precompressor.Mode.parse("zopfli")).isEqualTo(Precompressor.Mode.ZOPFLI);
+    }
+
+    /**
+     * Compresses the file the way a build does, with the state of the previous one.
+     */
+    private Precompressor compressInBuild(Collection<Precompressor.Encoding> encodings, int level, boolean changed) {
+        BuildState buildState = BuildState.load(stateFile, "configuration");
+        Precompressor buildPrecompressor = new Precompressor(encodings, level, Precompressor.Mode.DEFAULT, 2, buildState, pool, resourceAccess);
+        buildPrecompressor.compress(file, changed);
+        buildState.recordBundle("bundle", Collections.<Path>emptyList(), file, "<script/>");
+        buildState.save();
+        return buildPrecompressor;
+    }
+
+    private byte[] largeContent(int length) {
+        // compressible, but not trivially
+        Random random = new Random(42);
+        String[] words = {"var ", "function ", "return ", "this.", "value", "(a, b)", " {\n", "}\n", ";\n", "= ", "+ 1"};
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append(words[random.nextInt(words.length)]).append(random.nextInt(100));
+        }
+        return Arrays.copyOf(builder.toString().getBytes(), length);
+    }
+
+    /**
+     * Walks the members: 10 bytes header, deflate data, 8 bytes trailer.
+     */
+    private static int countGzipMembers(byte[] gzip) throws Exception {
+        int members = 0;
+        int offset = 0;
+        byte[] buffer = new byte[8192];
+        while (offset < gzip.length) {
+            assertThat(gzip[offset]).isEqualTo((byte) 0x1f);
+            assertThat(gzip[offset + 1]).isEqualTo((byte) 0x8b);
+            Inflater inflater = new Inflater(true);
+            inflater.setInput(gzip, offset + 10, gzip.length - offset - 10);
+            while (!inflater.finished()) {
+                inflater.inflate(buffer);
+            }
+            offset = gzip.length - inflater.getRemaining() + 8;
+            inflater.end();
+            members++;
+        }
+        return members;
+    }
+
+    private static byte[] gunzip(Path path) throws IOException {
+        return readAll(new GZIPInputStream(Files.newInputStream(path)));
+    }
+
+    private static byte[] inflate(Path path) throws IOException {
+        return readAll(new InflaterInputStream(Files.newInputStream(path)));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.kospiotr.bundler.util.HashGenerator;
+
+public class ProcessMojoTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File webapp;
+    private File output;
+
+    @Before
+    public void before() throws Exception {
+        webapp = temporaryFolder.newFolder("webapp");
+        output = temporaryFolder.newFolder("output");
+        write("resources/js/lib1.js", "var lib1 = 1;");
+        write("resources/js/lib2.js", "var lib2 = 2;");
+    }
+
+    @Test
+    public void shouldProcessAllPagesMatchingInputFiles() throws Exception {
+        write("page1.xhtml", page("page1"));
+        write("module/page2.xhtml", page("page2"));
+        write("module/deep/page3.xhtml", page("page3"));
+        write("excluded/page4.xhtml", page("page4"));
+        write("page5.html", page("page5"));
+
+        ProcessMojo mojo = createMojo(new InputFiles(webapp, new String[]{"**/*.xhtml"}, new String[]{"excluded/**"}, output));
+        mojo.threads = 2;
+        mojo.execute();
+
+        assertThat(read(output, "page1.xhtml")).contains("<h1>page1</h1>").contains("src=\"#{request.contextPath}/resources/js/app.min.js\"");
+        assertThat(read(output, "module/page2.xhtml")).contains("<h1>page2</h1>");
+        assertThat(read(output, "module/deep/page3.xhtml")).contains("<h1>page3</h1>");
+        assertThat(new File(output, "excluded/page4.xhtml")).doesNotExist();
+        assertThat(new File(output, "page5.html")).doesNotExist();
+        assertThat(read(output, "resources/js/app.min.js")).contains("lib1").contains("lib2");
+        assertThat(mojo.getBundleRegistry().getBuiltCount()).isEqualTo(1);
+        assertThat(mojo.getBundleRegistry().getReusedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldFailWhenAnyPageFails() throws Exception {
+        write("page1.xhtml", page("page1"));
+        write("page2.xhtml", "<!-- bundle:unknown app.js --><!-- /bundle -->");
+
+        ProcessMojo mojo = createMojo(new InputFiles(webapp, new String[]{"*.xhtml"}, null, output));
+        mojo.threads = 2;
+        try {
+            mojo.execute();
+            fail("Should have thrown exception");
+        } catch (MojoExecutionException e) {
+            assertThat(e.getMessage()).contains("page2.xhtml");
+            assertThat(e.getCause()).hasMessage("Tag type: unknown is not supported");
+        }
+    }
+
+    @Test
+    public void shouldSkipPagesAndBundlesThatAreUpToDate() throws Exception {
+        write("page1.xhtml", page("page1"));
+        write("page2.xhtml", page("page2"));
+        File stateFile = new File(temporaryFolder.getRoot(), "state/bundler.state");
+
+        ProcessMojo first = createIncrementalMojo(stateFile);
+        first.execute();
+        assertThat(first.getSkippedPageCount()).isEqualTo(0);
+        assertThat(first.getBuildState().getUpToDateBundleCount()).isEqualTo(0);
+        assertThat(stateFile).exists();
+
+        ProcessMojo unchanged = createIncrementalMojo(stateFile);
+        unchanged.execute();
+        assertThat(unchanged.getSkippedPageCount()).isEqualTo(2);
+        assertThat(unchanged.getBundleRegistry().getBuiltCount()).isEqualTo(0);
+
+        write("page2.xhtml", page("page2 changed"));
+        ProcessMojo pageChanged = createIncrementalMojo(stateFile);
+        pageChanged.execute();
+        assertThat(pageChanged.getSkippedPageCount()).isEqualTo(1);
+        assertThat(pageChanged.getBuildState().getUpToDateBundleCount()).isEqualTo(1);
+        assertThat(read(output, "page2.xhtml")).contains("<h1>page2 changed</h1>");
+
+        write("resources/js/lib2.js", "var lib2changed = 2;");
+        ProcessMojo sourceChanged = createIncrementalMojo(stateFile);
+        sourceChanged.execute();
+        assertThat(sourceChanged.getSkippedPageCount()).isEqualTo(0);
+        assertThat(sourceChanged.getBuildState().getUpToDateBundleCount()).isEqualTo(0);
+        assertThat(read(output, "resources/js/app.min.js")).contains("lib2changed");
+
+        Files.delete(output.toPath().resolve("resources/js/app.min.js"));
+        ProcessMojo outputDeleted = createIncrementalMojo(stateFile);
+        outputDeleted.execute();
+        // page1 rebuilds the bundle, page2 then finds it up to date again
+        assertThat(outputDeleted.getSkippedPageCount()).isEqualTo(1);
+        assertThat(outputDeleted.getBuildState().getUpToDateBundleCount()).isEqualTo(0);
+        assertThat(new File(output, "resources/js/app.min.js")).exists();
+    }
+
+    @Test
+    public void shouldDiscardBuildStateOfOtherPluginVersion() throws Exception {
+        write("page1.xhtml", page("page1"));
+
+        buildIncrementally(mojo -> mojo.pluginVersion = "1.0");
+        ProcessMojo sameVersion = buildIncrementally(mojo -> mojo.pluginVersion = "1.0");
+        assertThat(sameVersion.getSkippedPageCount()).isEqualTo(1);
+
+        ProcessMojo upgraded = buildIncrementally(mojo -> mojo.pluginVersion = "1.1");
+        assertThat(upgraded.getSkippedPageCount()).isEqualTo(0);
+        assertThat(upgraded.getBuildState().getUpToDateBundleCount()).isEqualTo(0);
+        assertThat(upgraded.getBundleRegistry().getBuiltCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCopyContentOutsideOfBundlesUnchanged() throws Exception {
+        String header = "<html><body><h1>Zażółć gęślą jaźń – ☃</h1>\n";
+        write("page1.xhtml", header +
+                "<!-- bundle:js #{request.contextPath}/resources/js/app.min.js -->\n" +
+                "<script src=\"#{request.contextPath}/resources/js/lib1.js\"></script>\n" +
+                "<!-- /bundle -->\n" +
+                "<p>ünïcödé</p></body></html>");
+
+        createMojo(new InputFiles(webapp, new String[]{"*.xhtml"}, null, output)).execute();
+
+        assertThat(read(output, "page1.xhtml")).isEqualTo(header +
+                "<script type=\"text/javascript\" src=\"#{request.contextPath}/resources/js/app.min.js\"></script>\n" +
+                "<p>ünïcödé</p></body></html>");
+    }
+
+    @Test
+    public void shouldReuseCachedOptimizedSources() throws Exception {
+        write("page1.xhtml", page("page1"));
+        File cacheDirectory = new File(temporaryFolder.getRoot(), "cache");
+
+        ProcessMojo first = createCachingMojo(cacheDirectory);
+        first.execute();
+        assertThat(first.getOptimizerCache().getHitCount()).isEqualTo(0);
+        assertThat(first.getOptimizerCache().getMissCount()).isEqualTo(2);
+
+        write("resources/js/lib2.js", "var lib2changed = 2;");
+        ProcessMojo second = createCachingMojo(cacheDirectory);
+        second.execute();
+        assertThat(second.getOptimizerCache().getHitCount()).isEqualTo(1);
+        assertThat(second.getOptimizerCache().getMissCount()).isEqualTo(1);
+        assertThat(read(output, "resources/js/app.min.js")).contains("lib1").contains("lib2changed");
+    }
+
+    @Test
+    public void shouldWritePrecompressedSiblingsOfPagesAndBundles() throws Exception {
+        write("page1.xhtml", page("page1"));
+        ProcessMojo mojo = createMojo(new InputFiles(webapp, new String[]{"*.xhtml"}, null, output));
+        mojo.precompress = new String[]{"gzip"};
+
+        mojo.execute();
+
+        assertThat(gunzip(output, "page1.xhtml.gz")).isEqualTo(read(output, "page1.xhtml"));
+        assertThat(gunzip(output, "resources/js/app.min.js.gz")).isEqualTo(read(output, "resources/js/app.min.js"));
+        assertThat(new File(output, "page1.xhtml.deflate")).doesNotExist();
+    }
+
+    @Test
+    public void shouldCompressBundleWithModeChosenByTag() throws Exception {
+        write("page1.xhtml", "<html><body>\n" +
+                "<!-- bundle:js #{request.contextPath}/resources/js/app.min.js compression=zopfli -->\n" +
+                "<script src=\"#{request.contextPath}/resources/js/lib1.js\"></script>\n" +
+                "<!-- /bundle -->\n" +
+                "</body></html>");
+        ProcessMojo mojo = createMojo(new InputFiles(webapp, new String[]{"*.xhtml"}, null, output));
+        mojo.precompress = new String[]{"gzip"};
+
+        mojo.execute();
+
+        assertThat(read(output, "page1.xhtml")).contains("src=\"#{request.contextPath}/resources/js/app.min.js\"");
+        assertThat(gunzip(output, "resources/js/app.min.js.gz")).isEqualTo(read(output, "resources/js/app.min.js"));
+        assertThat(gunzip(output, "page1.xhtml.gz")).isEqualTo(read(output, "page1.xhtml"));
+    }
+
+    @Test
+    public void shouldRejectUnknownPrecompression() throws Exception {
+        write("page1.xhtml", page("page1"));
+        ProcessMojo mojo = createMojo(new InputFiles(webapp, new String[]{"*.xhtml"}, null, output));
+        mojo.precompress = new String[]{"gzip", "zip"};
+        try {
+            mojo.execute();
+            fail("Should have thrown exception");
+        } catch (MojoExecutionException e) {
+            assertThat(e).hasMessage("Unsupported precompression: zip, supported: gzip, deflate");
+        }
+    }
+
+    @Test
+    public void shouldStreamBundlesLikeAssembledOnes() throws Exception {
+        StringBuilder page = new StringBuilder("<html><body>\n<!-- bundle:js #{request.contextPath}/resources/js/app-#hash#.min.js -->\n");
+        for (int i = 0; i < 20; i++) {
+            // every third source is minified, copied as it is
+            String name = "src" + i + (i % 3 == 0 ? ".min.js" : ".js");
+            write("resources/js/" + name, "var source" + i + " = " + i + ";");
+            page.append("<script src=\"#{request.contextPath}/resources/js/").append(name).append("\"></script>\n");
+        }
+        write("page1.xhtml", page.append("<!-- /bundle -->\n</body></html>").toString());
+        File streamedOutput = temporaryFolder.newFolder("streamed");
+
+        createMojo(new InputFiles(webapp, new String[]{"*.xhtml"}, null, output)).execute();
+        ProcessMojo streaming = new ProcessMojo(null, null, webapp, streamedOutput);
+        streaming.inputFiles = new InputFiles(webapp, new String[]{"*.xhtml"}, null, streamedOutput);
+        streaming.streamingThreshold = 0;
+        streaming.threads = 4;
+        streaming.execute();
+
+        String processedPage = read(output, "page1.xhtml");
+        String bundle = processedPage.replaceAll("(?s).*resources/js/(app-[0-9a-f]+\\.min\\.js).*", "$1");
+        assertThat(read(streamedOutput, "page1.xhtml")).isEqualTo(processedPage);
+        assertThat(read(streamedOutput, "resources/js/" + bundle)).isEqualTo(read(output, "resources/js/" + bundle))
+                .contains("var source0 = 0;").contains("source19");
+        assertThat(read(streamedOutput, "resources/js/" + bundle).indexOf("source0")).isLessThan(read(streamedOutput, "resources/js/" + bundle).indexOf("source19"));
+        assertThat(new File(streamedOutput, "resources/js").list()).containsOnly(bundle);
+    }
+
+    @Test
+    public void shouldInlineImportsAndRebuildWhenImportChanges() throws Exception {
+        write("resources/css/theme/base.css", "@import \"../common/reset.css\";\n@import url('print.css') print;\n" +
+                "h1 { background: url(img/a.png); }");
+        write("resources/css/common/reset.css", "@import \"../theme/base.css\";\nbody { background: url(../img/b.png); }");
+        write("resources/css/theme/print.css", "h2 { color: black; }");
+        writeStyleSheetPage("theme/base.css");
+
+        buildIncrementally(mojo -> {
+        });
+
+        String bundle = read(output, "resources/css/app.css");
+        assertThat(bundle).doesNotContain("@import").contains("url(img/b.png)").contains("url(theme/img/a.png)")
+                .contains("@media print").contains("color");
+        assertThat(bundle.indexOf("body")).isLessThan(bundle.indexOf("h2")).isLessThan(bundle.indexOf("h1"));
+
+        write("resources/css/theme/print.css", "h2 { color: #123456; }");
+        ProcessMojo importChanged = buildIncrementally(mojo -> {
+        });
+        assertThat(importChanged.getBuildState().getUpToDateBundleCount()).isEqualTo(0);
+        assertThat(read(output, "resources/css/app.css")).contains("#123456");
+    }
+
+    @Test
+    public void shouldInlineImportsPerMediaQueryAndKeepRemoteImportsFirst() throws Exception {
+        write("resources/css/a.css", "@import 'fonts.css';\n@import 'shared.css' print;\n.a { color: #123456; }");
+        write("resources/css/fonts.css", "@import url(https://fonts.example.com/css);\n.fonts { color: #234567; }");
+        write("resources/css/b.css", "@import 'shared.css' screen;\n.b { color: #345678; }");
+        write("resources/css/shared.css", ".shared { color: #456789; }");
+        writeStyleSheetPage("a.css", "b.css");
+
+        buildIncrementally(mojo -> {
+        });
+
+        String bundle = read(output, "resources/css/app.css");
+        assertThat(bundle).startsWith("@import url(https://fonts.example.com/css)");
+        assertThat(bundle.indexOf("@media print")).isLessThan(bundle.indexOf(".a")).isLessThan(bundle.indexOf("@media screen"));
+        assertThat(bundle.indexOf("#456789")).isNotEqualTo(bundle.lastIndexOf("#456789"));
+    }
+
+    @Test
+    public void shouldInlineSmallAssetsAndRebuildWhenAssetChanges() throws Exception {
+        write("resources/css/theme/base.css", "h1 { background: url(img/a.png); }\nh2 { background: url(img/large.png); }");
+        write("resources/css/theme/img/a.png", "small");
+        write("resources/css/theme/img/large.png", "larger than the threshold");
+        writeStyleSheetPage("theme/base.css");
+
+        buildIncrementally(mojo -> mojo.dataUriThreshold = 16);
+
+        assertThat(read(output, "resources/css/app.css"))
+                .contains("url(data:image/png;base64,c21hbGw=)").contains("url(theme/img/large.png)");
+
+        write("resources/css/theme/img/a.png", "Small");
+        ProcessMojo assetChanged = buildIncrementally(mojo -> mojo.dataUriThreshold = 16);
+        assertThat(assetChanged.getBuildState().getUpToDateBundleCount()).isEqualTo(0);
+        assertThat(read(output, "resources/css/app.css")).contains("url(data:image/png;base64,U21hbGw=)");
+    }
+
+    @Test
+    public void shouldInlineAssetsUpToTheThresholdIncluded() throws Exception {
+        write("resources/css/base.css", "h1 { background: url(img/at.png); }\nh2 { background: url(img/over.png); }");
+        write("resources/css/img/at.png", "0123456789abcdef");
+        write("resources/css/img/over.png", "0123456789abcdefg");
+        writeStyleSheetPage("base.css");
+
+        buildIncrementally(mojo -> mojo.dataUriThreshold = 16);
+
+        assertThat(read(output, "resources/css/app.css"))
+                .contains("url(data:image/png;base64,MDEyMzQ1Njc4OWFiY2RlZg==)").contains("url(img/over.png)");
+    }
+
+    @Test
+    public void shouldFingerprintAssetsAndRebuildWhenAssetChanges() throws Exception {
+        write("resources/css/theme/base.css", "h1 { background: url(img/a.png); }\n" +
+                "@font-face { src: url(font.eot?#iefix); }\nh2 { background: url(img/missing.png); }");
+        write("resources/css/theme/img/a.png", "a");
+        write("resources/css/theme/font.eot", "eot");
+        writeStyleSheetPage("theme/base.css");
+
+        buildIncrementally(mojo -> mojo.fingerprintAssets = true);
+
+        String aName = "a." + HashGenerator.computeHash("a", "MD5") + ".png";
+        String eotName = "font." + HashGenerator.computeHash("eot", "MD5") + ".eot";
+        assertThat(read(output, "resources/css/app.css")).contains("url(theme/img/" + aName + ")")
+                .contains("url(theme/" + eotName + "?#iefix)").contains("url(theme/img/missing.png)");
+        assertThat(read(output, "resources/css/theme/img/" + aName)).isEqualTo("a");
+        String manifest = read(output, "asset-manifest.json");
+        assertThat(manifest).isEqualTo(manifest(aName, eotName));
+
+        ProcessMojo unchanged = buildIncrementally(mojo -> mojo.fingerprintAssets = true);
+        assertThat(unchanged.getSkippedPageCount()).isEqualTo(1);
+        assertThat(read(output, "asset-manifest.json")).isEqualTo(manifest);
+
+        write("resources/css/theme/img/a.png", "A");
+        ProcessMojo assetChanged = buildIncrementally(mojo -> mojo.fingerprintAssets = true);
+        String changedName = "a." + HashGenerator.computeHash("A", "MD5") + ".png";
+        assertThat(assetChanged.getBuildState().getUpToDateBundleCount()).isEqualTo(0);
+        assertThat(read(output, "resources/css/app.css")).contains("url(theme/img/" + changedName + ")");
+        assertThat(read(output, "asset-manifest.json")).isEqualTo(manifest(changedName, eotName));
+    }
+
+    @Test
+    public void shouldMergeCssRulesAcrossSources() throws Exception {
+        write("resources/css/a.css", ".a { color: #123456; }\n.shared { margin: 1px; }");
+        write("resources/css/b.css", ".shared { padding: 2px; }\n.b { color: #123456; }");
+        write("page1.xhtml", "<!-- bundle:css #{request.contextPath}/resources/css/app-#hash#.css -->\n" +
+                "<link href=\"#{request.contextPath}/resources/css/a.css\" />\n" +
+                "<link href=\"#{request.contextPath}/resources/css/b.css\" />\n" +
+                "<!-- /bundle -->\n");
+
+        ProcessMojo mojo = createMojo(new InputFiles(webapp, new String[]{"*.xhtml"}, null, output));
+        mojo.mergeCssRules = true;
+        List<String> merges = new ArrayList<>();
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void info(CharSequence content) {
+                if (content.toString().startsWith("Merged CSS rules")) {
+                    merges.add(content.toString());
+                }
+            }
+        });
+        mojo.execute();
+
+        String page = read(output, "page1.xhtml");
+        String fileName = page.substring(page.indexOf("resources/css/app-"), page.indexOf(".css") + 4);
+        String bundle = read(output, fileName);
+        assertThat(bundle.trim()).isEqualTo(".a{color:#123456}.shared{margin:1px;padding:2px}.b{color:#123456}");
+        assertThat(fileName).isEqualTo("resources/css/app-" + HashGenerator.computeHash(bundle, "MD5") + ".css");
+        assertThat(merges).containsExactly("Merged CSS rules of #{request.contextPath}/resources/css/app-#hash#.css, saved 11 bytes");
+    }
+
+    @Test
+    public void shouldRejectMissingConfiguration() throws Exception {
+        ProcessMojo mojo = createMojo(null);
+        try {
+            mojo.execute();
+            fail("Should have thrown exception");
+        } catch (MojoExecutionException e) {
+            assertThat(e).hasMessage("Either inputFilePath / outputFilePath or inputFiles must be given");
+        }
+    }
+
+    private ProcessMojo createMojo(InputFiles inputFiles) {
+        ProcessMojo mojo = new ProcessMojo(null, null, webapp, output);
+        mojo.inputFiles = inputFiles;
+        return mojo;
+    }
+
+    private ProcessMojo createIncrementalMojo(File stateFile) {
+        ProcessMojo mojo = createMojo(new InputFiles(webapp, new String[]{"*.xhtml"}, null, output));
+        mojo.threads = 1;
+        mojo.incremental = true;
+        mojo.stateFile = stateFile;
+        return mojo;
+    }
+
+    /**
+     * Runs an incremental build, the build state is shared by the builds of a test.
+     */
+    private ProcessMojo buildIncrementally(Consumer<ProcessMojo> configuration) throws MojoExecutionException {
+        ProcessMojo mojo = createIncrementalMojo(new File(temporaryFolder.getRoot(), "state/bundler.state"));
+        configuration.accept(mojo);
+        mojo.execute();
+        return mojo;
+    }
+
+    private ProcessMojo createCachingMojo(File cacheDirectory) {
+        ProcessMojo mojo = createMojo(new InputFiles(webapp, new String[]{"*.xhtml"}, null, output));
+        mojo.cacheDirectory = cacheDirectory;
+        mojo.cacheSize = 1;
+        mojo.pluginVersion = "1.0";
+        return mojo;
+    }
+
+    private String page(String title) {
+        return "<html><body><h1>" + title + "</h1>\n" +
+                "<!-- bundle:js #{request.contextPath}/resources/js/app.min.js -->\n" +
+                "<script src=\"#{request.contextPath}/resources/js/lib1.js\"></script>\n" +
+                "<script src=\"#{request.contextPath}/resources/js/lib2.js\"></script>\n" +
+                "<!-- /bundle -->\n" +
+                "</body></html>";
+    }
+
+    private static String manifest(String aName, String eotName) {
+        return "{\n" +
+                "  \"resources/css/theme/font.eot\": \"resources/css/theme/" + eotName + "\",\n" +
+                "  \"resources/css/theme/img/a.png\": \"resources/css/theme/img/" + aName + "\"\n" +
+                "}\n";
+    }
+
+    /**
+     * Writes a page bundling the style sheets, relative to resources/css, into resources/css/app.css.
+     */
+    private void writeStyleSheetPage(String... styleSheets) throws IOException {
+        StringBuilder page = new StringBuilder("<!-- bundle:css #{request.contextPath}/resources/css/app.css -->\n");
+        for (String styleSheet : styleSheets) {
+            page.append("<link href=\"#{request.contextPath}/resources/css/").append(styleSheet).append("\" />\n");
+        }
+        write("page1.xhtml", page.append("<!-- /bundle -->\n").toString());
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = webapp.toPath().resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String gunzip(File dir, String path) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(dir.toPath().resolve(path)))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int count; (count = in.read(buffer)) != -1; ) {
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private String read(File dir, String path) throws IOException {
+        return new String(Files.readAllBytes(dir.toPath().resolve(path)), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,206 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResourceAccessTest {
+
+    private static final FileTime PAST = FileTime.fromMillis(1000000000000L);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ResourceAccess resourceAccess = new ResourceAccess();
+    private Path directory;
+
+    @Before
+    public void before() throws Exception {
+        directory = temporaryFolder.newFolder("output").toPath();
+    }
+
+    @Test
+    public void shouldSkipWritingIdenticalContent() throws Exception {
+        Path file = directory.resolve("js/app.js");
+
+        assertThat(resourceAccess.write(file, ResourceContent.of("var a = 1;"))).isTrue();
+        Files.setLastModifiedTime(file, PAST);
+        assertThat(resourceAccess.write(file, ResourceContent.of("var a = 1;"))).isFalse();
+
+        assertThat(Files.getLastModifiedTime(file)).isEqualTo(PAST);
+        assertThat(resourceAccess.getWrittenCount()).isEqualTo(1);
+        assertThat(resourceAccess.getSkippedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldWriteChangedContentOfSameSize() throws Exception {
+        Path file = directory.resolve("app.js");
+        resourceAccess.write(file, ResourceContent.of("var a = 1;"));
+
+        assertThat(resourceAccess.write(file, ResourceContent.of("var a = 2;"))).isTrue();
+
+        assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).isEqualTo("var a = 2;");
+        assertThat(resourceAccess.getWrittenCount()).isEqualTo(2);
+        assertThat(listFiles()).containsExactly(file);
+    }
+
+    @Test
+    public void shouldSkipStreamingIdenticalContent() throws Exception {
+        Path file = directory.resolve("index.html");
+        byte[] content = largeContent();
+
+        assertThat(resourceAccess.write(file, out -> out.write(ByteBuffer.wrap(content)))).isTrue();
+        Files.setLastModifiedTime(file, PAST);
+        assertThat(resourceAccess.write(file, out -> out.write(ByteBuffer.wrap(content)))).isFalse();
+        content[content.length - 1] = 'A';
+        assertThat(resourceAccess.write(file, out -> out.write(ByteBuffer.wrap(content)))).isTrue();
+
+        assertThat(Files.readAllBytes(file)).isEqualTo(content);
+        assertThat(resourceAccess.getWrittenCount()).isEqualTo(2);
+        assertThat(resourceAccess.getSkippedCount()).isEqualTo(1);
+        assertThat(listFiles()).containsExactly(file);
+    }
+
+    @Test
+    public void shouldStreamContentToPathKnownOnceWritten() throws Exception {
+        Path file = directory.resolve("js/app-1.js");
+        byte[] content = largeContent();
+
+        assertThat(resourceAccess.write(directory.resolve("js"), out -> out.write(ByteBuffer.wrap(content)), () -> file)).isTrue();
+        assertThat(resourceAccess.write(directory.resolve("js"), out -> out.write(ByteBuffer.wrap(content)), () -> file)).isFalse();
+
+        assertThat(Files.readAllBytes(file)).isEqualTo(content);
+        assertThat(listFiles()).containsExactly(file);
+    }
+
+    @Test
+    public void shouldTransferFileWithDigest() throws Exception {
+        // read into the heap and memory mapped
+        for (long size : new long[]{100, ResourceAccess.MAP_THRESHOLD + 100}) {
+            Path source = directory.resolve("lib-" + size + ".min.js");
+            byte[] content = new byte[(int) size];
+            Arrays.fill(content, (byte) 'a');
+            Files.write(source, content);
+            ByteArrayOutputStream digested = new ByteArrayOutputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            long length = resourceAccess.transfer(source, Channels.newChannel(out), buffer -> {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                digested.write(bytes, 0, bytes.length);
+            });
+
+            assertThat(length).isEqualTo(content.length);
+            assertThat(out.toByteArray()).isEqualTo(content);
+            assertThat(digested.toByteArray()).isEqualTo(content);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void shouldFailTransferOfFileTruncatedWhileBeingRead() throws Exception {
+        Path source = directory.resolve("lib.min.js");
+        Files.write(source, new byte[100]);
+        // truncates the file on the first write, of which it only takes a part
+        WritableByteChannel out = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                try (FileChannel channel = FileChannel.open(source, StandardOpenOption.WRITE)) {
+                    channel.truncate(10);
+                }
+                int written = Math.min(src.remaining(), 5);
+                src.position(src.position() + written);
+                return written;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try {
+            resourceAccess.transfer(source, out, null);
+            fail("Should have thrown exception");
+        } catch (RuntimeException e) {
+            assertThat(e.getCause()).isInstanceOf(IOException.class).hasMessageContaining("truncated");
+        }
+    }
+
+    @Test
+    public void shouldKeepExistingFileWhenStreamingFails() throws Exception {
+        Path file = directory.resolve("index.html");
+        resourceAccess.write(file, ResourceContent.of("<html></html>"));
+
+        try {
+            resourceAccess.write(file, out -> {
+                out.write(ByteBuffer.wrap("<html>".getBytes(StandardCharsets.UTF_8)));
+                throw new IllegalStateException("failed");
+            });
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("failed");
+        }
+
+        assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).isEqualTo("<html></html>");
+        assertThat(listFiles()).containsExactly(file);
+    }
+
+    @Test
+    public void shouldWriteReadableOutputsKeepingPermissionsOfReplacedFiles() throws Exception {
+        Assume.assumeNotNull(Files.getFileAttributeView(directory, PosixFileAttributeView.class));
+        Path written = directory.resolve("app.js");
+        Path streamed = directory.resolve("index.html");
+        Path copied = directory.resolve("logo.png");
+        Path replaced = directory.resolve("app.css");
+        Files.write(replaced, "a{}".getBytes(StandardCharsets.UTF_8));
+        Files.setPosixFilePermissions(replaced, PosixFilePermissions.fromString("rw-rw-r--"));
+
+        resourceAccess.write(written, ResourceContent.of("var a = 1;"));
+        resourceAccess.write(streamed, out -> out.write(ByteBuffer.wrap(largeContent())));
+        resourceAccess.copy(written, copied);
+        resourceAccess.write(replaced, ResourceContent.of("b{}"));
+
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(written))).isEqualTo("rw-r--r--");
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(streamed))).isEqualTo("rw-r--r--");
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(copied))).isEqualTo("rw-r--r--");
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(replaced))).isEqualTo("rw-rw-r--");
+    }
+
+    private byte[] largeContent() {
+        byte[] content = new byte[200 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        return content;
+    }
+
+    private Object[] listFiles() throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).toArray();
+        }
+    }
+}
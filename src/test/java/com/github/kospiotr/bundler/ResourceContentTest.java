@@ -0,0 +1,36 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class ResourceContentTest {
+
+    @Test
+    public void shouldDecodeBytesOnce() throws Exception {
+        byte[] bytes = "zażółć".getBytes(StandardCharsets.UTF_8);
+        ResourceContent content = ResourceContent.of(bytes);
+
+        assertThat(content.getBytes()).isSameAs(bytes);
+        assertThat(content.length()).isEqualTo(10);
+        assertThat(content.getString()).isEqualTo("zażółć").isSameAs(content.getString());
+    }
+
+    @Test
+    public void shouldEncodeStringOnce() throws Exception {
+        ResourceContent content = ResourceContent.of("zażółć");
+
+        assertThat(content.getBytes()).isEqualTo("zażółć".getBytes(StandardCharsets.UTF_8)).isSameAs(content.getBytes());
+        assertThat(content.length()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldCompareEncodedContent() throws Exception {
+        assertThat(ResourceContent.of("zażółć")).isEqualTo(ResourceContent.of("zażółć".getBytes(StandardCharsets.UTF_8)));
+        assertThat(ResourceContent.of("a")).isNotEqualTo(ResourceContent.of("b"));
+        assertThat(ResourceContent.of("").isEmpty()).isTrue();
+        assertThat(ResourceContent.of(new byte[0]).isEmpty()).isTrue();
+    }
+}
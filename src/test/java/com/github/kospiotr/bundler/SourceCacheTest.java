@@ -0,0 +1,102 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourceCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void before() throws Exception {
+        directory = temporaryFolder.newFolder("sources").toPath();
+    }
+
+    @Test
+    public void shouldReadSourceOnce() throws Exception {
+        ResourceAccess resourceAccess = new ResourceAccess(1024);
+        Path source = write("a.js", "var a = 1;", 1000);
+
+        ResourceContent first = resourceAccess.read(source);
+        ResourceContent second = resourceAccess.read(source);
+
+        assertThat(second.getBytes()).isSameAs(first.getBytes());
+        assertThat(second).isEqualTo(ResourceContent.of("var a = 1;"));
+        assertThat(resourceAccess.getCache().getHitCount()).isEqualTo(1);
+        assertThat(resourceAccess.getCache().getMissCount()).isEqualTo(1);
+        assertThat(resourceAccess.getCache().getSize()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldReadChangedSourceAgain() throws Exception {
+        ResourceAccess resourceAccess = new ResourceAccess(1024);
+        Path source = write("a.js", "var a = 1;", 1000);
+        resourceAccess.read(source);
+
+        write("a.js", "var a = 2;", 2000);
+
+        assertThat(resourceAccess.read(source)).isEqualTo(ResourceContent.of("var a = 2;"));
+        assertThat(resourceAccess.getCache().getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldInvalidateWrittenFile() throws Exception {
+        ResourceAccess resourceAccess = new ResourceAccess(1024);
+        Path source = write("a.js", "var a = 1;", 1000);
+        resourceAccess.read(source);
+
+        // same size, the modification time is kept to make sure the write itself invalidates the entry
+        resourceAccess.write(source, ResourceContent.of("var a = 2;"));
+        Files.setLastModifiedTime(source, FileTime.fromMillis(1000));
+
+        assertThat(resourceAccess.read(source)).isEqualTo(ResourceContent.of("var a = 2;"));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedSources() throws Exception {
+        ResourceAccess resourceAccess = new ResourceAccess(25);
+        Path first = write("first.js", "0123456789", 1000);
+        Path second = write("second.js", "0123456789", 1000);
+        Path third = write("third.js", "0123456789", 1000);
+        resourceAccess.read(first);
+        resourceAccess.read(second);
+        // using the first source makes the second one the least recently used
+        resourceAccess.read(first);
+        resourceAccess.read(third);
+
+        SourceCache cache = resourceAccess.getCache();
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+        assertThat(cache.getSize()).isEqualTo(20);
+        resourceAccess.read(first);
+        resourceAccess.read(second);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        assertThat(cache.getMissCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldNotCacheSourcesLargerThanCache() throws Exception {
+        ResourceAccess resourceAccess = new ResourceAccess(5);
+        Path source = write("a.js", "var a = 1;", 1000);
+
+        assertThat(resourceAccess.read(source)).isEqualTo(ResourceContent.of("var a = 1;"));
+        assertThat(resourceAccess.getCache().getSize()).isEqualTo(0);
+    }
+
+    private Path write(String name, String content, long lastModified) throws Exception {
+        Path path = directory.resolve(name);
+        Files.write(path, content.getBytes("UTF-8"));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(lastModified));
+        return path;
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.kospiotr.bundler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourcePrefetcherTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+    private SourcePrefetcher prefetcher;
+
+    @Before
+    public void before() throws Exception {
+        directory = temporaryFolder.newFolder("sources").toPath();
+        prefetcher = new SourcePrefetcher(new ResourceAccess(), null);
+    }
+
+    @After
+    public void after() {
+        prefetcher.close();
+    }
+
+    @Test
+    public void shouldReadPrefetchedSourcesOnce() throws Exception {
+        Path first = write("first.js", "var first = 1;");
+        Path second = write("second.js", "var second = 2;");
+
+        prefetcher.prefetch(first);
+        prefetcher.prefetch(second);
+        prefetcher.prefetch(first);
+
+        assertThat(prefetcher.getPrefetchedCount()).isEqualTo(2);
+        assertThat(prefetcher.get(second).join()).isEqualTo(ResourceContent.of("var second = 2;"));
+        assertThat(prefetcher.get(first).join()).isEqualTo(ResourceContent.of("var first = 1;"));
+    }
+
+    @Test
+    public void shouldReadSourcesNotPrefetched() throws Exception {
+        Path source = write("source.js", "var source = 1;");
+
+        assertThat(prefetcher.get(source).join()).isEqualTo(ResourceContent.of("var source = 1;"));
+        assertThat(prefetcher.getPrefetchedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReadChangedSourceAgainOnceTaken() throws Exception {
+        Path source = write("source.js", "var source = 1;");
+        prefetcher.prefetch(source);
+        prefetcher.get(source).join();
+
+        write("source.js", "var source = 2;");
+
+        assertThat(prefetcher.get(source).join()).isEqualTo(ResourceContent.of("var source = 2;"));
+    }
+
+    @Test(timeout = 5000)
+    public void shouldPrefetchSuppliedSourcesUnlessTakenAlready() throws Exception {
+        Path first = write("first.js", "var first = 1;");
+        Path second = write("second.js", "var second = 2;");
+        prefetcher.get(first).join();
+
+        prefetcher.prefetch(() -> Arrays.asList(first, second));
+
+        // the sources are prefetched in order, the first one would be counted before the second one
+        while (prefetcher.getPrefetchedCount() == 0) {
+            Thread.sleep(10);
+        }
+        assertThat(prefetcher.getPrefetchedCount()).isEqualTo(1);
+        assertThat(prefetcher.get(second).join()).isEqualTo(ResourceContent.of("var second = 2;"));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldNotHoldSourcesTakenWhilePrefetched() throws Exception {
+        List<Path> sources = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            sources.add(write("source" + i + ".js", "var source = " + i + ";"));
+        }
+
+        Thread prefetching = new Thread(() -> sources.forEach(prefetcher::prefetch));
+        prefetching.start();
+        for (Path source : sources) {
+            prefetcher.get(source).join();
+        }
+        prefetching.join();
+
+        assertThat(prefetcher.getHeldCount()).isEqualTo(0);
+    }
+
+    private Path write(String name, String content) throws Exception {
+        return Files.write(directory.resolve(name), content.getBytes("UTF-8"));
+    }
+}
@@ -4,10 +4,13 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
@@ -164,6 +167,118 @@ public class TokenizerTest {
         assertThat(tag2.getContent()).isEqualTo("\ntag\ncontent2\n");
     }
 
+    @Test
+    public void shouldExtendUnclosedTagToNextTagClose() throws Exception {
+        String content = "tagprefix<!-- bundle:remove attrib1 -->tagcontent1<!-- bundle:remove attrib2 -->tagcontent2<!-- /bundle -->tagsuffix";
+        Tokenizer tokenizer = createTokenizerWithRemoveTagProcessor();
+
+        assertThat(tokenizer.process(content)).isEqualTo("tagprefixtagsuffix");
+
+        Tag capturedTag = getCapturedTag();
+        assertThat(capturedTag.getAttributes()).isEqualTo(new String[]{"attrib1"});
+        assertThat(capturedTag.getContent()).isEqualTo("tagcontent1<!-- bundle:remove attrib2 -->tagcontent2");
+    }
+
+    @Test
+    public void shouldIgnoreCommentsBetweenTags() throws Exception {
+        String content = "<!-- comment --><!-- bundle:remove -->tag<!-- comment -->content<!-- /bundle --><!-- /bundlex -->";
+        Tokenizer tokenizer = createTokenizerWithRemoveTagProcessor();
+
+        assertThat(tokenizer.process(content)).isEqualTo("<!-- comment --><!-- /bundlex -->");
+        assertThat(getCapturedTag().getContent()).isEqualTo("tag<!-- comment -->content");
+    }
+
+    @Test(timeout = 2000)
+    public void shouldScanUnclosedTagsInLinearTime() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            sb.append("<!-- bundle:remove attrib -->\n<div>content</div>\n<!-- comment -->\n");
+        }
+        String content = sb.toString();
+        Tokenizer tokenizer = createTokenizerWithRemoveTagProcessor();
+
+        assertThat(tokenizer.process(content)).isEqualTo(content);
+        verify(tagProcessor, never()).process(any(Tag.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldPrefetchAllTagsBeforeProcessingThem() throws Exception {
+        String content = "a<!-- bundle:remove 1 -->x<!-- /bundle -->b<!-- bundle:remove 2 -->y<!-- /bundle -->c";
+        Tokenizer tokenizer = createTokenizerWithRemoveTagProcessor();
+        ArgumentCaptor<List> tagsCaptor = ArgumentCaptor.forClass(List.class);
+
+        tokenizer.process(content);
+
+        InOrder inOrder = inOrder(tagProcessor);
+        inOrder.verify(tagProcessor).prefetch(tagsCaptor.capture());
+        inOrder.verify(tagProcessor, times(2)).process(any(Tag.class));
+        List<Tag> tags = tagsCaptor.getValue();
+        assertThat(tags).extracting(Tag::getContent).containsExactly("x", "y");
+    }
+
+    @Test(timeout = 2000)
+    public void shouldScanPagesWithManyCommentsInLinearTime() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            sb.append("<!--   comment --><!-- bundle:remove -->tagcontent<!-- /bundle --><!--      -->");
+        }
+        sb.append("<!-- bundle:remove attrib");
+        for (int i = 0; i < 100000; i++) {
+            sb.append(" <!-- /bundlex --> -->");
+        }
+        Tokenizer tokenizer = createTokenizerWithRemoveTagProcessor();
+
+        String result = tokenizer.process(sb.toString());
+
+        assertThat(result).startsWith("<!--   comment --><!--      --><!--   comment -->");
+        verify(tagProcessor, times(50000)).process(any(Tag.class));
+    }
+
+    @Test
+    public void shouldSpliceConcurrentlyProcessedTagsInDocumentOrder() throws Exception {
+        String content = "a<!-- bundle:remove 1 -->x<!-- /bundle -->b<!-- bundle:remove 2 -->x<!-- /bundle -->c<!-- bundle:remove 3 -->x<!-- /bundle -->d";
+        when(tagProcessor.process(any(Tag.class))).thenAnswer(invocation -> {
+            Tag tag = (Tag) invocation.getArguments()[0];
+            String id = tag.getAttributes()[0];
+            // the first tag finishes last
+            Thread.sleep(id.equals("1") ? 200 : 0);
+            return "[" + id + "]";
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Tokenizer tokenizer = createTokenizerWithRemoveTagProcessor();
+            tokenizer.setExecutor(executor);
+
+            assertThat(tokenizer.process(content)).isEqualTo("a[1]b[2]c[3]d");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldFailWhenAnyConcurrentlyProcessedTagFails() throws Exception {
+        String content = "<!-- bundle:remove 1 -->x<!-- /bundle --><!-- bundle:remove 2 -->x<!-- /bundle -->";
+        when(tagProcessor.process(any(Tag.class))).thenAnswer(invocation -> {
+            Tag tag = (Tag) invocation.getArguments()[0];
+            if (tag.getAttributes()[0].equals("2")) {
+                throw new IllegalStateException("bundle 2 failed");
+            }
+            return "";
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Tokenizer tokenizer = createTokenizerWithRemoveTagProcessor();
+            tokenizer.setExecutor(executor);
+            tokenizer.process(content);
+            fail("Exception should have been thrown");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("bundle 2 failed");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     private Tokenizer createTokenizerWithRemoveTagProcessor() {
         Tokenizer tokenizer = new Tokenizer(null);
         tokenizer.registerProcessor(tagProcessor);
@@ -0,0 +1,200 @@
+package com.github.kospiotr.bundler;
+
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.Watchable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WatchMojoTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File webapp;
+    private File output;
+    private final List<String> checkedPages = new ArrayList<>();
+    private WatchMojo mojo;
+
+    @Before
+    public void before() throws Exception {
+        webapp = temporaryFolder.newFolder("webapp");
+        output = temporaryFolder.newFolder("output");
+        write("resources/js/lib1.js", "var lib1 = 1;");
+        write("resources/js/lib2.js", "var lib2 = 2;");
+        write("resources/js/other.js", "var other = 3;");
+        write("page1.xhtml", page("page1", "lib1.js"));
+        write("page2.xhtml", page("page2", "lib2.js"));
+
+        mojo = new WatchMojo();
+        mojo.inputFiles = new InputFiles(webapp, new String[]{"*.xhtml"}, null, output);
+        mojo.inputBaseDir = webapp;
+        mojo.outputBaseDir = output;
+        mojo.hashingAlgorithm = "MD5";
+        mojo.threads = 1;
+        mojo.incremental = true;
+        mojo.stateFile = new File(temporaryFolder.getRoot(), "bundler.state");
+        mojo.debounce = 50;
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void info(CharSequence content) {
+                // pages unchanged since the previous build are checked, but not processed again
+                if (content.toString().startsWith("Processing page: ") || content.toString().startsWith("Page is up to date: ")) {
+                    checkedPages.add(content.toString());
+                }
+                super.info(content);
+            }
+        });
+        mojo.build(mojo.collectPages(), Collections.<Page>emptyList());
+        checkedPages.clear();
+    }
+
+    @Test(timeout = 30000)
+    public void shouldDetectChangedSourcesButNotOutputs() throws Exception {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            DependencyIndex dependencyIndex = new DependencyIndex(mojo.getBuildState());
+            mojo.registerDirectories(watchService, dependencyIndex);
+
+            write("resources/js/lib1.js", "var lib1 = 'changed';");
+            Files.write(output.toPath().resolve("page1.xhtml"), "changed".getBytes(StandardCharsets.UTF_8));
+
+            Set<Path> changedFiles = mojo.awaitChanges(watchService, dependencyIndex);
+
+            assertThat(changedFiles).containsOnly(webapp.toPath().resolve("resources/js/lib1.js"));
+        }
+    }
+
+    @Test
+    public void shouldCheckOnlyPagesAffectedByChanges() throws Exception {
+        write("resources/js/lib1.js", "var lib1 = 'changed';");
+        DependencyIndex dependencyIndex = new DependencyIndex(mojo.getBuildState());
+
+        assertThat(mojo.rebuild(Collections.singleton(webapp.toPath().resolve("resources/js/other.js")), dependencyIndex)).isFalse();
+        assertThat(mojo.rebuild(Collections.singleton(webapp.toPath().resolve("resources/js/lib1.js")), dependencyIndex)).isTrue();
+
+        assertThat(checkedPages).hasSize(1);
+        assertThat(checkedPages.get(0)).contains("page1.xhtml");
+        assertThat(read("resources/js/app1.min.js")).contains("changed");
+    }
+
+    @Test
+    public void shouldCheckAllPagesWhenChangesHaveBeenLost() throws Exception {
+        write("resources/js/lib2.js", "var lib2 = 'changed';");
+        DependencyIndex dependencyIndex = new DependencyIndex(mojo.getBuildState());
+        WatchService watchService = new OverflowingWatchService();
+
+        Set<Path> changedFiles = mojo.awaitChanges(watchService, dependencyIndex);
+        assertThat(changedFiles).isNull();
+        assertThat(mojo.rebuild(changedFiles, dependencyIndex)).isTrue();
+
+        assertThat(checkedPages).hasSize(2);
+        assertThat(read("resources/js/app2.min.js")).contains("changed");
+    }
+
+    private String page(String title, String source) {
+        return "<html><body><h1>" + title + "</h1>\n" +
+                "<!-- bundle:js #{request.contextPath}/resources/js/app" + title.substring(4) + ".min.js -->\n" +
+                "<script src=\"#{request.contextPath}/resources/js/" + source + "\"></script>\n" +
+                "<!-- /bundle -->\n" +
+                "</body></html>";
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = webapp.toPath().resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String read(String path) throws IOException {
+        return new String(Files.readAllBytes(output.toPath().resolve(path)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Watch service reporting a single overflow, the way file systems report events they could not keep up with.
+     */
+    private static class OverflowingWatchService implements WatchService {
+
+        private boolean taken;
+
+        @Override
+        public WatchKey take() {
+            if (taken) {
+                throw new IllegalStateException("Only one key expected");
+            }
+            taken = true;
+            return new WatchKey() {
+                @Override
+                public boolean isValid() {
+                    return true;
+                }
+
+                @Override
+                public List<WatchEvent<?>> pollEvents() {
+                    return Collections.<WatchEvent<?>>singletonList(new WatchEvent<Object>() {
+                        @Override
+                        public Kind<Object> kind() {
+                            return OVERFLOW;
+                        }
+
+                        @Override
+                        public int count() {
+                            return 1;
+                        }
+
+                        @Override
+                        public Object context() {
+                            return null;
+                        }
+                    });
+                }
+
+                @Override
+                public boolean reset() {
+                    return true;
+                }
+
+                @Override
+                public void cancel() {
+                }
+
+                @Override
+                public Watchable watchable() {
+                    return null;
+                }
+            };
+        }
+
+        @Override
+        public WatchKey poll() {
+            return null;
+        }
+
+        @Override
+        public WatchKey poll(long timeout, TimeUnit unit) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.kospiotr.bundler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kospiotr.bundler.util.ZopfliDeflater;
+
+/**
+ * Compares {@link ZopfliDeflater} with {@link Deflater#BEST_COMPRESSION}. The compressed sizes are printed during
+ * setup, the benchmarks measure the compression time. Real bundles are passed as a comma separated list of files, e.g.
+ * {@code mvn test -Pbenchmark -Dbenchmark="ZopfliDeflaterBenchmark -p files=target/app.min.js,target/app.min.css"},
+ * a generated script is compressed otherwise.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class ZopfliDeflaterBenchmark {
+
+    @Param({""})
+    String files;
+
+    @Param({"15"})
+    int iterations;
+
+    private List<byte[]> contents;
+    private ZopfliDeflater zopfliDeflater;
+
+    @Setup
+    public void setup() throws IOException {
+        contents = new ArrayList<>();
+        if (files.isEmpty()) {
+            contents.add(generatedScript());
+        } else {
+            for (String file : files.split(",")) {
+                contents.add(Files.readAllBytes(Paths.get(file.trim())));
+            }
+        }
+        zopfliDeflater = new ZopfliDeflater(iterations);
+
+        long deflaterTotal = 0;
+        long zopfliTotal = 0;
+        for (int i = 0; i < contents.size(); i++) {
+            byte[] content = contents.get(i);
+            int deflaterSize = deflate(content).length;
+            int zopfliSize = zopfliDeflater.deflate(content, 0, content.length, true).length;
+            deflaterTotal += deflaterSize;
+            zopfliTotal += zopfliSize;
+            System.out.println(String.format("%s: %d bytes, deflater: %d bytes, zopfli: %d bytes (%.2f%% smaller)",
+                    files.isEmpty() ? "generated" : files.split(",")[i].trim(), content.length, deflaterSize, zopfliSize,
+                    100.0 * (deflaterSize - zopfliSize) / deflaterSize));
+        }
+        System.out.println(String.format("Total deflater: %d bytes, zopfli: %d bytes (%.2f%% smaller)",
+                deflaterTotal, zopfliTotal, 100.0 * (deflaterTotal - zopfliTotal) / deflaterTotal));
+    }
+
+    @Benchmark
+    public int deflater() {
+        int size = 0;
+        for (byte[] content : contents) {
+            size += deflate(content).length;
+        }
+        return size;
+    }
+
+    @Benchmark
+    public int zopfli() {
+        int size = 0;
+        for (byte[] content : contents) {
+            size += zopfliDeflater.deflate(content, 0, content.length, true).length;
+        }
+        return size;
+    }
+
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] generatedScript() {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; script.length() < 256 * 1024; i++) {
+            script.append("function handler").append(i % 97).append("(event){var target=event.target||event.srcElement;")
+                    .append("if(target.className.indexOf('item-").append(i % 13).append("')>=0){return update(target,")
+                    .append(i).append(");}return null;}\n");
+        }
+        return script.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
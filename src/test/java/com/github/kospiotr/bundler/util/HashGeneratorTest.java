@@ -0,0 +1,81 @@
+package com.github.kospiotr.bundler.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class HashGeneratorTest {
+
+    @Test
+    public void shouldComputeXxHash64() throws Exception {
+        assertThat(HashGenerator.computeHash("", HashGenerator.XXHASH64)).isEqualTo("ef46db3751d8e999");
+        assertThat(HashGenerator.computeHash("a", HashGenerator.XXHASH64)).isEqualTo("d24ec4f1a98c6e5b");
+        assertThat(HashGenerator.computeHash("abc", HashGenerator.XXHASH64)).isEqualTo("44bc2cf5ad770999");
+        assertThat(HashGenerator.computeHash("Nobody inspects the spammish repetition", "xxhash64")).isEqualTo("fbcea83c8a378bf1");
+        assertThat(HashGenerator.computeHash(sample(), HashGenerator.XXHASH64)).isEqualTo("e921a1b45bd779f8");
+    }
+
+    @Test
+    public void shouldComputeMessageDigestHash() throws Exception {
+        assertThat(HashGenerator.computeHash("abc", "MD5")).isEqualTo("900150983cd24fb0d6963f7d28e17f72");
+        assertThat(HashGenerator.computeHash("zażółć", "MD5")).isEqualTo(HashGenerator.computeHash("zażółć".getBytes(StandardCharsets.UTF_8), "MD5"));
+    }
+
+    @Test
+    public void shouldEncodeBytesAsLowerCaseHex() throws Exception {
+        assertThat(HashGenerator.toHex(new byte[0])).isEmpty();
+        assertThat(HashGenerator.toHex(new byte[]{0, 1, 0x7f, (byte) 0x80, (byte) 0xab, (byte) 0xff})).isEqualTo("00017f80abff");
+    }
+
+    @Test
+    public void shouldComputeSameHashFromBuffers() throws Exception {
+        byte[] content = sample();
+        for (String algorithm : new String[]{"MD5", HashGenerator.XXHASH64}) {
+            String expected = HashGenerator.computeHash(content, algorithm);
+            for (int partLength : new int[]{5, 32, 33, 1000}) {
+                HashGenerator.Hasher hasher = HashGenerator.newHasher(algorithm);
+                for (int offset = 0, part = 0; offset < content.length; offset += partLength, part++) {
+                    int length = Math.min(partLength, content.length - offset);
+                    if (part % 3 == 0) {
+                        hasher.update(content, offset, length);
+                    } else {
+                        ByteBuffer buffer = part % 3 == 1 ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length + 2);
+                        buffer.put(content, offset, length).flip();
+                        hasher.update(buffer);
+                        assertThat(buffer.hasRemaining()).isFalse();
+                    }
+                }
+                assertThat(hasher.getHash()).as(algorithm + " in buffers of " + partLength).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    public void shouldComputeSameHashWhenContentIsPassedInParts() throws Exception {
+        byte[] content = sample();
+        for (String algorithm : new String[]{"MD5", "SHA-256", HashGenerator.XXHASH64}) {
+            String expected = HashGenerator.computeHash(content, algorithm);
+            for (int partLength : new int[]{1, 3, 7, 31, 32, 33, 100}) {
+                HashGenerator.Hasher hasher = HashGenerator.newHasher(algorithm);
+                for (int offset = 0; offset < content.length; offset += partLength) {
+                    hasher.update(content, offset, Math.min(partLength, content.length - offset));
+                }
+                assertThat(hasher.getHash()).as(algorithm + " in parts of " + partLength).isEqualTo(expected);
+            }
+        }
+    }
+
+    private static byte[] sample() {
+        byte[] content = new byte[256 * 3 + 3];
+        for (int i = 0; i < 256 * 3; i++) {
+            content[i] = (byte) i;
+        }
+        content[768] = 'x';
+        content[769] = 'y';
+        content[770] = 'z';
+        return content;
+    }
+}
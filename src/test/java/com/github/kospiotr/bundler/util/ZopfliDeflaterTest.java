@@ -0,0 +1,120 @@
+package com.github.kospiotr.bundler.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+public class ZopfliDeflaterTest {
+
+    private ZopfliDeflater zopfliDeflater = new ZopfliDeflater(5);
+
+    @Test
+    public void shouldCompressEmptyInput() throws Exception {
+        assertThat(inflate(zopfliDeflater.deflate(new byte[0], 0, 0, true), null)).isEmpty();
+    }
+
+    @Test
+    public void shouldCompressSingleByte() throws Exception {
+        byte[] data = {'a'};
+
+        assertThat(inflate(zopfliDeflater.deflate(data, 0, 1, true), null)).isEqualTo(data);
+    }
+
+    @Test
+    public void shouldCompressRepeatedByte() throws Exception {
+        byte[] data = new byte[100000];
+        Arrays.fill(data, (byte) 'x');
+
+        byte[] compressed = zopfliDeflater.deflate(data, 0, data.length, true);
+
+        assertThat(inflate(compressed, null)).isEqualTo(data);
+        assertThat(compressed.length).isLessThan(200);
+    }
+
+    @Test
+    public void shouldStoreIncompressibleData() throws Exception {
+        byte[] data = new byte[70000];
+        new Random(1).nextBytes(data);
+
+        byte[] compressed = zopfliDeflater.deflate(data, 0, data.length, true);
+
+        assertThat(inflate(compressed, null)).isEqualTo(data);
+        assertThat(compressed.length).isLessThan(data.length + 20);
+    }
+
+    @Test
+    public void shouldCompressBetterThanDeflater() throws Exception {
+        byte[] data = script(200 * 1024);
+
+        byte[] compressed = zopfliDeflater.deflate(data, 0, data.length, true);
+
+        assertThat(inflate(compressed, null)).isEqualTo(data);
+        assertThat(compressed.length).isLessThan(deflate(data).length);
+    }
+
+    @Test
+    public void shouldUsePrecedingDataAsDictionary() throws Exception {
+        byte[] data = script(100 * 1024);
+        int start = 60 * 1024;
+
+        byte[] first = zopfliDeflater.deflate(data, 0, start, false);
+        byte[] second = zopfliDeflater.deflate(data, start, data.length, true);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(first);
+        stream.write(second);
+
+        assertThat(inflate(stream.toByteArray(), null)).isEqualTo(data);
+        assertThat(second.length).isLessThan(new ZopfliDeflater(5).deflate(Arrays.copyOfRange(data, start, data.length), 0, data.length - start, true).length);
+    }
+
+    private static byte[] script(int length) {
+        Random random = new Random(7);
+        String[] words = {"function ", "var ", "return ", "this.", "value", "(a, b)", " {\n", "}\n", ";\n", " = ",
+                " + ", "document.getElementById('", "');\n", "if (", ") {\n", "else", "null", "true", "false"};
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append(words[random.nextInt(words.length)]);
+            if (random.nextInt(4) == 0) {
+                builder.append(random.nextInt(1000));
+            }
+        }
+        return Arrays.copyOf(builder.toString().getBytes(StandardCharsets.UTF_8), length);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] compressed, byte[] dictionary) throws Exception {
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(compressed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!inflater.finished()) {
+            int count = inflater.inflate(buffer);
+            if (count == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new IllegalStateException("Truncated stream");
+            }
+            out.write(buffer, 0, count);
+        }
+        assertThat(inflater.getRemaining()).isEqualTo(0);
+        inflater.end();
+        return out.toByteArray();
+    }
+}